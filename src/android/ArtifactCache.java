@@ -0,0 +1,208 @@
+package com.okanbeydanol.videoHelper;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed store for derived files (transcodes, thumbnails). The key combines a fingerprint of the
+ * source (path, size, mtime and a hash of a few sampled blocks) with a canonical form of the output parameters.
+ * Entries are written to a temp file and renamed into place, and the least recently used ones are evicted once
+ * the byte quota is exceeded.
+ */
+final class ArtifactCache {
+    static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, String> fingerprints = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > 64;
+        }
+    };
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong tempCounter = new AtomicLong();
+    private long maxBytes;
+    private long totalBytes;
+    private boolean loaded;
+
+    ArtifactCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    /** Builds the cache key for an artifact of the given kind derived from source with the given parameters. */
+    String key(File source, String kind, Map<String, Object> params) throws IOException {
+        StringBuilder canonical = new StringBuilder(fingerprint(source)).append('|').append(kind);
+        for (Map.Entry<String, Object> param : new TreeMap<>(params).entrySet()) {
+            canonical.append('|').append(param.getKey()).append('=').append(param.getValue());
+        }
+        return hex(sha1().digest(canonical.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** Returns the cached file for key, or null on a miss. */
+    File get(String key, String extension) {
+        File file = new File(directory, key + extension);
+        synchronized (this) {
+            load();
+            if (entries.get(key + extension) != null && file.isFile()) {
+                hits.incrementAndGet();
+                file.setLastModified(System.currentTimeMillis());
+                return file;
+            }
+            Long stale = entries.remove(key + extension);
+            if (stale != null) totalBytes -= stale;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /** A fresh temp file for writing the artifact; pass it to {@link #commit} once it is complete. */
+    File tempFile(String key, String extension) throws IOException {
+        synchronized (this) {
+            load();
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Can't create " + directory);
+        return new File(directory, key + extension + "." + tempCounter.incrementAndGet() + TEMP_SUFFIX);
+    }
+
+    /** Throws when the cache's volume can't take an artifact of expectedBytes; see {@link OutputWorkspace#ensureSpace}. */
+    void ensureSpace(long expectedBytes) throws IOException {
+        OutputWorkspace.ensureSpace(directory.isDirectory() ? directory : directory.getParentFile(), expectedBytes);
+    }
+
+    File commit(File temp, String key, String extension) throws IOException {
+        File target = new File(directory, key + extension);
+        String name = target.getName();
+        synchronized (this) {
+            if (!temp.renameTo(target)) {
+                temp.delete();
+                throw new IOException("Failed to move " + temp + " into the artifact cache");
+            }
+            Long previous = entries.put(name, target.length());
+            if (previous != null) totalBytes -= previous;
+            totalBytes += target.length();
+            evict(name);
+        }
+        return target;
+    }
+
+    synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        if (loaded) evict(null);
+    }
+
+    synchronized void clear() {
+        load();
+        for (String name : entries.keySet()) new File(directory, name).delete();
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    synchronized JSONObject stats() throws JSONException {
+        load();
+        JSONObject stats = new JSONObject();
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("entries", entries.size());
+        stats.put("bytes", totalBytes);
+        stats.put("maxBytes", maxBytes);
+        return stats;
+    }
+
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        List<File> artifacts = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                // Left behind by a write that never committed.
+                file.delete();
+            } else if (file.isFile()) {
+                artifacts.add(file);
+            }
+        }
+        artifacts.sort(Comparator.comparingLong(File::lastModified));
+        for (File file : artifacts) {
+            entries.put(file.getName(), file.length());
+            totalBytes += file.length();
+        }
+        evict(null);
+    }
+
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            if (eldest.getKey().equals(keep)) continue;
+            new File(directory, eldest.getKey()).delete();
+            totalBytes -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    private String fingerprint(File source) throws IOException {
+        String path = source.getCanonicalPath();
+        long size = source.length();
+        long lastModified = source.lastModified();
+        String identity = path + ':' + size + ':' + lastModified;
+        synchronized (fingerprints) {
+            String cached = fingerprints.get(identity);
+            if (cached != null) return cached;
+        }
+        MessageDigest digest = sha1();
+        byte[] block = new byte[SAMPLE_SIZE];
+        try (RandomAccessFile file = new RandomAccessFile(source, "r")) {
+            long[] offsets = {0, Math.max(0, size / 2 - SAMPLE_SIZE / 2), Math.max(0, size - SAMPLE_SIZE)};
+            for (long offset : offsets) {
+                int length = (int) Math.min(SAMPLE_SIZE, size - offset);
+                if (length <= 0) continue;
+                file.seek(offset);
+                file.readFully(block, 0, length);
+                digest.update(block, 0, length);
+            }
+        }
+        String fingerprint = identity + ':' + hex(digest.digest());
+        synchronized (fingerprints) {
+            fingerprints.put(identity, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[i * 2] = digits[(bytes[i] >> 4) & 0xF];
+            out[i * 2 + 1] = digits[bytes[i] & 0xF];
+        }
+        return new String(out);
+    }
+}
@@ -1,26 +1,44 @@
 package com.okanbeydanol.videoHelper;
 
 import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
 import android.media.MediaFormat;
+import android.os.Build;
 import net.ypresto.androidtranscoder.format.MediaFormatExtraConstants;
 import net.ypresto.androidtranscoder.format.MediaFormatStrategy;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class CustomAndroidFormatStrategy implements MediaFormatStrategy {
-  public static final int AUDIO_BITRATE_AS_IS = -1;
-  public static final int AUDIO_CHANNELS_AS_IS = -1;
+  public static final int AUDIO_BITRATE_AS_IS = VideoOptions.AUDIO_BITRATE_AS_IS;
+  public static final int AUDIO_CHANNELS_AS_IS = VideoOptions.AUDIO_CHANNELS_AS_IS;
   public static final int DEFAULT_VIDEO_BITRATE = 9000000;
   public static final int DEFAULT_FRAMERATE = 30;
   public static final int DEFAULT_WIDTH = 0;
   public static final int DEFAULT_HEIGHT = 0;
   public static final int DEFAULT_AUDIO_BITRATE = 128000;
+  /** Bits per pixel per frame for AVC when no bitrate is given; about 6 Mbps at 1080p30. */
+  public static final double DEFAULT_BITS_PER_PIXEL = 0.1;
+  public static final float DEFAULT_KEYFRAME_INTERVAL = 3;
+  /** HEVC reaches the same quality with roughly this share of the AVC bitrate. */
+  private static final double HEVC_BITRATE_SHARE = 0.6;
+  private static final int MIN_VIDEO_BITRATE = 250000;
   private static final String TAG = "CustomFormatStrategy";
+  private static final Map<String, Boolean> HARDWARE_ENCODERS = new ConcurrentHashMap<>();
   private final int mVideoBitrate;
   private final int mFrameRate;
   private final int width;
   private final int height;
   private final int mAudioBitrate;
   private final int mAudioChannels;
+  private final boolean mVideoPassthrough;
+  private int mMaxFrameRate;
+  private String mVideoMime = MediaFormat.MIMETYPE_VIDEO_AVC;
+  private double mBitsPerPixel = DEFAULT_BITS_PER_PIXEL;
+  private long mMaxVideoBitrate;
+  private float mKeyFrameInterval = DEFAULT_KEYFRAME_INTERVAL;
 
   public CustomAndroidFormatStrategy() {
     this.mVideoBitrate = DEFAULT_VIDEO_BITRATE;
@@ -29,6 +47,7 @@ public class CustomAndroidFormatStrategy implements MediaFormatStrategy {
     this.height = DEFAULT_HEIGHT;
     this.mAudioBitrate = AUDIO_BITRATE_AS_IS;
     this.mAudioChannels = AUDIO_CHANNELS_AS_IS;
+    this.mVideoPassthrough = false;
   }
 
   public CustomAndroidFormatStrategy
@@ -40,21 +59,159 @@ public class CustomAndroidFormatStrategy implements MediaFormatStrategy {
       final int audioBitrate,
       final int audioChannels
     ) {
-      this.mVideoBitrate = videoBitrate;
+      this(videoBitrate, frameRate, width, height, audioBitrate, audioChannels, false);
+    }
+
+  /**
+   * @param videoBitrate 0 picks one from the bits-per-pixel model, see {@link #setBitrateModel}
+   * @param frameRate used only when the source doesn't state its frame rate
+   * @param videoPassthrough copy the video track as is; only the audio track is re-encoded (if needed)
+   */
+  public CustomAndroidFormatStrategy
+    (
+      final int videoBitrate,
+      final int frameRate,
+      final int width,
+      final int height,
+      final int audioBitrate,
+      final int audioChannels,
+      final boolean videoPassthrough
+    ) {
+      this.mVideoBitrate = Math.max(0, videoBitrate);
       this.mFrameRate = frameRate;
       this.width = width;
       this.height = height;
       this.mAudioBitrate = audioBitrate;
       this.mAudioChannels = audioChannels;
+      this.mVideoPassthrough = videoPassthrough;
     }
 
+  /**
+   * Encodes at most maxFrameRate frames per second; faster sources have frames dropped before the encoder
+   * (only by the plugin's own pipelines, see {@link #decimates}). 0 keeps every frame.
+   */
+  public CustomAndroidFormatStrategy setMaxFrameRate(int maxFrameRate) {
+    this.mMaxFrameRate = Math.max(0, maxFrameRate);
+    return this;
+  }
+
+  /** "avc" (default), or "hevc"/"auto" for HEVC when the device has a hardware encoder for it, AVC otherwise. */
+  public CustomAndroidFormatStrategy setVideoCodec(String codec) {
+    this.mVideoMime = videoMime(codec);
+    return this;
+  }
+
+  /** The mime type {@link #setVideoCodec} settles on for codec on this device. */
+  static String videoMime(String codec) {
+    String name = codec == null ? "avc" : codec.toLowerCase(Locale.ENGLISH);
+    boolean hevc = (name.equals("hevc") || name.equals("auto")) && hasHardwareEncoder(MediaFormat.MIMETYPE_VIDEO_HEVC);
+    return hevc ? MediaFormat.MIMETYPE_VIDEO_HEVC : MediaFormat.MIMETYPE_VIDEO_AVC;
+  }
+
+  /**
+   * Bitrate used when none was given: bitsPerPixel x width x height x frame rate, never more than maxBitrate
+   * (0 for no limit), e.g. the source's own bitrate.
+   */
+  public CustomAndroidFormatStrategy setBitrateModel(double bitsPerPixel, long maxBitrate) {
+    if (bitsPerPixel > 0) this.mBitsPerPixel = bitsPerPixel;
+    this.mMaxVideoBitrate = Math.max(0, maxBitrate);
+    return this;
+  }
+
+  /** Seconds between sync frames. */
+  public CustomAndroidFormatStrategy setKeyFrameInterval(float seconds) {
+    if (seconds > 0) this.mKeyFrameInterval = seconds;
+    return this;
+  }
+
+  public String videoMime() {
+    return mVideoMime;
+  }
+
   public MediaFormat createVideoOutputFormat(MediaFormat inputFormat) {
-    int inWidth = inputFormat.getInteger(MediaFormat.KEY_WIDTH);
-    int inHeight = inputFormat.getInteger(MediaFormat.KEY_HEIGHT);
-    int inLonger, inShorter, outWidth, outHeight, outLonger;
+    if (mVideoPassthrough) return null;
+    int[] size = outputSize(inputFormat.getInteger(MediaFormat.KEY_WIDTH), inputFormat.getInteger(MediaFormat.KEY_HEIGHT),
+      Math.max(this.width, this.height));
+    int outWidth = size[0];
+    int outHeight = size[1];
+    float frameRate = frameRate(inputFormat, mFrameRate);
+    if (mMaxFrameRate > 0) frameRate = Math.min(frameRate, mMaxFrameRate);
+
+    MediaFormat format = MediaFormat.createVideoFormat(mVideoMime, outWidth, outHeight);
+    format.setInteger(MediaFormat.KEY_BIT_RATE, mVideoBitrate > 0 ? mVideoBitrate : modelBitrate(outWidth, outHeight, frameRate));
+    format.setInteger(MediaFormat.KEY_FRAME_RATE, Math.max(1, Math.round(frameRate)));
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N_MR1) {
+      format.setFloat(MediaFormat.KEY_I_FRAME_INTERVAL, mKeyFrameInterval);
+    } else {
+      format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, Math.max(1, (int) mKeyFrameInterval));
+    }
+    format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+
+    return format;
+  }
+
+  private int modelBitrate(int width, int height, float frameRate) {
+    double bitsPerPixel = mBitsPerPixel;
+    if (MediaFormat.MIMETYPE_VIDEO_HEVC.equals(mVideoMime)) bitsPerPixel *= HEVC_BITRATE_SHARE;
+    long bitrate = Math.round(bitsPerPixel * width * height * frameRate);
+    if (mMaxVideoBitrate > 0) bitrate = Math.min(bitrate, mMaxVideoBitrate);
+    return (int) Math.max(MIN_VIDEO_BITRATE, Math.min(Integer.MAX_VALUE, bitrate));
+  }
+
+  /** The source's frame rate, or fallback when the container doesn't say. */
+  static float frameRate(MediaFormat format, float fallback) {
+    if (format == null || !format.containsKey(MediaFormat.KEY_FRAME_RATE)) return fallback;
+    float frameRate;
+    try {
+      frameRate = format.getInteger(MediaFormat.KEY_FRAME_RATE);
+    } catch (ClassCastException e) {
+      frameRate = format.getFloat(MediaFormat.KEY_FRAME_RATE);
+    }
+    return frameRate > 0 ? frameRate : fallback;
+  }
+
+  /** Whether a pipeline should drop frames to reach the output frame rate, rather than encode them all. */
+  static boolean decimates(MediaFormat inputFormat, MediaFormat outputFormat) {
+    float in = frameRate(inputFormat, 0);
+    float out = frameRate(outputFormat, 0);
+    return in > 0 && out > 0 && out < in * 0.95f;
+  }
+
+  /** Looked up once per mime type: MediaCodecList is slow to build. */
+  static boolean hasHardwareEncoder(String mime) {
+    Boolean cached = HARDWARE_ENCODERS.get(mime);
+    if (cached != null) return cached;
+    boolean found = false;
+    // MediaMuxer takes HEVC from Android 7 on.
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+      try {
+        for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+          if (!info.isEncoder() || !isHardware(info)) continue;
+          for (String type : info.getSupportedTypes()) {
+            if (type.equalsIgnoreCase(mime)) found = true;
+          }
+        }
+      } catch (RuntimeException ignored) {
+      }
+    }
+    HARDWARE_ENCODERS.put(mime, found);
+    return found;
+  }
+
+  private static boolean isHardware(MediaCodecInfo info) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) return info.isHardwareAccelerated();
+    String name = info.getName().toLowerCase(Locale.ENGLISH);
+    return !name.startsWith("omx.google.") && !name.startsWith("c2.android.") && !name.contains(".sw.");
+  }
+
+  /**
+   * Scales the source down so its longer side is at most outLonger (0 keeps the source size), keeping the aspect
+   * ratio. Pure arithmetic, so it can be checked without a device.
+   */
+  static int[] outputSize(int inWidth, int inHeight, int outLonger) {
+    int inLonger, inShorter, outWidth, outHeight;
     double aspectRatio;
 
-    outLonger = Math.max(this.width, this.height);
     if (inWidth >= inHeight) {
       inLonger = inWidth;
       inShorter = inHeight;
@@ -77,14 +234,7 @@ public class CustomAndroidFormatStrategy implements MediaFormatStrategy {
       outWidth = inWidth;
       outHeight = inHeight;
     }
-
-    MediaFormat format = MediaFormat.createVideoFormat("video/avc", outWidth, outHeight);
-    format.setInteger(MediaFormat.KEY_BIT_RATE, mVideoBitrate);
-    format.setInteger(MediaFormat.KEY_FRAME_RATE, mFrameRate);
-    format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, 3);
-    format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
-
-    return format;
+    return new int[] { outWidth, outHeight };
   }
 
   public MediaFormat createAudioOutputFormat(MediaFormat inputFormat) {
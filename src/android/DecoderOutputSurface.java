@@ -0,0 +1,175 @@
+package com.okanbeydanol.videoHelper;
+
+import android.graphics.SurfaceTexture;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.opengl.Matrix;
+import android.view.Surface;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+final class DecoderOutputSurface implements SurfaceTexture.OnFrameAvailableListener {
+    private static final long FRAME_WAIT_TIMEOUT_MS = 2500;
+    private static final int FLOAT_SIZE_BYTES = 4;
+    private static final int VERTICES_STRIDE_BYTES = 5 * FLOAT_SIZE_BYTES;
+    private static final float[] VERTICES = {
+        -1.0f, -1.0f, 0, 0.f, 0.f,
+        1.0f, -1.0f, 0, 1.f, 0.f,
+        -1.0f, 1.0f, 0, 0.f, 1.f,
+        1.0f, 1.0f, 0, 1.f, 1.f,
+    };
+    private static final String VERTEX_SHADER =
+        "uniform mat4 uMVPMatrix;\n" +
+        "uniform mat4 uSTMatrix;\n" +
+        "attribute vec4 aPosition;\n" +
+        "attribute vec4 aTextureCoord;\n" +
+        "varying vec2 vTextureCoord;\n" +
+        "void main() {\n" +
+        "  gl_Position = uMVPMatrix * aPosition;\n" +
+        "  vTextureCoord = (uSTMatrix * aTextureCoord).xy;\n" +
+        "}\n";
+    private static final String FRAGMENT_SHADER =
+        "#extension GL_OES_EGL_image_external : require\n" +
+        "precision mediump float;\n" +
+        "varying vec2 vTextureCoord;\n" +
+        "uniform samplerExternalOES sTexture;\n" +
+        "void main() {\n" +
+        "  gl_FragColor = texture2D(sTexture, vTextureCoord);\n" +
+        "}\n";
+
+    private final Object frameSyncObject = new Object();
+    private final FloatBuffer vertices;
+    private final float[] mvpMatrix = new float[16];
+    private final float[] stMatrix = new float[16];
+    private final int textureId;
+    private final int program;
+    private final int mvpMatrixHandle;
+    private final int stMatrixHandle;
+    private final int positionHandle;
+    private final int textureHandle;
+    private SurfaceTexture surfaceTexture;
+    private Surface surface;
+    private boolean frameAvailable;
+
+    DecoderOutputSurface() {
+        vertices = ByteBuffer.allocateDirect(VERTICES.length * FLOAT_SIZE_BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        vertices.put(VERTICES).position(0);
+        Matrix.setIdentityM(stMatrix, 0);
+        Matrix.setIdentityM(mvpMatrix, 0);
+
+        program = createProgram(VERTEX_SHADER, FRAGMENT_SHADER);
+        positionHandle = GLES20.glGetAttribLocation(program, "aPosition");
+        textureHandle = GLES20.glGetAttribLocation(program, "aTextureCoord");
+        mvpMatrixHandle = GLES20.glGetUniformLocation(program, "uMVPMatrix");
+        stMatrixHandle = GLES20.glGetUniformLocation(program, "uSTMatrix");
+
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        textureId = textures[0];
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+        GLES20.glTexParameterf(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameterf(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+        surfaceTexture = new SurfaceTexture(textureId);
+        surfaceTexture.setOnFrameAvailableListener(this);
+        surface = new Surface(surfaceTexture);
+    }
+
+    Surface getSurface() {
+        return surface;
+    }
+
+    void awaitNewImage() {
+        synchronized (frameSyncObject) {
+            long deadline = System.currentTimeMillis() + FRAME_WAIT_TIMEOUT_MS;
+            while (!frameAvailable) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) throw new RuntimeException("Surface frame wait timed out");
+                try {
+                    frameSyncObject.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+            frameAvailable = false;
+        }
+        surfaceTexture.updateTexImage();
+        surfaceTexture.getTransformMatrix(stMatrix);
+    }
+
+    void drawImage(int viewportWidth, int viewportHeight) {
+        GLES20.glViewport(0, 0, viewportWidth, viewportHeight);
+        GLES20.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        GLES20.glUseProgram(program);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+        vertices.position(0);
+        GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, VERTICES_STRIDE_BYTES, vertices);
+        GLES20.glEnableVertexAttribArray(positionHandle);
+        vertices.position(3);
+        GLES20.glVertexAttribPointer(textureHandle, 2, GLES20.GL_FLOAT, false, VERTICES_STRIDE_BYTES, vertices);
+        GLES20.glEnableVertexAttribArray(textureHandle);
+        GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
+        GLES20.glUniformMatrix4fv(stMatrixHandle, 1, false, stMatrix, 0);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        GLES20.glFinish();
+    }
+
+    @Override
+    public void onFrameAvailable(SurfaceTexture st) {
+        synchronized (frameSyncObject) {
+            if (frameAvailable) throw new RuntimeException("frameAvailable already set, frame could be dropped");
+            frameAvailable = true;
+            frameSyncObject.notifyAll();
+        }
+    }
+
+    void release() {
+        if (surface != null) surface.release();
+        if (surfaceTexture != null) surfaceTexture.release();
+        GLES20.glDeleteProgram(program);
+        GLES20.glDeleteTextures(1, new int[]{textureId}, 0);
+        surface = null;
+        surfaceTexture = null;
+    }
+
+    private static int createProgram(String vertexSource, String fragmentSource) {
+        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexSource);
+        int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+        int program = GLES20.glCreateProgram();
+        if (program == 0) throw new RuntimeException("Could not create program");
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+        int[] linkStatus = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+        if (linkStatus[0] != GLES20.GL_TRUE) {
+            String log = GLES20.glGetProgramInfoLog(program);
+            GLES20.glDeleteProgram(program);
+            throw new RuntimeException("Could not link program: " + log);
+        }
+        return program;
+    }
+
+    private static int loadShader(int shaderType, String source) {
+        int shader = GLES20.glCreateShader(shaderType);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+        int[] compiled = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
+        if (compiled[0] == 0) {
+            String log = GLES20.glGetShaderInfoLog(shader);
+            GLES20.glDeleteShader(shader);
+            throw new RuntimeException("Could not compile shader " + shaderType + ": " + log);
+        }
+        return shader;
+    }
+}
@@ -0,0 +1,89 @@
+package com.okanbeydanol.videoHelper;
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.view.Surface;
+
+final class EglCore {
+    private static final int EGL_RECORDABLE_ANDROID = 0x3142;
+
+    private EGLDisplay display;
+    private EGLContext context;
+    private EGLConfig config;
+
+    EglCore() {
+        display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        if (display == EGL14.EGL_NO_DISPLAY) throw new RuntimeException("Unable to get EGL14 display");
+        int[] version = new int[2];
+        if (!EGL14.eglInitialize(display, version, 0, version, 1)) {
+            display = null;
+            throw new RuntimeException("Unable to initialize EGL14");
+        }
+        int[] attribList = {
+            EGL14.EGL_RED_SIZE, 8,
+            EGL14.EGL_GREEN_SIZE, 8,
+            EGL14.EGL_BLUE_SIZE, 8,
+            EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+            EGL_RECORDABLE_ANDROID, 1,
+            EGL14.EGL_NONE
+        };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] numConfigs = new int[1];
+        if (!EGL14.eglChooseConfig(display, attribList, 0, configs, 0, configs.length, numConfigs, 0) || numConfigs[0] == 0) {
+            throw new RuntimeException("Unable to find RGB888+recordable ES2 EGL config");
+        }
+        config = configs[0];
+        int[] contextAttribs = {EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE};
+        context = EGL14.eglCreateContext(display, config, EGL14.EGL_NO_CONTEXT, contextAttribs, 0);
+        checkEglError("eglCreateContext");
+        if (context == null) throw new RuntimeException("null context");
+    }
+
+    EGLSurface createWindowSurface(Surface surface) {
+        int[] surfaceAttribs = {EGL14.EGL_NONE};
+        EGLSurface eglSurface = EGL14.eglCreateWindowSurface(display, config, surface, surfaceAttribs, 0);
+        checkEglError("eglCreateWindowSurface");
+        if (eglSurface == null) throw new RuntimeException("surface was null");
+        return eglSurface;
+    }
+
+    void makeCurrent(EGLSurface surface) {
+        if (!EGL14.eglMakeCurrent(display, surface, surface, context)) {
+            throw new RuntimeException("eglMakeCurrent failed");
+        }
+    }
+
+    boolean swapBuffers(EGLSurface surface) {
+        return EGL14.eglSwapBuffers(display, surface);
+    }
+
+    void setPresentationTime(EGLSurface surface, long nsecs) {
+        EGLExt.eglPresentationTimeANDROID(display, surface, nsecs);
+    }
+
+    void releaseSurface(EGLSurface surface) {
+        if (display != null && surface != null) EGL14.eglDestroySurface(display, surface);
+    }
+
+    void release() {
+        if (display == null) return;
+        EGL14.eglMakeCurrent(display, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+        if (context != null) EGL14.eglDestroyContext(display, context);
+        EGL14.eglReleaseThread();
+        EGL14.eglTerminate(display);
+        display = null;
+        context = null;
+        config = null;
+    }
+
+    private static void checkEglError(String msg) {
+        int error = EGL14.eglGetError();
+        if (error != EGL14.EGL_SUCCESS) {
+            throw new RuntimeException(msg + ": EGL error: 0x" + Integer.toHexString(error));
+        }
+    }
+}
@@ -0,0 +1,504 @@
+package com.okanbeydanol.videoHelper;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.okanbeydanol.videoHelper.Mp4Parser.*;
+import static com.okanbeydanol.videoHelper.Mp4SampleTable.*;
+
+/**
+ * Writes H.264/AAC samples as a fragmented MP4: an init segment (ftyp and a moov without samples) followed by
+ * moof/mdat pairs. A fragment is sealed at the first video sync sample once the fragment duration is reached, so
+ * every fragment after the first starts with a keyframe. Samples of the open fragment are the only ones held in
+ * memory, and each sealed fragment is reported with its byte range so uploads can follow the encoder.
+ */
+final class FragmentedMp4Writer implements RangeTranscoder.Muxer {
+    static final long DEFAULT_FRAGMENT_DURATION_US = 2_000_000;
+    /** Seals a fragment even without a keyframe once this much sample data is buffered. */
+    private static final long MAX_BUFFERED_BYTES = 16L * 1024 * 1024;
+    private static final int VIDEO_TIMESCALE = 90_000;
+    private static final int MOVIE_TIMESCALE = 1000;
+    private static final int SAMPLE_FLAGS_SYNC = 0x02000000;
+    private static final int SAMPLE_FLAGS_NON_SYNC = 0x01010000;
+
+    private static final int TREX = fourcc("trex");
+    private static final int MFHD = fourcc("mfhd");
+    private static final int TRAF = fourcc("traf");
+    private static final int TFHD = fourcc("tfhd");
+    private static final int TFDT = fourcc("tfdt");
+    private static final int TRUN = fourcc("trun");
+
+    interface FragmentListener {
+        /** Index 0 is the init segment; media fragments count up from 1. */
+        void onFragment(int index, long offset, long size, long startUs, long durationUs);
+    }
+
+    private static final class Sample {
+        final byte[] data;
+        final long ptsUs;
+        final boolean sync;
+
+        Sample(byte[] data, long ptsUs, boolean sync) {
+            this.data = data;
+            this.ptsUs = ptsUs;
+            this.sync = sync;
+        }
+    }
+
+    private static final class Track {
+        final int id;
+        final MediaFormat format;
+        final boolean video;
+        final int timescale;
+        final List<Sample> pending = new ArrayList<>();
+        long lastDuration;
+
+        Track(int id, MediaFormat format, boolean video, int timescale) {
+            this.id = id;
+            this.format = format;
+            this.video = video;
+            this.timescale = timescale;
+        }
+
+        long ticks(long us) {
+            return us * timescale / 1_000_000L;
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long fragmentDurationUs;
+    private final FragmentListener listener;
+    private final List<Track> tracks = new ArrayList<>();
+    private int orientationDegrees;
+    private boolean started;
+    private int sequence;
+    private long bufferedBytes;
+
+    FragmentedMp4Writer(String outputPath, long fragmentDurationUs, FragmentListener listener) throws IOException {
+        this.file = new RandomAccessFile(outputPath, "rw");
+        this.channel = file.getChannel();
+        this.fragmentDurationUs = fragmentDurationUs > 0 ? fragmentDurationUs : DEFAULT_FRAGMENT_DURATION_US;
+        this.listener = listener;
+        channel.truncate(0);
+    }
+
+    @Override
+    public void setOrientationHint(int degrees) {
+        orientationDegrees = degrees;
+    }
+
+    @Override
+    public int addTrack(MediaFormat format) {
+        String mime = format.getString(MediaFormat.KEY_MIME);
+        boolean video = MediaFormat.MIMETYPE_VIDEO_AVC.equals(mime);
+        if (!video && !MediaFormat.MIMETYPE_AUDIO_AAC.equals(mime)) {
+            throw new IllegalArgumentException("Fragmented output supports H.264 and AAC only, not " + mime);
+        }
+        int timescale = video ? VIDEO_TIMESCALE : format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        tracks.add(new Track(tracks.size() + 1, format, video, timescale));
+        return tracks.size() - 1;
+    }
+
+    @Override
+    public void start() {
+        try {
+            ByteBuffer init = initSegment();
+            Mp4Writer.writeFully(channel, init);
+            started = true;
+            if (listener != null) listener.onFragment(0, 0, channel.position(), 0, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void writeSampleData(int trackIndex, ByteBuffer data, MediaCodec.BufferInfo info) {
+        Track track = tracks.get(trackIndex);
+        boolean sync = (info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+        if (shouldSeal(track, sync, info.presentationTimeUs)) flush();
+        ByteBuffer source = data.duplicate();
+        source.limit(info.offset + info.size).position(info.offset);
+        byte[] bytes = track.video ? lengthPrefixed(source) : copy(source);
+        track.pending.add(new Sample(bytes, info.presentationTimeUs, !track.video || sync));
+        bufferedBytes += bytes.length;
+    }
+
+    @Override
+    public void stop() {
+        flush();
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void release() {
+        try {
+            file.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private boolean shouldSeal(Track track, boolean sync, long ptsUs) {
+        if (bufferedBytes >= MAX_BUFFERED_BYTES) return true;
+        Track timing = track;
+        for (Track candidate : tracks) {
+            if (candidate.video) timing = candidate;
+        }
+        // Only the track that paces fragments may seal them: video at keyframes, or audio in audio-only files.
+        if (timing != track || (track.video && !sync) || track.pending.isEmpty()) return false;
+        return ptsUs - firstPts(track) >= fragmentDurationUs;
+    }
+
+    private static long firstPts(Track track) {
+        long first = Long.MAX_VALUE;
+        for (Sample sample : track.pending) first = Math.min(first, sample.ptsUs);
+        return first;
+    }
+
+    private void flush() {
+        if (!started || allEmpty()) return;
+        try {
+            writeFragment();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean allEmpty() {
+        for (Track track : tracks) {
+            if (!track.pending.isEmpty()) return false;
+        }
+        return true;
+    }
+
+    private void writeFragment() throws IOException {
+        long fragmentOffset = channel.position();
+        Mp4Writer.BoxWriter w = new Mp4Writer.BoxWriter();
+        int moof = w.begin(MOOF);
+        int mfhd = w.fullBox(MFHD, 0);
+        w.putInt(++sequence);
+        w.end(mfhd);
+
+        List<Integer> dataOffsetFields = new ArrayList<>();
+        List<Track> written = new ArrayList<>();
+        long startUs = Long.MAX_VALUE;
+        long endUs = Long.MIN_VALUE;
+        for (Track track : tracks) {
+            List<Sample> samples = track.pending;
+            if (samples.isEmpty()) continue;
+            int count = samples.size();
+            // Decode order is arrival order; with reordered frames the sorted presentation times give the decode times.
+            long[] decodeUs = new long[count];
+            for (int i = 0; i < count; i++) decodeUs[i] = samples.get(i).ptsUs;
+            Arrays.sort(decodeUs);
+            long[] durations = new long[count];
+            for (int i = 0; i + 1 < count; i++) durations[i] = track.ticks(decodeUs[i + 1]) - track.ticks(decodeUs[i]);
+            if (count > 1) track.lastDuration = durations[count - 2];
+            if (track.lastDuration <= 0) track.lastDuration = track.video ? track.timescale / 30 : 1024;
+            durations[count - 1] = track.lastDuration;
+
+            int traf = w.begin(TRAF);
+            int tfhd = w.fullBox(TFHD, 0);
+            w.patch(tfhd + 8, 0x020000); // default-base-is-moof
+            w.putInt(track.id);
+            w.end(tfhd);
+            int tfdt = w.fullBox(TFDT, 1);
+            w.putLong(track.ticks(decodeUs[0]));
+            w.end(tfdt);
+            int flags = 0x000001 | 0x000100 | 0x000200 | 0x000400 | (track.video ? 0x000800 : 0);
+            int trun = w.fullBox(TRUN, 1);
+            w.patch(trun + 8, (1 << 24) | flags);
+            w.putInt(count);
+            dataOffsetFields.add(w.placeholder());
+            for (int i = 0; i < count; i++) {
+                Sample sample = samples.get(i);
+                w.putInt((int) durations[i]).putInt(sample.data.length)
+                    .putInt(sample.sync ? SAMPLE_FLAGS_SYNC : SAMPLE_FLAGS_NON_SYNC);
+                if (track.video) w.putInt((int) (track.ticks(sample.ptsUs) - track.ticks(decodeUs[i])));
+            }
+            w.end(trun);
+            w.end(traf);
+            written.add(track);
+            startUs = Math.min(startUs, decodeUs[0]);
+            endUs = Math.max(endUs, decodeUs[count - 1] + durations[count - 1] * 1_000_000L / track.timescale);
+        }
+        w.end(moof);
+
+        ByteBuffer header = w.toBuffer();
+        long dataSize = 0;
+        for (int t = 0; t < written.size(); t++) {
+            header.putInt(dataOffsetFields.get(t), (int) (header.remaining() + 8 + dataSize));
+            for (Sample sample : written.get(t).pending) dataSize += sample.data.length;
+        }
+        Mp4Writer.writeFully(channel, header);
+        ByteBuffer mdat = ByteBuffer.allocate(8).putInt((int) (dataSize + 8)).putInt(MDAT);
+        mdat.flip();
+        Mp4Writer.writeFully(channel, mdat);
+        for (Track track : written) {
+            for (Sample sample : track.pending) Mp4Writer.writeFully(channel, ByteBuffer.wrap(sample.data));
+            track.pending.clear();
+        }
+        bufferedBytes = 0;
+        if (listener != null) {
+            listener.onFragment(sequence, fragmentOffset, channel.position() - fragmentOffset, startUs, endUs - startUs);
+        }
+    }
+
+    private ByteBuffer initSegment() throws IOException {
+        Mp4Writer.BoxWriter w = new Mp4Writer.BoxWriter();
+        int ftyp = w.begin(FTYP);
+        w.putInt(fourcc("iso6")).putInt(0).putInt(fourcc("iso6")).putInt(fourcc("isom")).putInt(fourcc("avc1"))
+            .putInt(fourcc("mp41"));
+        w.end(ftyp);
+
+        int moov = w.begin(MOOV);
+        int mvhd = w.fullBox(MVHD, 0);
+        w.putInt(0).putInt(0).putInt(MOVIE_TIMESCALE).putInt(0).putInt(0x00010000).putInt(0x01000000).putInt(0).putInt(0);
+        putMatrix(w, 0);
+        for (int i = 0; i < 6; i++) w.putInt(0);
+        w.putInt(tracks.size() + 1);
+        w.end(mvhd);
+        for (Track track : tracks) writeTrak(w, track);
+        int mvex = w.begin(MVEX);
+        for (Track track : tracks) {
+            int trex = w.fullBox(TREX, 0);
+            w.putInt(track.id).putInt(1).putInt(0).putInt(0).putInt(0);
+            w.end(trex);
+        }
+        w.end(mvex);
+        w.end(moov);
+        return w.toBuffer();
+    }
+
+    private void writeTrak(Mp4Writer.BoxWriter w, Track track) throws IOException {
+        int trak = w.begin(TRAK);
+        int tkhd = w.fullBox(TKHD, 0);
+        w.patch(tkhd + 8, 0x000003); // enabled, in movie
+        w.putInt(0).putInt(0).putInt(track.id).putInt(0).putInt(0).putInt(0).putInt(0).putInt(0)
+            .putInt(track.video ? 0 : 0x01000000);
+        putMatrix(w, track.video ? orientationDegrees : 0);
+        int width = track.video ? track.format.getInteger(MediaFormat.KEY_WIDTH) : 0;
+        int height = track.video ? track.format.getInteger(MediaFormat.KEY_HEIGHT) : 0;
+        w.putInt(width << 16).putInt(height << 16);
+        w.end(tkhd);
+
+        int mdia = w.begin(MDIA);
+        int mdhd = w.fullBox(MDHD, 0);
+        w.putInt(0).putInt(0).putInt(track.timescale).putInt(0).putInt(0x55C40000); // language "und"
+        w.end(mdhd);
+        int hdlr = w.fullBox(HDLR, 0);
+        w.putInt(0).putInt(track.video ? VIDE : SOUN).putInt(0).putInt(0).putInt(0);
+        putBytes(w, ((track.video ? "VideoHandler" : "SoundHandler") + '\0').getBytes(StandardCharsets.US_ASCII));
+        w.end(hdlr);
+
+        int minf = w.begin(MINF);
+        if (track.video) {
+            int vmhd = w.fullBox(fourcc("vmhd"), 0);
+            w.patch(vmhd + 8, 1);
+            w.putInt(0).putInt(0);
+            w.end(vmhd);
+        } else {
+            int smhd = w.fullBox(fourcc("smhd"), 0);
+            w.putInt(0);
+            w.end(smhd);
+        }
+        int dinf = w.begin(fourcc("dinf"));
+        int dref = w.fullBox(fourcc("dref"), 0);
+        w.putInt(1);
+        int url = w.fullBox(fourcc("url "), 0);
+        w.patch(url + 8, 1); // media data is in this file
+        w.end(url);
+        w.end(dref);
+        w.end(dinf);
+
+        int stbl = w.begin(STBL);
+        int stsd = w.fullBox(STSD, 0);
+        w.putInt(1);
+        if (track.video) {
+            writeAvc1(w, track.format);
+        } else {
+            writeMp4a(w, track.format);
+        }
+        w.end(stsd);
+        for (int type : new int[] {STTS, STSC, STCO}) {
+            int box = w.fullBox(type, 0);
+            w.putInt(0);
+            w.end(box);
+        }
+        int stsz = w.fullBox(STSZ, 0);
+        w.putInt(0).putInt(0);
+        w.end(stsz);
+        w.end(stbl);
+        w.end(minf);
+        w.end(mdia);
+        w.end(trak);
+    }
+
+    private static void writeAvc1(Mp4Writer.BoxWriter w, MediaFormat format) throws IOException {
+        int width = format.getInteger(MediaFormat.KEY_WIDTH);
+        int height = format.getInteger(MediaFormat.KEY_HEIGHT);
+        int avc1 = w.begin(fourcc("avc1"));
+        w.putInt(0).putInt(1).putInt(0).putInt(0).putInt(0).putInt(0);
+        w.putInt((width << 16) | (height & 0xFFFF)).putInt(0x00480000).putInt(0x00480000).putInt(0);
+        byte[] tail = new byte[38];
+        tail[1] = 1; // frame count
+        tail[34] = 0x00;
+        tail[35] = 0x18; // depth
+        tail[36] = (byte) 0xFF;
+        tail[37] = (byte) 0xFF;
+        putBytes(w, tail);
+
+        List<byte[]> sps = new ArrayList<>();
+        List<byte[]> pps = new ArrayList<>();
+        for (String key : new String[] {"csd-0", "csd-1"}) {
+            ByteBuffer csd = format.getByteBuffer(key);
+            if (csd == null) continue;
+            for (byte[] nal : nalUnits(csd.duplicate())) {
+                int type = nal[0] & 0x1F;
+                if (type == 7) sps.add(nal);
+                if (type == 8) pps.add(nal);
+            }
+        }
+        if (sps.isEmpty() || pps.isEmpty()) throw new IOException("H.264 format without SPS/PPS");
+        ByteArrayOutputStream avcC = new ByteArrayOutputStream();
+        byte[] first = sps.get(0);
+        avcC.write(1);
+        avcC.write(first[1]);
+        avcC.write(first[2]);
+        avcC.write(first[3]);
+        avcC.write(0xFF); // 4-byte NAL lengths
+        avcC.write(0xE0 | sps.size());
+        for (byte[] nal : sps) writeWithLength(avcC, nal);
+        avcC.write(pps.size());
+        for (byte[] nal : pps) writeWithLength(avcC, nal);
+        int box = w.begin(fourcc("avcC"));
+        putBytes(w, avcC.toByteArray());
+        w.end(box);
+        w.end(avc1);
+    }
+
+    private static void writeMp4a(Mp4Writer.BoxWriter w, MediaFormat format) throws IOException {
+        int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        int bitrate = format.containsKey(MediaFormat.KEY_BIT_RATE) ? format.getInteger(MediaFormat.KEY_BIT_RATE) : 0;
+        ByteBuffer csd = format.getByteBuffer("csd-0");
+        if (csd == null) throw new IOException("AAC format without codec specific data");
+        byte[] config = copy(csd.duplicate());
+
+        int mp4a = w.begin(fourcc("mp4a"));
+        w.putInt(0).putInt(1).putInt(0).putInt(0).putInt((channels << 16) | 16).putInt(0).putInt(sampleRate << 16);
+        ByteArrayOutputStream es = new ByteArrayOutputStream();
+        es.write(0x03);
+        es.write(3 + 2 + 13 + 2 + config.length + 3);
+        es.write(0);
+        es.write(0); // ES_ID
+        es.write(0);
+        es.write(0x04);
+        es.write(13 + 2 + config.length);
+        es.write(0x40); // MPEG-4 audio
+        es.write(0x15); // audio stream
+        es.write(new byte[3], 0, 3); // buffer size
+        es.write(ByteBuffer.allocate(8).putInt(bitrate).putInt(bitrate).array(), 0, 8);
+        es.write(0x05);
+        es.write(config.length);
+        es.write(config, 0, config.length);
+        es.write(0x06);
+        es.write(0x01);
+        es.write(0x02);
+        int esds = w.fullBox(ESDS, 0);
+        putBytes(w, es.toByteArray());
+        w.end(esds);
+        w.end(mp4a);
+    }
+
+    private static void putMatrix(Mp4Writer.BoxWriter w, int degrees) {
+        int one = 0x10000;
+        int a = one, b = 0, c = 0, d = one;
+        if (degrees == 90) {
+            a = 0; b = one; c = -one; d = 0;
+        } else if (degrees == 180) {
+            a = -one; d = -one;
+        } else if (degrees == 270) {
+            a = 0; b = -one; c = one; d = 0;
+        }
+        w.putInt(a).putInt(b).putInt(0).putInt(c).putInt(d).putInt(0).putInt(0).putInt(0).putInt(0x40000000);
+    }
+
+    private static void putBytes(Mp4Writer.BoxWriter w, byte[] bytes) {
+        w.copy(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    private static void writeWithLength(ByteArrayOutputStream out, byte[] nal) {
+        out.write(nal.length >> 8);
+        out.write(nal.length);
+        out.write(nal, 0, nal.length);
+    }
+
+    private static byte[] copy(ByteBuffer source) {
+        byte[] bytes = new byte[source.remaining()];
+        source.get(bytes);
+        return bytes;
+    }
+
+    /** Converts an Annex B access unit (start codes) into the 4-byte length prefixed form MP4 stores. */
+    private static byte[] lengthPrefixed(ByteBuffer source) {
+        if (!startsWithStartCode(source)) return copy(source);
+        List<byte[]> nals = nalUnits(source);
+        int size = 0;
+        for (byte[] nal : nals) size += 4 + nal.length;
+        ByteBuffer out = ByteBuffer.allocate(size);
+        for (byte[] nal : nals) out.putInt(nal.length).put(nal);
+        return out.array();
+    }
+
+    private static boolean startsWithStartCode(ByteBuffer buf) {
+        int p = buf.position();
+        if (buf.remaining() >= 3 && buf.get(p) == 0 && buf.get(p + 1) == 0 && buf.get(p + 2) == 1) return true;
+        return buf.remaining() >= 4 && buf.get(p) == 0 && buf.get(p + 1) == 0 && buf.get(p + 2) == 0 && buf.get(p + 3) == 1;
+    }
+
+    private static List<byte[]> nalUnits(ByteBuffer buf) {
+        List<byte[]> nals = new ArrayList<>();
+        int end = buf.limit();
+        int start = -1;
+        int i = buf.position();
+        while (i + 2 < end) {
+            if (buf.get(i) == 0 && buf.get(i + 1) == 0 && buf.get(i + 2) == 1) {
+                if (start >= 0) nals.add(slice(buf, start, trimZeros(buf, start, i)));
+                i += 3;
+                start = i;
+            } else {
+                i++;
+            }
+        }
+        if (start >= 0 && start < end) nals.add(slice(buf, start, end));
+        return nals;
+    }
+
+    /** Drops the leading zero of a 4-byte start code that belongs to the next NAL unit. */
+    private static int trimZeros(ByteBuffer buf, int start, int end) {
+        while (end > start && buf.get(end - 1) == 0) end--;
+        return end;
+    }
+
+    private static byte[] slice(ByteBuffer buf, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = buf.get(start + i);
+        return bytes;
+    }
+}
@@ -0,0 +1,174 @@
+package com.okanbeydanol.videoHelper;
+
+import android.os.SystemClock;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Where a job's time went: queue wait, run time and named stages, plus the bytes it moved, the frames it encoded
+ * and the codecs it used. Stages run on several threads (probe, codec loop, completion), so every update locks.
+ * Stage times add up when the same stage runs concurrently, e.g. the chunks of a segmented transcode.
+ */
+final class JobMetrics {
+    static final int DEFAULT_HISTORY = 64;
+
+    final String jobId;
+    final String type;
+    /** Whether the job's final JSON response should carry these metrics. */
+    final boolean attach;
+    private final long queuedAt = SystemClock.elapsedRealtime();
+    private long startedAt;
+    private long finishedAt;
+    private final Map<String, Long> stages = new LinkedHashMap<>();
+    private final Set<String> codecs = new LinkedHashSet<>();
+    private String currentStage;
+    private long bytesRead;
+    private long bytesWritten;
+    private long framesEncoded;
+    private boolean canceled;
+    private String errorType;
+    private String errorMessage;
+    private String errorStage;
+
+    JobMetrics(String jobId, String type, boolean attach) {
+        this.jobId = jobId;
+        this.type = type;
+        this.attach = attach;
+    }
+
+    synchronized void started() {
+        if (startedAt == 0) startedAt = SystemClock.elapsedRealtime();
+    }
+
+    synchronized void finished() {
+        if (finishedAt == 0) finishedAt = SystemClock.elapsedRealtime();
+    }
+
+    synchronized void canceled() {
+        canceled = true;
+    }
+
+    /**
+     * Marks the start of a stage, which a later failure is attributed to. Pass the returned time to {@link #end}
+     * to record its duration; stages that last the whole run can leave that to runMs.
+     */
+    synchronized long begin(String stage) {
+        currentStage = stage;
+        return SystemClock.elapsedRealtime();
+    }
+
+    synchronized void end(String stage, long begunAt) {
+        stage(stage, SystemClock.elapsedRealtime() - begunAt);
+    }
+
+    synchronized void stage(String stage, long elapsedMs) {
+        Long total = stages.get(stage);
+        stages.put(stage, (total != null ? total : 0) + Math.max(0, elapsedMs));
+    }
+
+    synchronized void read(long bytes) {
+        bytesRead += bytes;
+    }
+
+    synchronized void wrote(long bytes) {
+        bytesWritten += bytes;
+    }
+
+    synchronized void encoded(long frames) {
+        framesEncoded += frames;
+    }
+
+    synchronized void codec(String name) {
+        if (name != null) codecs.add(name);
+    }
+
+    /** Keeps the first failure; later ones are usually consequences of it. */
+    synchronized void failed(Throwable error) {
+        if (errorType != null || error == null) return;
+        errorType = error.getClass().getName();
+        errorMessage = error.getMessage();
+        errorStage = currentStage;
+    }
+
+    synchronized JSONObject toJson() throws JSONException {
+        long now = SystemClock.elapsedRealtime();
+        JSONObject json = new JSONObject();
+        json.put("jobId", jobId);
+        json.put("type", type);
+        json.put("state", state());
+        json.put("queueWaitMs", (startedAt > 0 ? startedAt : finishedAt > 0 ? finishedAt : now) - queuedAt);
+        long runMs = startedAt > 0 ? (finishedAt > 0 ? finishedAt : now) - startedAt : 0;
+        json.put("runMs", runMs);
+        JSONObject stageJson = new JSONObject();
+        for (Map.Entry<String, Long> stage : stages.entrySet()) stageJson.put(stage.getKey(), stage.getValue());
+        json.put("stages", stageJson);
+        json.put("bytesRead", bytesRead);
+        json.put("bytesWritten", bytesWritten);
+        if (framesEncoded > 0) {
+            json.put("framesEncoded", framesEncoded);
+            if (runMs > 0) json.put("fps", framesEncoded * 1000.0 / runMs);
+        }
+        if (!codecs.isEmpty()) json.put("codecs", new JSONArray(codecs));
+        if (errorType != null) {
+            JSONObject error = new JSONObject();
+            error.put("type", errorType);
+            if (errorMessage != null) error.put("message", errorMessage);
+            if (errorStage != null) error.put("stage", errorStage);
+            json.put("error", error);
+        }
+        return json;
+    }
+
+    private String state() {
+        if (canceled) return "canceled";
+        if (errorType != null) return "failed";
+        if (finishedAt > 0) return "completed";
+        return startedAt > 0 ? "running" : "queued";
+    }
+
+    /**
+     * The metrics of the most recently finished jobs. Writers claim a slot with one atomic increment and never
+     * wait; once the ring is full the oldest entry is overwritten.
+     */
+    static final class History {
+        private final AtomicReferenceArray<JobMetrics> slots;
+        private final AtomicLong next = new AtomicLong();
+
+        History(int capacity) {
+            slots = new AtomicReferenceArray<>(Math.max(1, capacity));
+        }
+
+        void add(JobMetrics metrics) {
+            slots.set((int) (next.getAndIncrement() % slots.length()), metrics);
+        }
+
+        JobMetrics find(String jobId) {
+            long end = next.get();
+            for (long i = end - 1; i >= Math.max(0, end - slots.length()); i--) {
+                JobMetrics metrics = slots.get((int) (i % slots.length()));
+                if (metrics != null && metrics.jobId.equals(jobId)) return metrics;
+            }
+            return null;
+        }
+
+        /** Oldest first. */
+        JSONArray toJson() throws JSONException {
+            JSONArray array = new JSONArray();
+            long end = next.get();
+            for (long i = Math.max(0, end - slots.length()); i < end; i++) {
+                JobMetrics metrics = slots.get((int) (i % slots.length()));
+                if (metrics != null) array.put(metrics.toJson());
+            }
+            return array;
+        }
+    }
+}
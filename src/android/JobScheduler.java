@@ -0,0 +1,292 @@
+package com.okanbeydanol.videoHelper;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs codec-heavy jobs with a bounded number of concurrent slots. Queued jobs are ordered by priority and then
+ * by submission order; interactive jobs may use one slot above the limit so they never wait behind a long
+ * background transcode.
+ */
+final class JobScheduler {
+    static final int DEFAULT_MAX_CONCURRENT = 2;
+
+    enum Priority {
+        INTERACTIVE, NORMAL, BACKGROUND;
+
+        static Priority fromOption(String value, Priority fallback) {
+            if (value == null || value.isEmpty()) return fallback;
+            switch (value.toLowerCase(Locale.ENGLISH)) {
+                case "high":
+                case "interactive": return INTERACTIVE;
+                case "normal": return NORMAL;
+                case "low":
+                case "background": return BACKGROUND;
+                default: return fallback;
+            }
+        }
+    }
+
+    enum State { QUEUED, RUNNING, CANCELED }
+
+    /** Thrown by {@link #submit} when the id belongs to a job that hasn't finished yet. */
+    static final class DuplicateJobException extends IllegalArgumentException {
+        DuplicateJobException(String id) {
+            super("Job " + id + " already exists.");
+        }
+    }
+
+    interface Work {
+        /** Starts the job without blocking; the job ends when the owner calls {@link #finish(String)}. */
+        Future<?> start() throws Exception;
+
+        /** Called instead of {@link #start()} when the job is dropped from the queue or fails to start. */
+        void abort(Exception cause);
+    }
+
+    static final class Job {
+        final String id;
+        final String type;
+        final String tag;
+        final Priority priority;
+        final long sequence;
+        final long queuedAt;
+        final Work work;
+        final JobMetrics metrics;
+        volatile State state = State.QUEUED;
+        long startedAt;
+        Future<?> future;
+
+        Job(String id, String type, String tag, Priority priority, long sequence, boolean attachMetrics, Work work) {
+            this.id = id;
+            this.type = type;
+            this.tag = tag;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.queuedAt = System.currentTimeMillis();
+            this.work = work;
+            this.metrics = new JobMetrics(id, type, attachMetrics);
+        }
+
+        boolean isCanceled() {
+            return state == State.CANCELED;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("jobId", id);
+            json.put("type", type);
+            json.put("priority", priority.name().toLowerCase(Locale.ENGLISH));
+            json.put("state", state.name().toLowerCase(Locale.ENGLISH));
+            if (tag != null) json.put("tag", tag);
+            json.put("queuedAt", queuedAt);
+            if (startedAt > 0) json.put("startedAt", startedAt);
+            return json;
+        }
+    }
+
+    private final PriorityQueue<Job> queue = new PriorityQueue<>(
+        Comparator.<Job>comparingInt(job -> job.priority.ordinal()).thenComparingLong(job -> job.sequence));
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong ids = new AtomicLong();
+    private volatile JobMetrics.History history = new JobMetrics.History(JobMetrics.DEFAULT_HISTORY);
+    private int running;
+    private int maxConcurrent = DEFAULT_MAX_CONCURRENT;
+
+    synchronized void setMaxConcurrent(int maxConcurrent) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+    }
+
+    void setMetricsHistory(int capacity) {
+        history = new JobMetrics.History(capacity);
+    }
+
+    String newId() {
+        return "job-" + ids.incrementAndGet();
+    }
+
+    /** @param attachMetrics whether the job's final response should carry its {@link JobMetrics} */
+    Job submit(String id, String type, String tag, Priority priority, boolean attachMetrics, Work work) {
+        Job job;
+        synchronized (this) {
+            if (jobs.containsKey(id)) throw new DuplicateJobException(id);
+            job = new Job(id, type, tag, priority, sequence.incrementAndGet(), attachMetrics, work);
+            jobs.put(id, job);
+            queue.add(job);
+        }
+        dispatch();
+        return job;
+    }
+
+    /** Releases the slot held by a job. Safe to call more than once and for jobs that never started. */
+    void finish(String id) {
+        Job job;
+        synchronized (this) {
+            job = jobs.remove(id);
+            if (job == null) return;
+            if (job.startedAt > 0) {
+                running--;
+            } else {
+                queue.remove(job);
+            }
+        }
+        retire(job);
+        dispatch();
+    }
+
+    /**
+     * Runs a blocking job body on the executor and releases the job's slot when it returns. When the task is
+     * canceled before it gets to run, onSkipped is called instead.
+     */
+    Future<?> execute(Executor executor, String id, Runnable body, Runnable onSkipped) {
+        AtomicBoolean started = new AtomicBoolean();
+        FutureTask<Void> task = new FutureTask<Void>(() -> {
+            if (!started.compareAndSet(false, true)) return;
+            try {
+                body.run();
+            } finally {
+                finish(id);
+            }
+        }, null) {
+            @Override protected void done() {
+                if (isCancelled() && started.compareAndSet(false, true)) {
+                    finish(id);
+                    onSkipped.run();
+                }
+            }
+        };
+        executor.execute(task);
+        return task;
+    }
+
+    /** Whether id belongs to a queued or running job, i.e. a new job can't use it yet. */
+    synchronized boolean contains(String id) {
+        return jobs.containsKey(id);
+    }
+
+    synchronized boolean isCanceled(String id) {
+        Job job = jobs.get(id);
+        return job != null && job.isCanceled();
+    }
+
+    boolean cancel(String id) {
+        Job job;
+        synchronized (this) {
+            job = jobs.get(id);
+        }
+        return job != null && cancel(job);
+    }
+
+    /** Cancels every job with the given tag, or all jobs when tag is null. */
+    int cancelAll(String tag, boolean includeRunning) {
+        List<Job> matching = new ArrayList<>();
+        synchronized (this) {
+            for (Job job : jobs.values()) {
+                if (tag != null && !tag.equals(job.tag)) continue;
+                if (!includeRunning && job.startedAt > 0) continue;
+                matching.add(job);
+            }
+        }
+        int canceled = 0;
+        for (Job job : matching) {
+            if (cancel(job)) canceled++;
+        }
+        return canceled;
+    }
+
+    /** Metrics of a running or recently finished job, or null when the job is unknown or long gone. */
+    JobMetrics metrics(String id) {
+        synchronized (this) {
+            Job job = jobs.get(id);
+            if (job != null) return job.metrics;
+        }
+        return history.find(id);
+    }
+
+    JSONArray metricsHistory() throws JSONException {
+        return history.toJson();
+    }
+
+    synchronized JSONArray list() throws JSONException {
+        JSONArray array = new JSONArray();
+        for (Job job : jobs.values()) array.put(job.toJson());
+        return array;
+    }
+
+    private boolean cancel(Job job) {
+        boolean queued;
+        Future<?> future;
+        synchronized (this) {
+            if (job.state == State.CANCELED || !jobs.containsKey(job.id)) return false;
+            queued = job.state == State.QUEUED;
+            job.state = State.CANCELED;
+            job.metrics.canceled();
+            future = job.future;
+            if (queued) {
+                queue.remove(job);
+                jobs.remove(job.id);
+            }
+        }
+        if (queued) {
+            retire(job);
+            job.work.abort(new CancellationException("Job " + job.id + " canceled"));
+        } else if (future != null) {
+            future.cancel(true);
+        }
+        return true;
+    }
+
+    private void dispatch() {
+        List<Job> ready = new ArrayList<>();
+        synchronized (this) {
+            while (!queue.isEmpty()) {
+                Job next = queue.peek();
+                int limit = next.priority == Priority.INTERACTIVE ? maxConcurrent + 1 : maxConcurrent;
+                if (running >= limit) break;
+                queue.poll();
+                running++;
+                next.state = State.RUNNING;
+                next.startedAt = System.currentTimeMillis();
+                next.metrics.started();
+                ready.add(next);
+            }
+        }
+        for (Job job : ready) start(job);
+    }
+
+    private void retire(Job job) {
+        job.metrics.finished();
+        history.add(job.metrics);
+    }
+
+    private void start(Job job) {
+        try {
+            Future<?> future = job.work.start();
+            boolean canceled;
+            synchronized (this) {
+                job.future = future;
+                canceled = job.state == State.CANCELED;
+            }
+            if (canceled && future != null) future.cancel(true);
+        } catch (Exception e) {
+            job.work.abort(e);
+            finish(job.id);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.okanbeydanol.videoHelper;
+
+import android.media.MediaExtractor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.ypresto.androidtranscoder.utils.MediaExtractorUtils;
+
+/**
+ * Presentation times and file offsets of the sync samples of a source's first video track. Built once from the
+ * MP4 sample tables (or, for other containers, one extractor pass) and kept on disk next to the other caches;
+ * an entry is rebuilt when the source's size or modification time changes.
+ */
+final class KeyframeIndex {
+    /** Times are microseconds in presentation order; an offset is -1 when the container doesn't expose it. */
+    final long[] timesUs;
+    final long[] offsets;
+    final long durationUs;
+
+    KeyframeIndex(long[] timesUs, long[] offsets, long durationUs) {
+        this.timesUs = timesUs;
+        this.offsets = offsets;
+        this.durationUs = durationUs;
+    }
+
+    int count() {
+        return timesUs.length;
+    }
+
+    /** The last keyframe at or before timeUs; the first keyframe when timeUs precedes them all. */
+    long keyframeAtOrBefore(long timeUs) {
+        int index = Arrays.binarySearch(timesUs, timeUs);
+        if (index < 0) index = Math.max(0, -index - 2);
+        return timesUs[index];
+    }
+
+    static KeyframeIndex build(File source) throws IOException {
+        KeyframeIndex index = fromSampleTables(source);
+        return index != null ? index : fromExtractor(source);
+    }
+
+    private static KeyframeIndex fromSampleTables(File source) {
+        try (FileInputStream in = new FileInputStream(source); FileChannel channel = in.getChannel()) {
+            Mp4Movie movie = Mp4Parser.parse(channel);
+            Mp4Track video = movie == null || movie.fragmented ? null : movie.firstTrack("video/");
+            Mp4SampleTable table = video != null ? Mp4SampleTable.parse(movie.moov, video) : null;
+            if (table == null || table.sampleCount == 0) return null;
+            int count = table.syncSamples != null ? table.syncSamples.length : table.sampleCount;
+            long[] times = new long[count];
+            long[] offsets = new long[count];
+            long editStart = Math.max(0, video.editMediaTime);
+            for (int i = 0; i < count; i++) {
+                int sample = table.syncSamples != null ? table.syncSamples[i] : i;
+                long time = table.decodeTimes[sample] + table.compositionOffset(sample) - editStart;
+                times[i] = Math.max(0, table.toMicros(time));
+                offsets[i] = table.offsets[sample];
+            }
+            sortByTime(times, offsets);
+            return new KeyframeIndex(times, offsets, table.toMicros(table.duration() - editStart));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static KeyframeIndex fromExtractor(File source) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(source.getAbsolutePath());
+            MediaExtractorUtils.TrackResult tracks = MediaExtractorUtils.getFirstVideoAndAudioTrack(extractor);
+            if (tracks.mVideoTrackFormat == null) throw new IOException("No video track found in " + source);
+            extractor.selectTrack(tracks.mVideoTrackIndex);
+            Mp4Writer.LongList times = new Mp4Writer.LongList();
+            long lastUs = 0;
+            while (extractor.getSampleTrackIndex() >= 0) {
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException();
+                long timeUs = extractor.getSampleTime();
+                if ((extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0) times.add(timeUs);
+                lastUs = Math.max(lastUs, timeUs);
+                extractor.advance();
+            }
+            if (times.size() == 0) throw new IOException("No keyframes found in " + source);
+            long[] offsets = new long[times.size()];
+            Arrays.fill(offsets, -1);
+            long[] sorted = times.toArray();
+            Arrays.sort(sorted);
+            return new KeyframeIndex(sorted, offsets, lastUs);
+        } finally {
+            extractor.release();
+        }
+    }
+
+    private static void sortByTime(long[] times, long[] offsets) {
+        for (int i = 1; i < times.length; i++) {
+            if (times[i] >= times[i - 1]) continue;
+            // Rare: sync samples reordered by composition offsets; an insertion sort keeps the pairs together.
+            long time = times[i];
+            long offset = offsets[i];
+            int j = i - 1;
+            for (; j >= 0 && times[j] > time; j--) {
+                times[j + 1] = times[j];
+                offsets[j + 1] = offsets[j];
+            }
+            times[j + 1] = time;
+            offsets[j + 1] = offset;
+        }
+    }
+
+    /** Indexes kept in memory for the most recent sources and on disk, one small file per source. */
+    static final class Store {
+        private static final int MAGIC = 0x4B464931; // "KFI1"
+        private static final int MEMORY_ENTRIES = 16;
+        private static final int MAX_FILES = 512;
+
+        private final File directory;
+        private final Map<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+
+        Store(File directory) {
+            this.directory = directory;
+        }
+
+        KeyframeIndex get(File source) throws IOException {
+            String path = source.getCanonicalPath();
+            long size = source.length();
+            long lastModified = source.lastModified();
+            synchronized (memory) {
+                Entry entry = memory.get(path);
+                if (entry != null && entry.size == size && entry.lastModified == lastModified) return entry.index;
+            }
+            File file = new File(directory, Integer.toHexString(path.hashCode()) + ".kfi");
+            KeyframeIndex index = read(file, path, size, lastModified);
+            if (index == null) {
+                index = build(source);
+                write(file, path, size, lastModified, index);
+            }
+            synchronized (memory) {
+                memory.put(path, new Entry(size, lastModified, index));
+                if (memory.size() > MEMORY_ENTRIES) {
+                    memory.remove(memory.keySet().iterator().next());
+                }
+            }
+            return index;
+        }
+
+        private static KeyframeIndex read(File file, String path, long size, long lastModified) {
+            if (!file.exists()) return null;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != MAGIC || !in.readUTF().equals(path) || in.readLong() != size
+                    || in.readLong() != lastModified) {
+                    return null;
+                }
+                long durationUs = in.readLong();
+                int count = in.readInt();
+                long[] times = new long[count];
+                long[] offsets = new long[count];
+                for (int i = 0; i < count; i++) times[i] = in.readLong();
+                for (int i = 0; i < count; i++) offsets[i] = in.readLong();
+                return new KeyframeIndex(times, offsets, durationUs);
+            } catch (IOException e) {
+                file.delete();
+                return null;
+            }
+        }
+
+        private void write(File file, String path, long size, long lastModified, KeyframeIndex index) {
+            if (!directory.isDirectory() && !directory.mkdirs()) return;
+            File tmp = new File(file.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeUTF(path);
+                out.writeLong(size);
+                out.writeLong(lastModified);
+                out.writeLong(index.durationUs);
+                out.writeInt(index.count());
+                for (long time : index.timesUs) out.writeLong(time);
+                for (long offset : index.offsets) out.writeLong(offset);
+            } catch (IOException e) {
+                tmp.delete();
+                return;
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                return;
+            }
+            trim();
+        }
+
+        /** Drops the least recently written files once there are more than MAX_FILES. */
+        private void trim() {
+            File[] files = directory.listFiles((dir, name) -> name.endsWith(".kfi"));
+            if (files == null || files.length <= MAX_FILES) return;
+            Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+            for (int i = 0; i < files.length - MAX_FILES; i++) files[i].delete();
+        }
+
+        private static final class Entry {
+            final long size;
+            final long lastModified;
+            final KeyframeIndex index;
+
+            Entry(long size, long lastModified, KeyframeIndex index) {
+                this.size = size;
+                this.lastModified = lastModified;
+                this.index = index;
+            }
+        }
+    }
+}
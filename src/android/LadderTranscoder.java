@@ -0,0 +1,390 @@
+package com.okanbeydanol.videoHelper;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.opengl.EGLSurface;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.ypresto.androidtranscoder.format.MediaFormatStrategy;
+import net.ypresto.androidtranscoder.utils.MediaExtractorUtils;
+
+/**
+ * Produces several renditions of one source from a single decode. Every decoded frame is drawn once per
+ * rendition into that rendition's encoder surface, all sharing one EGL context, and the audio track is processed
+ * once and written to every output.
+ */
+final class LadderTranscoder {
+    private static final long SLEEP_TO_WAIT_TRACK_MS = 10;
+    private static final String KEY_ROTATION_DEGREES = "rotation-degrees";
+
+    interface Listener {
+        void onProgress(int rendition, double fraction);
+
+        void onRenditionCompleted(int rendition, String outputPath);
+
+        void onCompleted();
+
+        void onCanceled();
+
+        void onFailed(Exception exception);
+    }
+
+    static final class Rendition {
+        final String outputPath;
+        final MediaFormatStrategy strategy;
+        /** Counts the frames this rendition's encoder emits when set. */
+        AtomicLong frameCounter;
+
+        Rendition(String outputPath, MediaFormatStrategy strategy) {
+            this.outputPath = outputPath;
+            this.strategy = strategy;
+        }
+
+        Rendition setFrameCounter(AtomicLong frames) {
+            this.frameCounter = frames;
+            return this;
+        }
+    }
+
+    private final String inputPath;
+    private final List<Rendition> renditions;
+    private final MediaFormatStrategy audioStrategy;
+    private final long startUs;
+    private final long endUs;
+    private JobMetrics metrics;
+
+    /** The audio track is prepared once with audioStrategy; the video strategies of the renditions must re-encode. */
+    LadderTranscoder(String inputPath, List<Rendition> renditions, MediaFormatStrategy audioStrategy, long startUs, long endUs) {
+        this.inputPath = inputPath;
+        this.renditions = renditions;
+        this.audioStrategy = audioStrategy;
+        this.startUs = Math.max(0, startUs);
+        this.endUs = endUs > 0 ? endUs : Long.MAX_VALUE;
+    }
+
+    /** Records read bytes, encoded frames, codec names and the time spent under the job's metrics. */
+    LadderTranscoder setMetrics(JobMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    Future<Void> start(ExecutorService executor, Listener listener) {
+        AtomicBoolean started = new AtomicBoolean();
+        FutureTask<Void> task = new FutureTask<Void>(() -> {
+            started.set(true);
+            try {
+                transcode(listener);
+                listener.onCompleted();
+            } catch (InterruptedException | ClosedByInterruptException e) {
+                listener.onCanceled();
+            } catch (Exception e) {
+                listener.onFailed(e);
+            }
+            return null;
+        }) {
+            @Override protected void done() {
+                if (isCancelled() && started.compareAndSet(false, true)) listener.onCanceled();
+            }
+        };
+        executor.execute(task);
+        return task;
+    }
+
+    private void transcode(Listener listener) throws IOException, InterruptedException {
+        MediaExtractor extractor = new MediaExtractor();
+        List<RangeTranscoder.QueuedMuxer> muxers = new ArrayList<>();
+        List<RangeTranscoder.TrackPipeline> pipelines = new ArrayList<>();
+        FanOutVideoPipeline video = null;
+        RangeTranscoder.TrackPipeline audio = null;
+        boolean success = false;
+        long begunAt = metrics != null ? metrics.begin("transcode") : 0;
+        try {
+            extractor.setDataSource(inputPath);
+            MediaExtractorUtils.TrackResult tracks = MediaExtractorUtils.getFirstVideoAndAudioTrack(extractor);
+            MediaFormat videoInput = tracks.mVideoTrackFormat;
+            MediaFormat audioInput = tracks.mAudioTrackFormat;
+            if (videoInput == null) throw new IOException("No video track found in " + inputPath);
+            int rotation = 0;
+            if (videoInput.containsKey(KEY_ROTATION_DEGREES)) {
+                rotation = videoInput.getInteger(KEY_ROTATION_DEGREES);
+                videoInput.setInteger(KEY_ROTATION_DEGREES, 0);
+            }
+
+            List<MediaFormat> outputs = new ArrayList<>();
+            for (Rendition rendition : renditions) {
+                MediaFormat output = rendition.strategy.createVideoOutputFormat(videoInput);
+                if (output == null) throw new IllegalArgumentException("Ladder renditions must re-encode the video");
+                outputs.add(output);
+                RangeTranscoder.QueuedMuxer muxer = new RangeTranscoder.QueuedMuxer(new RangeTranscoder.PlatformMuxer(
+                    new MediaMuxer(rendition.outputPath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4)), audioInput != null ? 2 : 1);
+                muxer.setOrientationHint(rotation);
+                muxers.add(muxer);
+            }
+
+            extractor.selectTrack(tracks.mVideoTrackIndex);
+            extractor.seekTo(startUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            long syncUs = Math.max(0, extractor.getSampleTime());
+            video = new FanOutVideoPipeline(tracks.mVideoTrackIndex, videoInput, outputs, muxers, renditions, startUs);
+            pipelines.add(video);
+            if (audioInput != null) {
+                extractor.selectTrack(tracks.mAudioTrackIndex);
+                extractor.seekTo(syncUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                MediaFormat audioOutput = audioStrategy.createAudioOutputFormat(audioInput);
+                FanOutSink sink = new FanOutSink(muxers);
+                audio = audioOutput == null
+                    ? new RangeTranscoder.PassthroughPipeline(tracks.mAudioTrackIndex, audioInput, sink, startUs)
+                    : new RangeTranscoder.AudioPipeline(tracks.mAudioTrackIndex, audioInput, audioOutput, sink, startUs);
+                pipelines.add(audio);
+            }
+
+            long rangeUs = Math.min(endUs, RangeTranscoder.sourceDurationUs(videoInput, audioInput)) - startUs;
+            double[] lastProgress = new double[renditions.size()];
+            boolean[] reported = new boolean[renditions.size()];
+            while (!RangeTranscoder.allDone(pipelines)) {
+                if (Thread.interrupted()) throw new InterruptedException();
+                boolean stepped = RangeTranscoder.feed(extractor, pipelines, endUs);
+                for (RangeTranscoder.TrackPipeline pipeline : pipelines) {
+                    stepped |= pipeline.drain();
+                }
+                if (!stepped) Thread.sleep(SLEEP_TO_WAIT_TRACK_MS);
+
+                double audioProgress = audio == null || audio.outputDone ? 1 : fraction(audio.writtenUs, rangeUs);
+                for (int i = 0; i < renditions.size(); i++) {
+                    Encoder encoder = video.encoders.get(i);
+                    double progress = Math.min(encoder.done ? 1 : fraction(encoder.writtenUs, rangeUs), audioProgress);
+                    if (progress != lastProgress[i]) {
+                        lastProgress[i] = progress;
+                        listener.onProgress(i, progress);
+                    }
+                    // A rendition is complete once its encoder and the shared audio track are both done.
+                    if (!reported[i] && encoder.done && (audio == null || audio.outputDone)) {
+                        reported[i] = true;
+                        muxers.get(i).stop();
+                        listener.onRenditionCompleted(i, renditions.get(i).outputPath);
+                    }
+                }
+            }
+            success = true;
+        } finally {
+            if (metrics != null) report(pipelines, video, begunAt);
+            for (RangeTranscoder.TrackPipeline pipeline : pipelines) {
+                try { pipeline.release(); } catch (Throwable ignored) {}
+            }
+            try { extractor.release(); } catch (Throwable ignored) {}
+            for (RangeTranscoder.QueuedMuxer muxer : muxers) {
+                try { muxer.release(); } catch (Throwable ignored) {}
+            }
+            if (!success) {
+                for (Rendition rendition : renditions) new File(rendition.outputPath).delete();
+            }
+        }
+    }
+
+    private void report(List<RangeTranscoder.TrackPipeline> pipelines, FanOutVideoPipeline video, long begunAt) {
+        for (RangeTranscoder.TrackPipeline pipeline : pipelines) {
+            metrics.read(pipeline.bytesRead);
+            if (!(pipeline instanceof RangeTranscoder.CodecPipeline)) continue;
+            RangeTranscoder.CodecPipeline codecs = (RangeTranscoder.CodecPipeline) pipeline;
+            metrics.codec(codecs.decoder.getName());
+            if (codecs.encoder != null) metrics.codec(codecs.encoder.getName());
+        }
+        if (video != null) {
+            for (Encoder encoder : video.encoders) {
+                metrics.codec(encoder.codec.getName());
+                metrics.encoded(encoder.frames);
+            }
+        }
+        metrics.end("transcode", begunAt);
+    }
+
+    private static double fraction(long writtenUs, long rangeUs) {
+        return rangeUs <= 0 ? 0 : Math.max(0, Math.min(1, (double) writtenUs / rangeUs));
+    }
+
+    /** Writes every sample of a track to all muxers, each of which numbers its tracks independently. */
+    private static final class FanOutSink implements RangeTranscoder.TrackSink {
+        private final List<RangeTranscoder.QueuedMuxer> muxers;
+        private final List<int[]> tracks = new ArrayList<>();
+
+        FanOutSink(List<RangeTranscoder.QueuedMuxer> muxers) {
+            this.muxers = muxers;
+        }
+
+        @Override
+        public int addTrack(MediaFormat format) {
+            int[] perMuxer = new int[muxers.size()];
+            for (int i = 0; i < perMuxer.length; i++) perMuxer[i] = muxers.get(i).addTrack(format);
+            tracks.add(perMuxer);
+            return tracks.size() - 1;
+        }
+
+        @Override
+        public void writeSampleData(int track, ByteBuffer data, MediaCodec.BufferInfo info) {
+            int[] perMuxer = tracks.get(track);
+            for (int i = 0; i < perMuxer.length; i++) muxers.get(i).writeSampleData(perMuxer[i], data.duplicate(), info);
+        }
+    }
+
+    private static final class Encoder {
+        final MediaCodec codec;
+        final RangeTranscoder.QueuedMuxer muxer;
+        final int width;
+        final int height;
+        final Surface surface;
+        final EGLSurface eglSurface;
+        final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        final AtomicLong frameCounter;
+        int muxerTrack = -1;
+        long frames;
+        boolean done;
+        long writtenUs;
+
+        Encoder(MediaCodec codec, RangeTranscoder.QueuedMuxer muxer, AtomicLong frameCounter, int width, int height,
+                Surface surface, EGLSurface eglSurface) {
+            this.codec = codec;
+            this.muxer = muxer;
+            this.frameCounter = frameCounter;
+            this.width = width;
+            this.height = height;
+            this.surface = surface;
+            this.eglSurface = eglSurface;
+        }
+    }
+
+    /** One decoder whose frames are rendered into every rendition's encoder. */
+    private static final class FanOutVideoPipeline extends RangeTranscoder.CodecPipeline {
+        private final long startUs;
+        private final EglCore egl;
+        private final List<Encoder> encoders = new ArrayList<>();
+        private DecoderOutputSurface outputSurface;
+
+        FanOutVideoPipeline(int extractorTrack, MediaFormat inputFormat, List<MediaFormat> outputFormats,
+                            List<RangeTranscoder.QueuedMuxer> muxers, List<Rendition> renditions, long startUs) throws IOException {
+            super(extractorTrack, null, MediaCodec.createDecoderByType(inputFormat.getString(MediaFormat.KEY_MIME)));
+            this.startUs = startUs;
+            // The caller only releases a pipeline it got back, so a failed setup (typically the device running out
+            // of encoder instances a few renditions in) has to release what it already holds.
+            try {
+                egl = new EglCore();
+                for (int i = 0; i < outputFormats.size(); i++) {
+                    encoders.add(createEncoder(outputFormats.get(i), muxers.get(i), renditions.get(i).frameCounter));
+                }
+                egl.makeCurrent(encoders.get(0).eglSurface);
+                outputSurface = new DecoderOutputSurface();
+                decoder.configure(inputFormat, outputSurface.getSurface(), null, 0);
+                decoder.start();
+            } catch (IOException | RuntimeException e) {
+                release();
+                throw e;
+            }
+        }
+
+        private Encoder createEncoder(MediaFormat outputFormat, RangeTranscoder.QueuedMuxer muxer, AtomicLong frameCounter)
+            throws IOException {
+            MediaCodec codec = MediaCodec.createEncoderByType(outputFormat.getString(MediaFormat.KEY_MIME));
+            Surface surface = null;
+            EGLSurface eglSurface = null;
+            try {
+                codec.configure(outputFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+                surface = codec.createInputSurface();
+                eglSurface = egl.createWindowSurface(surface);
+                codec.start();
+                return new Encoder(codec, muxer, frameCounter, outputFormat.getInteger(MediaFormat.KEY_WIDTH),
+                    outputFormat.getInteger(MediaFormat.KEY_HEIGHT), surface, eglSurface);
+            } catch (RuntimeException e) {
+                egl.releaseSurface(eglSurface);
+                if (surface != null) surface.release();
+                codec.release();
+                throw e;
+            }
+        }
+
+        @Override
+        boolean drain() {
+            boolean stepped = false;
+            boolean allDone = true;
+            for (Encoder encoder : encoders) {
+                stepped |= drainEncoder(encoder);
+                allDone &= encoder.done;
+            }
+            outputDone = allDone;
+            stepped |= queueDecoderEos();
+            if (decoderDone) return stepped;
+            int index = decoder.dequeueOutputBuffer(decoderInfo, 0);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) return stepped;
+            if (index < 0) return true;
+            if ((decoderInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                decoder.releaseOutputBuffer(index, false);
+                for (Encoder encoder : encoders) encoder.codec.signalEndOfInputStream();
+                decoderDone = true;
+                return true;
+            }
+            boolean render = decoderInfo.size > 0 && decoderInfo.presentationTimeUs >= startUs;
+            decoder.releaseOutputBuffer(index, render);
+            if (render) {
+                outputSurface.awaitNewImage();
+                long presentationNs = (decoderInfo.presentationTimeUs - startUs) * 1000L;
+                for (Encoder encoder : encoders) {
+                    egl.makeCurrent(encoder.eglSurface);
+                    outputSurface.drawImage(encoder.width, encoder.height);
+                    egl.setPresentationTime(encoder.eglSurface, presentationNs);
+                    egl.swapBuffers(encoder.eglSurface);
+                }
+            }
+            return true;
+        }
+
+        private static boolean drainEncoder(Encoder encoder) {
+            if (encoder.done) return false;
+            boolean stepped = false;
+            while (true) {
+                int index = encoder.codec.dequeueOutputBuffer(encoder.info, 0);
+                if (index == MediaCodec.INFO_TRY_AGAIN_LATER) return stepped;
+                stepped = true;
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    encoder.muxerTrack = encoder.muxer.addTrack(encoder.codec.getOutputFormat());
+                    continue;
+                }
+                if (index < 0) continue;
+                if ((encoder.info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && encoder.info.size > 0) {
+                    encoder.muxer.writeSampleData(encoder.muxerTrack, encoder.codec.getOutputBuffer(index), encoder.info);
+                    encoder.writtenUs = encoder.info.presentationTimeUs;
+                    encoder.frames++;
+                    if (encoder.frameCounter != null) encoder.frameCounter.incrementAndGet();
+                }
+                encoder.codec.releaseOutputBuffer(index, false);
+                if ((encoder.info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    encoder.done = true;
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        void release() {
+            if (outputSurface != null) outputSurface.release();
+            for (Encoder encoder : encoders) {
+                egl.releaseSurface(encoder.eglSurface);
+                encoder.surface.release();
+                try { encoder.codec.stop(); } catch (Throwable ignored) {}
+                encoder.codec.release();
+            }
+            if (egl != null) egl.release();
+            super.release();
+        }
+    }
+}
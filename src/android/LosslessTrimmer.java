@@ -0,0 +1,105 @@
+package com.okanbeydanol.videoHelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Trims an MP4 by rewriting its sample tables. The start is snapped to the sync sample at or before the
+ * requested time on the first video track; every other track is cut at the same presentation time.
+ */
+final class LosslessTrimmer {
+    private LosslessTrimmer() {
+    }
+
+    static final class Result {
+        final long startUs;
+        final long endUs;
+
+        Result(long startUs, long endUs) {
+            this.startUs = startUs;
+            this.endUs = endUs;
+        }
+    }
+
+    /**
+     * Returns null when the container cannot be handled here, malformed sample tables included, and the caller
+     * should fall back to remuxing.
+     */
+    static Result trim(File input, File output, long startUs, long endUs, boolean fastStart) throws IOException {
+        try (FileInputStream in = new FileInputStream(input); FileChannel channel = in.getChannel()) {
+            Mp4Movie movie = Mp4Parser.parse(channel);
+            if (movie == null || movie.fragmented) return null;
+
+            List<Mp4Track> tracks = new ArrayList<>();
+            List<Mp4SampleTable> tables = new ArrayList<>();
+            for (Mp4Track track : movie.tracks) {
+                if (!track.isVideo() && !track.isAudio()) continue;
+                Mp4SampleTable table = Mp4SampleTable.parse(movie.moov, track);
+                if (table == null) return null;
+                if (table.sampleCount == 0) continue;
+                tracks.add(track);
+                tables.add(table);
+            }
+            if (tracks.isEmpty()) return null;
+
+            int reference = 0;
+            for (int i = 0; i < tracks.size(); i++) {
+                if (tracks.get(i).isVideo()) {
+                    reference = i;
+                    break;
+                }
+            }
+            Mp4SampleTable refTable = tables.get(reference);
+            int refFirst = refTable.syncAtOrBefore(refTable.sampleAtOrBefore(refTable.fromMicros(startUs)));
+            int refEnd = endUs == Long.MAX_VALUE ? refTable.sampleCount : refTable.sampleAtOrAfter(refTable.fromMicros(endUs));
+            if (refEnd <= refFirst) return null;
+            long cutStartUs = refTable.toMicros(refTable.decodeTimes[refFirst]);
+            long cutEndUs = refTable.toMicros(refTable.decodeTimes[refEnd]);
+
+            List<Mp4Writer.TrackPlan> plans = new ArrayList<>();
+            for (int i = 0; i < tracks.size(); i++) {
+                Mp4Track track = tracks.get(i);
+                Mp4SampleTable table = tables.get(i);
+                long editStart = Math.max(0, track.editMediaTime);
+                long cutStart = table.fromMicros(cutStartUs) + editStart;
+                int first = refFirst;
+                int end = refEnd;
+                if (i != reference) {
+                    first = table.sampleAtOrBefore(cutStart);
+                    if (track.isVideo()) first = table.syncAtOrBefore(first);
+                    end = endUs == Long.MAX_VALUE ? table.sampleCount
+                        : table.sampleAtOrAfter(table.fromMicros(cutEndUs) + editStart);
+                } else {
+                    cutStart = table.decodeTimes[refFirst] + editStart;
+                }
+                // Keep the original edit offset and add whatever lies between the kept sample and the cut.
+                long mediaTime = cutStart - table.decodeTimes[first];
+                if (mediaTime == 0 && track.editMediaTime < 0) mediaTime = -1;
+                if (end <= first) continue;
+                Mp4Writer.TrackPlan plan = new Mp4Writer.TrackPlan(movie.moov, track).add(channel, table, first, end);
+                plan.mediaTime = mediaTime;
+                plans.add(plan);
+            }
+
+            Mp4Writer writer = new Mp4Writer(Mp4Writer.readBox(channel, movie.topLevelBox(Mp4Parser.FTYP)), movie.moov)
+                .setFastStart(fastStart);
+            boolean success = false;
+            try (RandomAccessFile out = new RandomAccessFile(output, "rw"); FileChannel outChannel = out.getChannel()) {
+                writer.write(plans, outChannel, null);
+                success = true;
+            } finally {
+                if (!success) output.delete();
+            }
+            return new Result(cutStartUs, cutEndUs);
+        } catch (RuntimeException e) {
+            // Sample tables that contradict each other or the file; the remux path copies what it can read.
+            output.delete();
+            return null;
+        }
+    }
+}
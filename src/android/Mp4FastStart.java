@@ -0,0 +1,183 @@
+package com.okanbeydanol.videoHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.okanbeydanol.videoHelper.Mp4Parser.*;
+import static com.okanbeydanol.videoHelper.Mp4SampleTable.CO64;
+import static com.okanbeydanol.videoHelper.Mp4SampleTable.STCO;
+
+/**
+ * Moves moov in front of mdat so playback can start before the whole file is downloaded. Only moov is held in
+ * memory; sample data is moved through the channel in fixed-size blocks. The file is rewritten into a sibling
+ * and renamed when there is room for a copy, and shifted in place otherwise.
+ */
+final class Mp4FastStart {
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final long SPACE_MARGIN = 16L * 1024 * 1024;
+    private static final String TEMP_SUFFIX = ".faststart.tmp";
+
+    private Mp4FastStart() {
+    }
+
+    /** Returns true when moov was moved; false when it already leads or the file isn't a plain MP4. */
+    static boolean apply(File file) throws IOException {
+        ByteBuffer moov;
+        long insertAt;
+        long moovOffset;
+        long moovSize;
+        long fileSize;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r"); FileChannel channel = in.getChannel()) {
+            Mp4Movie movie = Mp4Parser.parse(channel);
+            if (movie == null || movie.fragmented) return false;
+            Mp4Box moovBox = movie.topLevelBox(MOOV);
+            Mp4Box mdatBox = movie.topLevelBox(MDAT);
+            if (moovBox == null || mdatBox == null || moovBox.offset < mdatBox.offset) return false;
+            insertAt = mdatBox.offset;
+            moovOffset = moovBox.offset;
+            moovSize = moovBox.size;
+            fileSize = movie.fileSize;
+            moov = relocatedMoov(movie.moov);
+        }
+        if (moov == null) return false;
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && directory.getUsableSpace() > fileSize + moov.remaining() + SPACE_MARGIN) {
+            rewrite(file, moov, insertAt, moovOffset, moovSize, fileSize);
+        } else {
+            shiftInPlace(file, moov, insertAt, moovOffset, moovSize, fileSize);
+        }
+        return true;
+    }
+
+    /** Builds the moov to place before mdat, with chunk offsets shifted by its own size. */
+    private static ByteBuffer relocatedMoov(ByteBuffer moov) {
+        // Existing co64 tables stay 64-bit so the box never shrinks, which the in-place shift relies on.
+        boolean wide = containsBox(moov, 0, moov.capacity(), CO64);
+        // The box size doesn't depend on the offsets, so a first pass with no shift yields it.
+        ByteBuffer relocated = rebuild(moov, rebuild(moov, 0, wide).remaining(), wide);
+        if (relocated == null) relocated = rebuild(moov, rebuild(moov, 0, true).remaining(), true);
+        return relocated;
+    }
+
+    /** Returns null when a 32-bit offset would overflow and the tables must be rebuilt as co64. */
+    private static ByteBuffer rebuild(ByteBuffer moov, long delta, boolean wide) {
+        Mp4Writer.BoxWriter w = new Mp4Writer.BoxWriter();
+        if (!copyContainer(w, moov, 0, moov.capacity(), delta, wide)) return null;
+        return w.toBuffer();
+    }
+
+    private static boolean copyContainer(Mp4Writer.BoxWriter w, ByteBuffer src, int boxPos, int boxEnd, long delta, boolean wide) {
+        int box = w.begin(boxType(src, boxPos));
+        int pos = contentStart(src, boxPos);
+        while (pos + 8 <= boxEnd) {
+            int size = boxSize(src, pos, boxEnd);
+            if (size < 0) break;
+            int type = boxType(src, pos);
+            if (type == TRAK || type == MDIA || type == MINF || type == STBL) {
+                if (!copyContainer(w, src, pos, pos + size, delta, wide)) return false;
+            } else if (type == STCO || type == CO64) {
+                int p = contentStart(src, pos) + 4;
+                int count = src.getInt(p);
+                int table = w.fullBox(wide ? CO64 : STCO, 0);
+                w.putInt(count);
+                for (int i = 0; i < count; i++) {
+                    long offset = (type == CO64 ? src.getLong(p + 4 + i * 8) : src.getInt(p + 4 + i * 4) & 0xFFFFFFFFL) + delta;
+                    if (wide) {
+                        w.putLong(offset);
+                    } else if (offset > 0xFFFFFFFFL) {
+                        return false;
+                    } else {
+                        w.putInt((int) offset);
+                    }
+                }
+                w.end(table);
+            } else {
+                w.copy(src, pos, size);
+            }
+            pos += size;
+        }
+        w.end(box);
+        return true;
+    }
+
+    private static boolean containsBox(ByteBuffer buf, int boxPos, int boxEnd, int type) {
+        int pos = contentStart(buf, boxPos);
+        while (pos + 8 <= boxEnd) {
+            int size = boxSize(buf, pos, boxEnd);
+            if (size < 0) return false;
+            int childType = boxType(buf, pos);
+            if (childType == type) return true;
+            if ((childType == TRAK || childType == MDIA || childType == MINF || childType == STBL)
+                && containsBox(buf, pos, pos + size, type)) {
+                return true;
+            }
+            pos += size;
+        }
+        return false;
+    }
+
+    private static void rewrite(File file, ByteBuffer moov, long insertAt, long moovOffset, long moovSize, long fileSize)
+        throws IOException {
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        boolean success = false;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r"); FileChannel source = in.getChannel();
+             RandomAccessFile out = new RandomAccessFile(temp, "rw"); FileChannel target = out.getChannel()) {
+            target.truncate(0);
+            transfer(source, 0, insertAt, target);
+            Mp4Writer.writeFully(target, moov.duplicate());
+            transfer(source, insertAt, moovOffset - insertAt, target);
+            transfer(source, moovOffset + moovSize, fileSize - moovOffset - moovSize, target);
+            target.force(false);
+            success = true;
+        } finally {
+            if (!success) temp.delete();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Failed to replace " + file);
+        }
+    }
+
+    /** Shifts everything after insertAt towards the end, copying back to front so no block is overwritten early. */
+    private static void shiftInPlace(File file, ByteBuffer moov, long insertAt, long moovOffset, long moovSize, long fileSize)
+        throws IOException {
+        long growth = moov.remaining() - moovSize;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+            long tail = moovOffset + moovSize;
+            moveBackward(channel, tail, tail + growth, fileSize - tail, block);
+            moveBackward(channel, insertAt, insertAt + moov.remaining(), moovOffset - insertAt, block);
+            ByteBuffer header = moov.duplicate();
+            while (header.hasRemaining()) channel.write(header, insertAt + header.position());
+            channel.truncate(fileSize + growth);
+            channel.force(false);
+        }
+    }
+
+    private static void moveBackward(FileChannel channel, long from, long to, long length, ByteBuffer block) throws IOException {
+        if (length <= 0 || from == to) return;
+        long remaining = length;
+        while (remaining > 0) {
+            int n = (int) Math.min(block.capacity(), remaining);
+            remaining -= n;
+            block.clear().limit(n);
+            readFully(channel, block, from + remaining);
+            block.flip();
+            long position = to + remaining;
+            while (block.hasRemaining()) position += channel.write(block, position);
+        }
+    }
+
+    private static void transfer(FileChannel source, long position, long count, FileChannel target) throws IOException {
+        while (count > 0) {
+            long n = source.transferTo(position, count, target);
+            if (n <= 0) throw new IOException("transferTo made no progress at " + position);
+            position += n;
+            count -= n;
+        }
+    }
+}
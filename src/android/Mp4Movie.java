@@ -0,0 +1,85 @@
+package com.okanbeydanol.videoHelper;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.okanbeydanol.videoHelper.Mp4Parser.*;
+
+final class Mp4Movie {
+    final int majorBrand;
+    final List<Mp4Box> boxes;
+    final ByteBuffer moov;
+    final long fileSize;
+    final boolean fragmented;
+    final long timescale;
+    final long duration;
+    final List<Mp4Track> tracks;
+
+    private Mp4Movie(int majorBrand, List<Mp4Box> boxes, ByteBuffer moov, long fileSize, boolean fragmented,
+                     long timescale, long duration, List<Mp4Track> tracks) {
+        this.majorBrand = majorBrand;
+        this.boxes = Collections.unmodifiableList(boxes);
+        this.moov = moov;
+        this.fileSize = fileSize;
+        this.fragmented = fragmented;
+        this.timescale = timescale;
+        this.duration = duration;
+        this.tracks = Collections.unmodifiableList(tracks);
+    }
+
+    static Mp4Movie parse(int majorBrand, List<Mp4Box> boxes, ByteBuffer moov, long fileSize, boolean fragmented) {
+        int end = moov.capacity();
+        long timescale = 0;
+        long duration = 0;
+        List<Mp4Track> tracks = new ArrayList<>();
+        int pos = contentStart(moov, 0);
+        while (pos + 8 <= end) {
+            int size = boxSize(moov, pos, end);
+            if (size < 0) return null;
+            int type = boxType(moov, pos);
+            if (type == MVHD) {
+                int p = contentStart(moov, pos);
+                int version = moov.get(p) & 0xFF;
+                if (version == 1) {
+                    timescale = moov.getInt(p + 20) & 0xFFFFFFFFL;
+                    duration = moov.getLong(p + 24);
+                } else {
+                    timescale = moov.getInt(p + 12) & 0xFFFFFFFFL;
+                    duration = moov.getInt(p + 16) & 0xFFFFFFFFL;
+                }
+            } else if (type == TRAK) {
+                Mp4Track track = Mp4Track.parse(moov, pos, pos + size);
+                if (track != null) tracks.add(track);
+            } else if (type == MVEX) {
+                fragmented = true;
+            }
+            pos += size;
+        }
+        if (timescale == 0) return null;
+        return new Mp4Movie(majorBrand, boxes, moov, fileSize, fragmented, timescale, duration, tracks);
+    }
+
+    long durationUs() {
+        long durationUs = duration * 1_000_000L / timescale;
+        for (Mp4Track track : tracks) {
+            durationUs = Math.max(durationUs, track.durationUs());
+        }
+        return durationUs;
+    }
+
+    Mp4Track firstTrack(String mimePrefix) {
+        for (Mp4Track track : tracks) {
+            if (track.mime != null && track.mime.startsWith(mimePrefix)) return track;
+        }
+        return null;
+    }
+
+    Mp4Box topLevelBox(int type) {
+        for (Mp4Box box : boxes) {
+            if (box.type == type) return box;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,169 @@
+package com.okanbeydanol.videoHelper;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+final class Mp4Parser {
+    static final int FTYP = fourcc("ftyp");
+    static final int MOOV = fourcc("moov");
+    static final int MDAT = fourcc("mdat");
+    static final int MOOF = fourcc("moof");
+    static final int FREE = fourcc("free");
+    static final int SKIP = fourcc("skip");
+    static final int WIDE = fourcc("wide");
+    static final int PDIN = fourcc("pdin");
+    static final int UUID = fourcc("uuid");
+    static final int MVHD = fourcc("mvhd");
+    static final int MVEX = fourcc("mvex");
+    static final int TRAK = fourcc("trak");
+    static final int TKHD = fourcc("tkhd");
+    static final int EDTS = fourcc("edts");
+    static final int ELST = fourcc("elst");
+    static final int MDIA = fourcc("mdia");
+    static final int MDHD = fourcc("mdhd");
+    static final int HDLR = fourcc("hdlr");
+    static final int MINF = fourcc("minf");
+    static final int STBL = fourcc("stbl");
+    static final int STSD = fourcc("stsd");
+    static final int SINF = fourcc("sinf");
+    static final int FRMA = fourcc("frma");
+    static final int ESDS = fourcc("esds");
+    static final int VIDE = fourcc("vide");
+    static final int SOUN = fourcc("soun");
+
+    private static final int MAX_MOOV_SIZE = 64 * 1024 * 1024;
+
+    private Mp4Parser() {
+    }
+
+    static Mp4Movie parse(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(16);
+        List<Mp4Box> boxes = new ArrayList<>();
+        ByteBuffer moov = null;
+        int majorBrand = 0;
+        boolean fragmented = false;
+        long position = 0;
+        while (position + 8 <= fileSize) {
+            header.clear().limit(8);
+            readFully(channel, header, position);
+            long size = header.getInt(0) & 0xFFFFFFFFL;
+            int type = header.getInt(4);
+            int headerSize = 8;
+            if (size == 1) {
+                header.limit(16);
+                readFully(channel, header, position + 8);
+                size = header.getLong(8);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = fileSize - position;
+            }
+            if (boxes.isEmpty() && !isTopLevelType(type)) return null;
+            if (size < headerSize || position + size > fileSize) {
+                if (moov == null) return null;
+                break;
+            }
+            boxes.add(new Mp4Box(type, position, size, headerSize));
+            if (type == FTYP && size >= headerSize + 4) {
+                ByteBuffer brand = ByteBuffer.allocate(4);
+                readFully(channel, brand, position + headerSize);
+                majorBrand = brand.getInt(0);
+            } else if (type == MOOV) {
+                if (moov != null || size > MAX_MOOV_SIZE) return null;
+                moov = ByteBuffer.allocate((int) size);
+                readFully(channel, moov, position);
+            } else if (type == MOOF) {
+                fragmented = true;
+                break;
+            }
+            position += size;
+        }
+        if (moov == null) return null;
+        return Mp4Movie.parse(majorBrand, boxes, moov, fileSize, fragmented);
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new EOFException("Unexpected end of file at " + position);
+            position += read;
+        }
+    }
+
+    static int boxSize(ByteBuffer buf, int pos, int end) {
+        if (pos + 8 > end) return -1;
+        long size = buf.getInt(pos) & 0xFFFFFFFFL;
+        if (size == 1) {
+            if (pos + 16 > end) return -1;
+            size = buf.getLong(pos + 8);
+        } else if (size == 0) {
+            size = end - pos;
+        }
+        if (size < headerSize(buf, pos) || pos + size > end) return -1;
+        return (int) size;
+    }
+
+    static int headerSize(ByteBuffer buf, int pos) {
+        return buf.getInt(pos) == 1 ? 16 : 8;
+    }
+
+    static int boxType(ByteBuffer buf, int pos) {
+        return buf.getInt(pos + 4);
+    }
+
+    static int findChild(ByteBuffer buf, int start, int end, int type) {
+        int pos = start;
+        while (pos + 8 <= end) {
+            int size = boxSize(buf, pos, end);
+            if (size < 0) return -1;
+            if (boxType(buf, pos) == type) return pos;
+            pos += size;
+        }
+        return -1;
+    }
+
+    static int contentStart(ByteBuffer buf, int pos) {
+        return pos + headerSize(buf, pos);
+    }
+
+    static int boxEnd(ByteBuffer buf, int pos, int end) {
+        int size = boxSize(buf, pos, end);
+        return size < 0 ? -1 : pos + size;
+    }
+
+    static int fourcc(String type) {
+        return (type.charAt(0) << 24) | (type.charAt(1) << 16) | (type.charAt(2) << 8) | type.charAt(3);
+    }
+
+    static String typeName(int type) {
+        char[] chars = {(char) ((type >>> 24) & 0xFF), (char) ((type >>> 16) & 0xFF), (char) ((type >>> 8) & 0xFF), (char) (type & 0xFF)};
+        return new String(chars);
+    }
+
+    private static boolean isTopLevelType(int type) {
+        return type == FTYP || type == MOOV || type == MDAT || type == FREE || type == SKIP
+            || type == WIDE || type == PDIN || type == UUID;
+    }
+
+    static final class Mp4Box {
+        final int type;
+        final long offset;
+        final long size;
+        final int headerSize;
+
+        Mp4Box(int type, long offset, long size, int headerSize) {
+            this.type = type;
+            this.offset = offset;
+            this.size = size;
+            this.headerSize = headerSize;
+        }
+
+        long end() {
+            return offset + size;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.okanbeydanol.videoHelper;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static com.okanbeydanol.videoHelper.Mp4Parser.*;
+
+final class Mp4SampleTable {
+    static final int STTS = fourcc("stts");
+    static final int CTTS = fourcc("ctts");
+    static final int STSS = fourcc("stss");
+    static final int STSZ = fourcc("stsz");
+    static final int STZ2 = fourcc("stz2");
+    static final int STSC = fourcc("stsc");
+    static final int STCO = fourcc("stco");
+    static final int CO64 = fourcc("co64");
+
+    final long timescale;
+    final int sampleCount;
+    final int[] sizes;
+    final long[] offsets;
+    /** Decode time of every sample plus one trailing entry holding the end time of the last sample. */
+    final long[] decodeTimes;
+    final int[] compositionOffsets;
+    /** Zero-based indexes of sync samples, or null when every sample is a sync sample. */
+    final int[] syncSamples;
+
+    private Mp4SampleTable(long timescale, int[] sizes, long[] offsets, long[] decodeTimes,
+                           int[] compositionOffsets, int[] syncSamples) {
+        this.timescale = timescale;
+        this.sampleCount = sizes.length;
+        this.sizes = sizes;
+        this.offsets = offsets;
+        this.decodeTimes = decodeTimes;
+        this.compositionOffsets = compositionOffsets;
+        this.syncSamples = syncSamples;
+    }
+
+    static Mp4SampleTable parse(ByteBuffer buf, Mp4Track track) {
+        int start = contentStart(buf, track.stblPos);
+        int end = track.stblEnd;
+        int[] sizes = parseSizes(buf, start, end);
+        if (sizes == null) return null;
+        long[] offsets = parseOffsets(buf, start, end, sizes);
+        long[] decodeTimes = parseDecodeTimes(buf, start, end, sizes.length);
+        if (offsets == null || decodeTimes == null) return null;
+
+        int[] compositionOffsets = null;
+        int ctts = findChild(buf, start, end, CTTS);
+        if (ctts >= 0) {
+            int p = contentStart(buf, ctts) + 4;
+            int entryCount = buf.getInt(p);
+            compositionOffsets = new int[sizes.length];
+            int sample = 0;
+            for (int i = 0; i < entryCount && sample < sizes.length; i++) {
+                int count = buf.getInt(p + 4 + i * 8);
+                int offset = buf.getInt(p + 8 + i * 8);
+                for (int j = 0; j < count && sample < sizes.length; j++) compositionOffsets[sample++] = offset;
+            }
+        }
+
+        int[] syncSamples = null;
+        int stss = findChild(buf, start, end, STSS);
+        if (stss >= 0) {
+            int p = contentStart(buf, stss) + 4;
+            int entryCount = buf.getInt(p);
+            syncSamples = new int[entryCount];
+            for (int i = 0; i < entryCount; i++) syncSamples[i] = buf.getInt(p + 4 + i * 4) - 1;
+            Arrays.sort(syncSamples);
+        }
+        return new Mp4SampleTable(track.timescale, sizes, offsets, decodeTimes, compositionOffsets, syncSamples);
+    }
+
+    /** Sync samples stored back to back from offset 0, for payloads that don't come from a parsed file. */
+    static Mp4SampleTable contiguous(long timescale, int[] sizes, long[] decodeTimes) {
+        long[] offsets = new long[sizes.length];
+        for (int i = 1; i < sizes.length; i++) offsets[i] = offsets[i - 1] + sizes[i - 1];
+        return new Mp4SampleTable(timescale, sizes, offsets, decodeTimes, null, null);
+    }
+
+    boolean isSync(int sample) {
+        return syncSamples == null || Arrays.binarySearch(syncSamples, sample) >= 0;
+    }
+
+    /** Last sample whose decode time is at or before the given time, clamped to the first sample. */
+    int sampleAtOrBefore(long time) {
+        int index = Arrays.binarySearch(decodeTimes, 0, sampleCount, time);
+        if (index < 0) index = -index - 2;
+        return Math.max(0, index);
+    }
+
+    /** First sample whose decode time is at or after the given time; sampleCount when past the end. */
+    int sampleAtOrAfter(long time) {
+        int index = Arrays.binarySearch(decodeTimes, 0, sampleCount, time);
+        if (index < 0) return -index - 1;
+        while (index > 0 && decodeTimes[index - 1] == time) index--;
+        return index;
+    }
+
+    int syncAtOrBefore(int sample) {
+        if (syncSamples == null || syncSamples.length == 0) return sample;
+        int index = Arrays.binarySearch(syncSamples, sample);
+        if (index >= 0) return sample;
+        index = -index - 2;
+        return index >= 0 ? syncSamples[index] : syncSamples[0];
+    }
+
+    long duration() {
+        return decodeTimes[sampleCount];
+    }
+
+    long sampleDuration(int sample) {
+        return decodeTimes[sample + 1] - decodeTimes[sample];
+    }
+
+    int compositionOffset(int sample) {
+        return compositionOffsets == null ? 0 : compositionOffsets[sample];
+    }
+
+    long toMicros(long time) {
+        return time * 1_000_000L / timescale;
+    }
+
+    long fromMicros(long timeUs) {
+        return timeUs * timescale / 1_000_000L;
+    }
+
+    private static int[] parseSizes(ByteBuffer buf, int start, int end) {
+        int stsz = findChild(buf, start, end, STSZ);
+        if (stsz >= 0) {
+            int p = contentStart(buf, stsz) + 4;
+            int sampleSize = buf.getInt(p);
+            int count = buf.getInt(p + 4);
+            int[] sizes = new int[count];
+            if (sampleSize != 0) {
+                Arrays.fill(sizes, sampleSize);
+            } else {
+                for (int i = 0; i < count; i++) sizes[i] = buf.getInt(p + 8 + i * 4);
+            }
+            return sizes;
+        }
+        int stz2 = findChild(buf, start, end, STZ2);
+        if (stz2 < 0) return null;
+        int p = contentStart(buf, stz2) + 4;
+        int fieldSize = buf.get(p + 3) & 0xFF;
+        int count = buf.getInt(p + 4);
+        int[] sizes = new int[count];
+        p += 8;
+        for (int i = 0; i < count; i++) {
+            if (fieldSize == 4) {
+                int b = buf.get(p + i / 2) & 0xFF;
+                sizes[i] = (i % 2 == 0) ? (b >>> 4) : (b & 0x0F);
+            } else if (fieldSize == 8) {
+                sizes[i] = buf.get(p + i) & 0xFF;
+            } else if (fieldSize == 16) {
+                sizes[i] = buf.getShort(p + i * 2) & 0xFFFF;
+            } else {
+                return null;
+            }
+        }
+        return sizes;
+    }
+
+    private static long[] parseOffsets(ByteBuffer buf, int start, int end, int[] sizes) {
+        long[] chunkOffsets;
+        int stco = findChild(buf, start, end, STCO);
+        int co64 = findChild(buf, start, end, CO64);
+        if (stco >= 0) {
+            int p = contentStart(buf, stco) + 4;
+            chunkOffsets = new long[buf.getInt(p)];
+            for (int i = 0; i < chunkOffsets.length; i++) chunkOffsets[i] = buf.getInt(p + 4 + i * 4) & 0xFFFFFFFFL;
+        } else if (co64 >= 0) {
+            int p = contentStart(buf, co64) + 4;
+            chunkOffsets = new long[buf.getInt(p)];
+            for (int i = 0; i < chunkOffsets.length; i++) chunkOffsets[i] = buf.getLong(p + 4 + i * 8);
+        } else {
+            return null;
+        }
+        int stsc = findChild(buf, start, end, STSC);
+        if (stsc < 0) return null;
+        int p = contentStart(buf, stsc) + 4;
+        int entryCount = buf.getInt(p);
+        long[] offsets = new long[sizes.length];
+        int sample = 0;
+        for (int e = 0; e < entryCount; e++) {
+            int firstChunk = buf.getInt(p + 4 + e * 12) - 1;
+            int samplesPerChunk = buf.getInt(p + 8 + e * 12);
+            int descriptionIndex = buf.getInt(p + 12 + e * 12);
+            if (descriptionIndex != 1) return null;
+            int lastChunk = e + 1 < entryCount ? buf.getInt(p + 4 + (e + 1) * 12) - 1 : chunkOffsets.length;
+            for (int chunk = firstChunk; chunk < lastChunk && chunk < chunkOffsets.length; chunk++) {
+                long offset = chunkOffsets[chunk];
+                for (int i = 0; i < samplesPerChunk && sample < sizes.length; i++) {
+                    offsets[sample] = offset;
+                    offset += sizes[sample++];
+                }
+            }
+        }
+        return sample == sizes.length ? offsets : null;
+    }
+
+    private static long[] parseDecodeTimes(ByteBuffer buf, int start, int end, int sampleCount) {
+        int stts = findChild(buf, start, end, STTS);
+        if (stts < 0) return null;
+        int p = contentStart(buf, stts) + 4;
+        int entryCount = buf.getInt(p);
+        long[] decodeTimes = new long[sampleCount + 1];
+        int sample = 0;
+        long time = 0;
+        for (int i = 0; i < entryCount && sample < sampleCount; i++) {
+            int count = buf.getInt(p + 4 + i * 8);
+            long delta = buf.getInt(p + 8 + i * 8) & 0xFFFFFFFFL;
+            for (int j = 0; j < count && sample < sampleCount; j++) {
+                decodeTimes[sample++] = time;
+                time += delta;
+            }
+        }
+        if (sample != sampleCount) return null;
+        decodeTimes[sampleCount] = time;
+        return decodeTimes;
+    }
+}
@@ -0,0 +1,239 @@
+package com.okanbeydanol.videoHelper;
+
+import java.nio.ByteBuffer;
+
+import static com.okanbeydanol.videoHelper.Mp4Parser.*;
+
+final class Mp4Track {
+    final int trakPos;
+    final int trakEnd;
+    final int trackId;
+    final int handlerType;
+    final int sampleEntryType;
+    final String mime;
+    final int width;
+    final int height;
+    final int rotationDegrees;
+    final long timescale;
+    final long duration;
+    final int stblPos;
+    final int stblEnd;
+    /** media_time of the first non-empty edit, or -1 when the track has no edit list. */
+    final long editMediaTime;
+
+    private Mp4Track(int trakPos, int trakEnd, int trackId, int handlerType, int sampleEntryType, String mime,
+                     int width, int height, int rotationDegrees, long timescale, long duration, int stblPos, int stblEnd,
+                     long editMediaTime) {
+        this.trakPos = trakPos;
+        this.trakEnd = trakEnd;
+        this.trackId = trackId;
+        this.handlerType = handlerType;
+        this.sampleEntryType = sampleEntryType;
+        this.mime = mime;
+        this.width = width;
+        this.height = height;
+        this.rotationDegrees = rotationDegrees;
+        this.timescale = timescale;
+        this.duration = duration;
+        this.stblPos = stblPos;
+        this.stblEnd = stblEnd;
+        this.editMediaTime = editMediaTime;
+    }
+
+    /** The stsd box of this track; equal descriptions mean samples can be joined into one track. */
+    ByteBuffer sampleDescription(ByteBuffer moov) {
+        int stsd = findChild(moov, contentStart(moov, stblPos), stblEnd, STSD);
+        if (stsd < 0) return ByteBuffer.allocate(0);
+        ByteBuffer box = moov.duplicate();
+        box.limit(boxEnd(moov, stsd, stblEnd)).position(stsd);
+        return box.slice();
+    }
+
+    static Mp4Track parse(ByteBuffer buf, int trakPos, int trakEnd) {
+        int trakContent = contentStart(buf, trakPos);
+        int tkhd = findChild(buf, trakContent, trakEnd, TKHD);
+        int mdia = findChild(buf, trakContent, trakEnd, MDIA);
+        if (tkhd < 0 || mdia < 0) return null;
+
+        int p = contentStart(buf, tkhd);
+        int version = buf.get(p) & 0xFF;
+        int trackId = buf.getInt(p + (version == 1 ? 20 : 12));
+        int matrixPos = p + (version == 1 ? 52 : 40);
+        int rotationDegrees = rotationFromMatrix(buf.getInt(matrixPos), buf.getInt(matrixPos + 4),
+            buf.getInt(matrixPos + 12), buf.getInt(matrixPos + 16));
+        int tkhdWidth = buf.getInt(matrixPos + 36) >>> 16;
+        int tkhdHeight = buf.getInt(matrixPos + 40) >>> 16;
+
+        int mdiaEnd = boxEnd(buf, mdia, trakEnd);
+        int mdiaContent = contentStart(buf, mdia);
+        int mdhd = findChild(buf, mdiaContent, mdiaEnd, MDHD);
+        int hdlr = findChild(buf, mdiaContent, mdiaEnd, HDLR);
+        int minf = findChild(buf, mdiaContent, mdiaEnd, MINF);
+        if (mdhd < 0 || hdlr < 0 || minf < 0) return null;
+
+        p = contentStart(buf, mdhd);
+        version = buf.get(p) & 0xFF;
+        long timescale;
+        long duration;
+        if (version == 1) {
+            timescale = buf.getInt(p + 20) & 0xFFFFFFFFL;
+            duration = buf.getLong(p + 24);
+        } else {
+            timescale = buf.getInt(p + 12) & 0xFFFFFFFFL;
+            duration = buf.getInt(p + 16) & 0xFFFFFFFFL;
+        }
+        if (timescale == 0) return null;
+        int handlerType = buf.getInt(contentStart(buf, hdlr) + 8);
+
+        int minfEnd = boxEnd(buf, minf, mdiaEnd);
+        int stbl = findChild(buf, contentStart(buf, minf), minfEnd, STBL);
+        if (stbl < 0) return null;
+        int stblEnd = boxEnd(buf, stbl, minfEnd);
+        int stsd = findChild(buf, contentStart(buf, stbl), stblEnd, STSD);
+        if (stsd < 0) return null;
+        int stsdEnd = boxEnd(buf, stsd, stblEnd);
+        int entry = contentStart(buf, stsd) + 8;
+        int entryEnd = boxEnd(buf, entry, stsdEnd);
+        if (entryEnd < 0) return null;
+
+        int sampleEntryType = boxType(buf, entry);
+        int width = 0;
+        int height = 0;
+        int childrenStart;
+        if (handlerType == VIDE) {
+            width = buf.getShort(entry + 32) & 0xFFFF;
+            height = buf.getShort(entry + 34) & 0xFFFF;
+            childrenStart = entry + 86;
+        } else {
+            int soundVersion = buf.getShort(entry + 16) & 0xFFFF;
+            childrenStart = entry + (soundVersion == 1 ? 52 : soundVersion == 2 ? 72 : 36);
+        }
+        if (width == 0 || height == 0) {
+            width = tkhdWidth;
+            height = tkhdHeight;
+        }
+        int codecType = sampleEntryType;
+        int sinf = findChild(buf, childrenStart, entryEnd, SINF);
+        if (sinf >= 0) {
+            int frma = findChild(buf, contentStart(buf, sinf), boxEnd(buf, sinf, entryEnd), FRMA);
+            if (frma >= 0) codecType = buf.getInt(contentStart(buf, frma));
+        }
+        String mime = mimeForSampleEntry(codecType);
+        int esds = findChild(buf, childrenStart, entryEnd, ESDS);
+        if (esds >= 0) {
+            String esdsMime = mimeForObjectType(esdsObjectType(buf, esds, boxEnd(buf, esds, entryEnd)));
+            if (esdsMime != null) mime = esdsMime;
+        }
+        return new Mp4Track(trakPos, trakEnd, trackId, handlerType, sampleEntryType, mime, width, height,
+            rotationDegrees, timescale, duration, stbl, stblEnd, editMediaTime(buf, trakContent, trakEnd));
+    }
+
+    private static long editMediaTime(ByteBuffer buf, int trakContent, int trakEnd) {
+        int edts = findChild(buf, trakContent, trakEnd, EDTS);
+        if (edts < 0) return -1;
+        int edtsEnd = boxEnd(buf, edts, trakEnd);
+        int elst = findChild(buf, contentStart(buf, edts), edtsEnd, ELST);
+        if (elst < 0) return -1;
+        int p = contentStart(buf, elst);
+        int version = buf.get(p) & 0xFF;
+        int entryCount = buf.getInt(p + 4);
+        int entrySize = version == 1 ? 20 : 12;
+        for (int i = 0; i < entryCount; i++) {
+            int entry = p + 8 + i * entrySize;
+            long mediaTime = version == 1 ? buf.getLong(entry + 8) : buf.getInt(entry + 4);
+            if (mediaTime >= 0) return mediaTime;
+        }
+        return -1;
+    }
+
+    boolean isVideo() {
+        return mime != null && mime.startsWith("video/");
+    }
+
+    boolean isAudio() {
+        return mime != null && mime.startsWith("audio/");
+    }
+
+    long durationUs() {
+        return duration * 1_000_000L / timescale;
+    }
+
+    private static int rotationFromMatrix(int a, int b, int c, int d) {
+        final int one = 0x10000;
+        if (a == 0 && b == one && c == -one && d == 0) return 90;
+        if (a == 0 && b == -one && c == one && d == 0) return 270;
+        if (a == -one && b == 0 && c == 0 && d == -one) return 180;
+        return 0;
+    }
+
+    private static int esdsObjectType(ByteBuffer buf, int esds, int end) {
+        if (end < 0) return -1;
+        int p = contentStart(buf, esds) + 4;
+        while (p < end) {
+            int tag = buf.get(p++) & 0xFF;
+            int length = 0;
+            for (int i = 0; i < 4 && p < end; i++) {
+                int b = buf.get(p++) & 0xFF;
+                length = (length << 7) | (b & 0x7F);
+                if ((b & 0x80) == 0) break;
+            }
+            if (tag == 0x03) {
+                int flags = buf.get(p + 2) & 0xFF;
+                p += 3;
+                if ((flags & 0x80) != 0) p += 2;
+                if ((flags & 0x40) != 0) p += 1 + (buf.get(p) & 0xFF);
+                if ((flags & 0x20) != 0) p += 2;
+            } else if (tag == 0x04) {
+                return p < end ? buf.get(p) & 0xFF : -1;
+            } else {
+                p += length;
+            }
+        }
+        return -1;
+    }
+
+    private static String mimeForObjectType(int objectType) {
+        switch (objectType) {
+            case 0x20: return "video/mp4v-es";
+            case 0x40:
+            case 0x66:
+            case 0x67:
+            case 0x68: return "audio/mp4a-latm";
+            case 0x69:
+            case 0x6B: return "audio/mpeg";
+            default: return null;
+        }
+    }
+
+    private static String mimeForSampleEntry(int type) {
+        switch (typeName(type)) {
+            case "avc1":
+            case "avc3": return "video/avc";
+            case "hvc1":
+            case "hev1": return "video/hevc";
+            case "dvh1":
+            case "dvhe":
+            case "dva1":
+            case "dvav": return "video/dolby-vision";
+            case "vp09": return "video/x-vnd.on2.vp9";
+            case "av01": return "video/av01";
+            case "mp4v": return "video/mp4v-es";
+            case "s263":
+            case "h263": return "video/3gpp";
+            case "mp4a": return "audio/mp4a-latm";
+            case "samr": return "audio/3gpp";
+            case "sawb": return "audio/amr-wb";
+            case "Opus": return "audio/opus";
+            case "fLaC": return "audio/flac";
+            case "ac-3": return "audio/ac3";
+            case "ec-3": return "audio/eac3";
+            case "ac-4": return "audio/ac4";
+            case "alac": return "audio/alac";
+            case ".mp3": return "audio/mpeg";
+            case "twos":
+            case "sowt":
+            case "lpcm": return "audio/raw";
+            default: return null;
+        }
+    }
+}
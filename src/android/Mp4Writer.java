@@ -0,0 +1,555 @@
+package com.okanbeydanol.videoHelper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.okanbeydanol.videoHelper.Mp4Parser.*;
+import static com.okanbeydanol.videoHelper.Mp4SampleTable.*;
+
+/**
+ * Writes an MP4 whose samples are byte ranges of existing MP4 files. Sample data is copied with
+ * FileChannel.transferTo in runs of contiguous bytes and never passes through the Java heap; only the
+ * sample tables in moov are rebuilt.
+ */
+final class Mp4Writer {
+    interface ProgressListener {
+        void onProgress(long bytesWritten, long bytesTotal);
+    }
+
+    static final class Segment {
+        final FileChannel channel;
+        final Mp4SampleTable table;
+        final int first;
+        final int end;
+        /** Decode time (in the table's timescale) at which the segment ends, or -1 for the end of its last sample. */
+        final long endTime;
+
+        Segment(FileChannel channel, Mp4SampleTable table, int first, int end, long endTime) {
+            this.channel = channel;
+            this.table = table;
+            this.first = first;
+            this.end = end;
+            this.endTime = endTime;
+        }
+    }
+
+    static final class TrackPlan {
+        final ByteBuffer moov;
+        final Mp4Track template;
+        final List<Segment> segments = new ArrayList<>();
+        /** Edit list media_time in the track timescale, or -1 to write no edit list. */
+        long mediaTime = -1;
+
+        private final IntList sizes = new IntList();
+        private final IntList durations = new IntList();
+        private final IntList compositionOffsets = new IntList();
+        private final IntList syncSamples = new IntList();
+        private final LongList chunkOffsets = new LongList();
+        private final IntList chunkSamples = new IntList();
+        private boolean allSync = true;
+        private boolean hasCompositionOffsets;
+        private long lastSampleEnd = -1;
+        private long mediaDuration;
+
+        TrackPlan(ByteBuffer moov, Mp4Track template) {
+            this.moov = moov;
+            this.template = template;
+        }
+
+        TrackPlan add(FileChannel channel, Mp4SampleTable table, int first, int end) {
+            return add(channel, table, first, end, -1);
+        }
+
+        /** Like {@link #add(FileChannel, Mp4SampleTable, int, int)}, but stretches the last sample up to endTime. */
+        TrackPlan add(FileChannel channel, Mp4SampleTable table, int first, int end, long endTime) {
+            if (end > first) segments.add(new Segment(channel, table, first, end, endTime));
+            return this;
+        }
+
+        long mediaDuration() {
+            return mediaDuration;
+        }
+    }
+
+    private final ByteBuffer ftyp;
+    private final ByteBuffer moovTemplate;
+    private boolean fastStart;
+
+    Mp4Writer(ByteBuffer ftyp, ByteBuffer moovTemplate) {
+        this.ftyp = ftyp;
+        this.moovTemplate = moovTemplate;
+    }
+
+    Mp4Writer setFastStart(boolean fastStart) {
+        this.fastStart = fastStart;
+        return this;
+    }
+
+    static ByteBuffer readBox(FileChannel channel, Mp4Box box) throws IOException {
+        if (box == null || box.size > Integer.MAX_VALUE) return null;
+        ByteBuffer buffer = ByteBuffer.allocate((int) box.size);
+        readFully(channel, buffer, box.offset);
+        buffer.flip();
+        return buffer;
+    }
+
+    long write(List<TrackPlan> plans, FileChannel out, ProgressListener listener) throws IOException {
+        List<FileChannel> runChannels = new ArrayList<>();
+        LongList runSources = new LongList();
+        LongList runLengths = new LongList();
+        long dataSize = layout(plans, runChannels, runSources, runLengths);
+
+        ByteBuffer ftypBox = ftyp != null ? ftyp.duplicate() : defaultFtyp();
+        int mdatHeaderSize = dataSize + 8 > 0xFFFFFFFFL ? 16 : 8;
+        long dataStart = ftypBox.remaining() + mdatHeaderSize;
+        ByteBuffer moov = buildMoov(plans, dataStart);
+        if (fastStart) {
+            dataStart += moov.remaining();
+            ByteBuffer relocated = buildMoov(plans, dataStart);
+            if (relocated.remaining() != moov.remaining()) {
+                dataStart += relocated.remaining() - moov.remaining();
+                relocated = buildMoov(plans, dataStart);
+            }
+            moov = relocated;
+        }
+
+        out.position(0);
+        out.truncate(0);
+        writeFully(out, ftypBox);
+        if (fastStart) writeFully(out, moov);
+        ByteBuffer mdatHeader = ByteBuffer.allocate(mdatHeaderSize);
+        if (mdatHeaderSize == 16) {
+            mdatHeader.putInt(1).putInt(MDAT).putLong(dataSize + 16);
+        } else {
+            mdatHeader.putInt((int) (dataSize + 8)).putInt(MDAT);
+        }
+        mdatHeader.flip();
+        writeFully(out, mdatHeader);
+
+        long written = 0;
+        for (int i = 0; i < runChannels.size(); i++) {
+            FileChannel source = runChannels.get(i);
+            long position = runSources.get(i);
+            long remaining = runLengths.get(i);
+            while (remaining > 0) {
+                if (Thread.interrupted()) throw new java.io.InterruptedIOException();
+                long n = source.transferTo(position, remaining, out);
+                if (n <= 0) throw new IOException("transferTo made no progress at " + position);
+                position += n;
+                remaining -= n;
+                written += n;
+                if (listener != null) listener.onProgress(written, dataSize);
+            }
+        }
+        if (!fastStart) writeFully(out, moov);
+        return out.position();
+    }
+
+    private long layout(List<TrackPlan> plans, List<FileChannel> runChannels, LongList runSources, LongList runLengths) {
+        int segmentCount = 0;
+        for (TrackPlan plan : plans) segmentCount = Math.max(segmentCount, plan.segments.size());
+        long dataSize = 0;
+        int[] cursors = new int[plans.size()];
+        for (int k = 0; k < segmentCount; k++) {
+            for (int t = 0; t < plans.size(); t++) {
+                List<Segment> segments = plans.get(t).segments;
+                cursors[t] = k < segments.size() ? segments.get(k).first : -1;
+            }
+            while (true) {
+                int next = -1;
+                long nextOffset = Long.MAX_VALUE;
+                for (int t = 0; t < plans.size(); t++) {
+                    if (cursors[t] < 0) continue;
+                    Segment segment = plans.get(t).segments.get(k);
+                    long offset = segment.table.offsets[cursors[t]];
+                    if (offset < nextOffset) {
+                        nextOffset = offset;
+                        next = t;
+                    }
+                }
+                if (next < 0) break;
+                TrackPlan plan = plans.get(next);
+                Segment segment = plan.segments.get(k);
+                int sample = cursors[next];
+                int size = segment.table.sizes[sample];
+
+                int run = runChannels.size() - 1;
+                if (run >= 0 && runChannels.get(run) == segment.channel
+                    && runSources.get(run) + runLengths.get(run) == nextOffset) {
+                    runLengths.set(run, runLengths.get(run) + size);
+                } else {
+                    runChannels.add(segment.channel);
+                    runSources.add(nextOffset);
+                    runLengths.add(size);
+                }
+                addSample(plan, segment, sample, dataSize);
+                dataSize += size;
+                cursors[next] = sample + 1 < segment.end ? sample + 1 : -1;
+            }
+        }
+        return dataSize;
+    }
+
+    private static void addSample(TrackPlan plan, Segment segment, int sample, long outputOffset) {
+        Mp4SampleTable table = segment.table;
+        int size = table.sizes[sample];
+        if (plan.lastSampleEnd == outputOffset) {
+            plan.chunkSamples.set(plan.chunkSamples.size() - 1, plan.chunkSamples.get(plan.chunkSamples.size() - 1) + 1);
+        } else {
+            plan.chunkOffsets.add(outputOffset);
+            plan.chunkSamples.add(1);
+        }
+        plan.lastSampleEnd = outputOffset + size;
+        plan.sizes.add(size);
+
+        long timescale = plan.template.timescale;
+        long start = rescale(table.decodeTimes[sample] - table.decodeTimes[segment.first], table.timescale, timescale);
+        long nextTime = table.decodeTimes[sample + 1];
+        if (sample + 1 == segment.end && segment.endTime > table.decodeTimes[sample]) nextTime = segment.endTime;
+        long end = rescale(nextTime - table.decodeTimes[segment.first], table.timescale, timescale);
+        plan.durations.add((int) (end - start));
+        plan.mediaDuration += end - start;
+
+        int compositionOffset = (int) rescale(table.compositionOffset(sample), table.timescale, timescale);
+        plan.compositionOffsets.add(compositionOffset);
+        plan.hasCompositionOffsets |= compositionOffset != 0;
+
+        if (table.isSync(sample)) {
+            plan.syncSamples.add(plan.sizes.size());
+        } else {
+            plan.allSync = false;
+        }
+    }
+
+    private static long rescale(long value, long from, long to) {
+        return from == to ? value : value * to / from;
+    }
+
+    private ByteBuffer buildMoov(List<TrackPlan> plans, long dataStart) {
+        BoxWriter w = new BoxWriter();
+        ByteBuffer src = moovTemplate;
+        int moovEnd = src.capacity();
+        int mvhd = findChild(src, contentStart(src, 0), moovEnd, MVHD);
+        long movieTimescale = movieTimescale(src, mvhd);
+        long movieDuration = 0;
+        for (TrackPlan plan : plans) {
+            movieDuration = Math.max(movieDuration, trackDuration(plan, movieTimescale));
+        }
+
+        int moov = w.begin(MOOV);
+        int pos = contentStart(src, 0);
+        while (pos + 8 <= moovEnd) {
+            int size = boxSize(src, pos, moovEnd);
+            if (size < 0) break;
+            int type = boxType(src, pos);
+            if (type == MVHD) {
+                int content = w.copyWithDuration(src, pos, size, movieDuration, 16, 24);
+                // Tracks may come from different files, so they are renumbered 1..n.
+                w.patch(content - headerSize(src, pos) + size - 4, plans.size() + 1);
+                for (int i = 0; i < plans.size(); i++) writeTrak(w, plans.get(i), i + 1, movieTimescale, dataStart);
+            } else if (type != TRAK && type != MVEX) {
+                w.copy(src, pos, size);
+            }
+            pos += size;
+        }
+        w.end(moov);
+        return w.toBuffer();
+    }
+
+    private static long movieTimescale(ByteBuffer buf, int mvhd) {
+        int p = contentStart(buf, mvhd);
+        int version = buf.get(p) & 0xFF;
+        return buf.getInt(p + (version == 1 ? 20 : 12)) & 0xFFFFFFFFL;
+    }
+
+    private static long trackDuration(TrackPlan plan, long movieTimescale) {
+        long presented = plan.mediaDuration - Math.max(0, plan.mediaTime);
+        return rescale(Math.max(0, presented), plan.template.timescale, movieTimescale);
+    }
+
+    private static void writeTrak(BoxWriter w, TrackPlan plan, int trackId, long movieTimescale, long dataStart) {
+        ByteBuffer src = plan.moov;
+        int trak = w.begin(TRAK);
+        int pos = contentStart(src, plan.template.trakPos);
+        int end = plan.template.trakEnd;
+        long trackDuration = trackDuration(plan, movieTimescale);
+        while (pos + 8 <= end) {
+            int size = boxSize(src, pos, end);
+            if (size < 0) break;
+            int type = boxType(src, pos);
+            if (type == TKHD) {
+                int content = w.copyWithDuration(src, pos, size, trackDuration, 20, 28);
+                w.patch(content + (w.byteAt(content) == 1 ? 20 : 12), trackId);
+                if (plan.mediaTime >= 0) writeEdts(w, trackDuration, plan.mediaTime);
+            } else if (type == MDIA) {
+                writeContainer(w, plan, src, pos, size, dataStart);
+            } else if (type != EDTS) {
+                w.copy(src, pos, size);
+            }
+            pos += size;
+        }
+        w.end(trak);
+    }
+
+    private static void writeContainer(BoxWriter w, TrackPlan plan, ByteBuffer src, int boxPos, int boxSize, long dataStart) {
+        int type = boxType(src, boxPos);
+        int box = w.begin(type);
+        int pos = contentStart(src, boxPos);
+        int end = boxPos + boxSize;
+        while (pos + 8 <= end) {
+            int size = boxSize(src, pos, end);
+            if (size < 0) break;
+            int childType = boxType(src, pos);
+            if (childType == MDHD) {
+                w.copyWithDuration(src, pos, size, plan.mediaDuration, 16, 24);
+            } else if (childType == MINF) {
+                writeContainer(w, plan, src, pos, size, dataStart);
+            } else if (childType == STBL) {
+                writeStbl(w, plan, src, pos, size, dataStart);
+            } else {
+                w.copy(src, pos, size);
+            }
+            pos += size;
+        }
+        w.end(box);
+    }
+
+    private static void writeStbl(BoxWriter w, TrackPlan plan, ByteBuffer src, int stblPos, int stblSize, long dataStart) {
+        int stbl = w.begin(STBL);
+        int stsd = findChild(src, contentStart(src, stblPos), stblPos + stblSize, STSD);
+        w.copy(src, stsd, boxSize(src, stsd, stblPos + stblSize));
+
+        int box = w.fullBox(STTS, 0);
+        int entries = w.placeholder();
+        int count = 0;
+        for (int i = 0; i < plan.durations.size(); ) {
+            int j = i;
+            while (j < plan.durations.size() && plan.durations.get(j) == plan.durations.get(i)) j++;
+            w.putInt(j - i).putInt(plan.durations.get(i));
+            count++;
+            i = j;
+        }
+        w.patch(entries, count);
+        w.end(box);
+
+        if (plan.hasCompositionOffsets) {
+            box = w.fullBox(CTTS, 1);
+            entries = w.placeholder();
+            count = 0;
+            for (int i = 0; i < plan.compositionOffsets.size(); ) {
+                int j = i;
+                while (j < plan.compositionOffsets.size() && plan.compositionOffsets.get(j) == plan.compositionOffsets.get(i)) j++;
+                w.putInt(j - i).putInt(plan.compositionOffsets.get(i));
+                count++;
+                i = j;
+            }
+            w.patch(entries, count);
+            w.end(box);
+        }
+
+        if (!plan.allSync) {
+            box = w.fullBox(STSS, 0);
+            w.putInt(plan.syncSamples.size());
+            for (int i = 0; i < plan.syncSamples.size(); i++) w.putInt(plan.syncSamples.get(i));
+            w.end(box);
+        }
+
+        box = w.fullBox(STSC, 0);
+        entries = w.placeholder();
+        count = 0;
+        for (int i = 0; i < plan.chunkSamples.size(); i++) {
+            if (i == 0 || plan.chunkSamples.get(i) != plan.chunkSamples.get(i - 1)) {
+                w.putInt(i + 1).putInt(plan.chunkSamples.get(i)).putInt(1);
+                count++;
+            }
+        }
+        w.patch(entries, count);
+        w.end(box);
+
+        box = w.fullBox(STSZ, 0);
+        boolean constant = plan.sizes.size() > 0;
+        for (int i = 1; i < plan.sizes.size() && constant; i++) constant = plan.sizes.get(i) == plan.sizes.get(0);
+        w.putInt(constant ? plan.sizes.get(0) : 0).putInt(plan.sizes.size());
+        if (!constant) {
+            for (int i = 0; i < plan.sizes.size(); i++) w.putInt(plan.sizes.get(i));
+        }
+        w.end(box);
+
+        int chunks = plan.chunkOffsets.size();
+        boolean wide = chunks > 0 && dataStart + plan.chunkOffsets.get(chunks - 1) > 0xFFFFFFFFL;
+        box = w.fullBox(wide ? CO64 : STCO, 0);
+        w.putInt(chunks);
+        for (int i = 0; i < chunks; i++) {
+            long offset = dataStart + plan.chunkOffsets.get(i);
+            if (wide) {
+                w.putLong(offset);
+            } else {
+                w.putInt((int) offset);
+            }
+        }
+        w.end(box);
+        w.end(stbl);
+    }
+
+    private static void writeEdts(BoxWriter w, long segmentDuration, long mediaTime) {
+        int edts = w.begin(EDTS);
+        boolean wide = segmentDuration > 0xFFFFFFFFL || mediaTime > Integer.MAX_VALUE;
+        int elst = w.fullBox(ELST, wide ? 1 : 0);
+        w.putInt(1);
+        if (wide) {
+            w.putLong(segmentDuration).putLong(mediaTime);
+        } else {
+            w.putInt((int) segmentDuration).putInt((int) mediaTime);
+        }
+        w.putInt(0x00010000);
+        w.end(elst);
+        w.end(edts);
+    }
+
+    private static ByteBuffer defaultFtyp() {
+        ByteBuffer ftyp = ByteBuffer.allocate(32);
+        ftyp.putInt(32).putInt(FTYP).putInt(fourcc("isom")).putInt(0x200)
+            .putInt(fourcc("isom")).putInt(fourcc("iso2")).putInt(fourcc("avc1")).putInt(fourcc("mp41"));
+        ftyp.flip();
+        return ftyp;
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    static final class BoxWriter {
+        private ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+
+        int begin(int type) {
+            int pos = buf.position();
+            putInt(0).putInt(type);
+            return pos;
+        }
+
+        int fullBox(int type, int version) {
+            int pos = begin(type);
+            putInt(version << 24);
+            return pos;
+        }
+
+        void end(int pos) {
+            buf.putInt(pos, buf.position() - pos);
+        }
+
+        int placeholder() {
+            int pos = buf.position();
+            putInt(0);
+            return pos;
+        }
+
+        void patch(int pos, int value) {
+            buf.putInt(pos, value);
+        }
+
+        BoxWriter putInt(int value) {
+            ensure(4);
+            buf.putInt(value);
+            return this;
+        }
+
+        BoxWriter putLong(long value) {
+            ensure(8);
+            buf.putLong(value);
+            return this;
+        }
+
+        void copy(ByteBuffer src, int pos, int size) {
+            ensure(size);
+            ByteBuffer slice = src.duplicate();
+            slice.limit(pos + size).position(pos);
+            buf.put(slice);
+        }
+
+        int byteAt(int pos) {
+            return buf.get(pos) & 0xFF;
+        }
+
+        /**
+         * Copies an mvhd/tkhd/mdhd box, replacing its duration (given as v0/v1 content offsets). Returns the
+         * position of the copied box content.
+         */
+        int copyWithDuration(ByteBuffer src, int pos, int size, long duration, int v0Offset, int v1Offset) {
+            int start = buf.position();
+            copy(src, pos, size);
+            int content = start + headerSize(src, pos);
+            if ((buf.get(content) & 0xFF) == 1) {
+                buf.putLong(content + v1Offset, duration);
+            } else {
+                buf.putInt(content + v0Offset, (int) Math.min(duration, 0xFFFFFFFFL));
+            }
+            return content;
+        }
+
+        ByteBuffer toBuffer() {
+            ByteBuffer out = buf.duplicate();
+            out.flip();
+            return out;
+        }
+
+        private void ensure(int bytes) {
+            if (buf.remaining() >= bytes) return;
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + bytes));
+            buf.flip();
+            bigger.put(buf);
+            buf = bigger;
+        }
+    }
+
+    static final class IntList {
+        private int[] values = new int[256];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        void set(int index, int value) {
+            values[index] = value;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    static final class LongList {
+        private long[] values = new long[256];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        long get(int index) {
+            return values[index];
+        }
+
+        void set(int index, long value) {
+            values[index] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
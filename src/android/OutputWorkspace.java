@@ -0,0 +1,254 @@
+package com.okanbeydanol.videoHelper;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The folder finished outputs are published to. Jobs write into a temp file under .partial that is renamed into
+ * place once complete, so the folder itself only ever holds whole files. Files published through {@link #commit}
+ * are tracked in a small JSON index, and when the app sets a byte quota the least recently used of them are
+ * deleted once it is exceeded. Anything else in the folder belongs to the app and is never touched. Whatever a
+ * killed job left under .partial is removed by {@link #sweep}, which runs once at startup. Outputs whose path is
+ * handed out while they are still being written (fragmented transcodes) skip .partial, see {@link #growingFile}.
+ */
+final class OutputWorkspace {
+    /** No quota until the app opts in, since the folder may hold files the app still needs. */
+    static final long DEFAULT_MAX_BYTES = 0;
+    /** Kept free on top of a job's own estimate, for the container rewrite and for the rest of the app. */
+    private static final long SPACE_MARGIN = 32L * 1024 * 1024;
+    private static final String PARTIAL_DIR = ".partial";
+    private static final String INDEX_FILE = ".index.json";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final File partial;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /** Temp files handed out by this process; the sweep leaves them and anything written next to them alone. */
+    private final Set<String> active = new HashSet<>();
+    /** Outputs being written at their published name; eviction leaves them alone until they are committed. */
+    private final Set<String> growing = new HashSet<>();
+    private final AtomicLong tempCounter = new AtomicLong(System.currentTimeMillis());
+    private final long maxBytes;
+    private long totalBytes;
+    private boolean loaded;
+    private boolean dirty;
+
+    /** @param maxBytes quota for published outputs; 0 keeps everything */
+    OutputWorkspace(File directory, long maxBytes) {
+        this.directory = directory;
+        this.partial = new File(directory, PARTIAL_DIR);
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    /**
+     * A fresh temp file for an output that will be published as name; pass it to {@link #commit} once it is
+     * complete or to {@link #discard} when the job gives up. Fails right away when the volume can't take
+     * expectedBytes.
+     */
+    File tempFile(String name, long expectedBytes) throws IOException {
+        if (!partial.isDirectory() && !partial.mkdirs()) throw new IOException("Can't access or make videos directory");
+        ensureSpace(expectedBytes);
+        File temp = new File(partial, tempCounter.incrementAndGet() + "-" + name);
+        synchronized (this) {
+            active.add(temp.getName());
+        }
+        return temp;
+    }
+
+    /**
+     * The published file itself, for an output whose path is reported before it is complete, so the path stays
+     * valid after {@link #commit}. Pass it to {@link #commit} or {@link #discard} like a temp file.
+     */
+    File growingFile(String name, long expectedBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Can't access or make videos directory");
+        ensureSpace(expectedBytes);
+        synchronized (this) {
+            if (!growing.add(name)) throw new IOException("An output named " + name + " is already being written");
+        }
+        return new File(directory, name);
+    }
+
+    /** Throws when fewer than expectedBytes (plus a safety margin) are free where the outputs are written. */
+    void ensureSpace(long expectedBytes) throws IOException {
+        ensureSpace(partial.isDirectory() ? partial : directory, expectedBytes);
+    }
+
+    /** Same check for a folder outside the workspace, e.g. the artifact cache. */
+    static void ensureSpace(File volume, long expectedBytes) throws IOException {
+        long usable = volume.getUsableSpace();
+        long needed = Math.max(0, expectedBytes) + SPACE_MARGIN;
+        if (usable < needed) {
+            throw new IOException("Not enough free space: " + megabytes(needed) + " MB needed, "
+                + megabytes(usable) + " MB available");
+        }
+    }
+
+    File commit(File temp, String name) throws IOException {
+        File target = new File(directory, name);
+        synchronized (this) {
+            active.remove(temp.getName());
+            growing.remove(name);
+            load();
+            if (!temp.equals(target) && !temp.renameTo(target)) {
+                temp.delete();
+                throw new IOException("Failed to move " + temp + " into " + directory);
+            }
+            Long previous = entries.put(name, target.length());
+            if (previous != null) totalBytes -= previous;
+            totalBytes += target.length();
+            evict(name);
+            dirty = true;
+            save();
+        }
+        return target;
+    }
+
+    void discard(File temp) {
+        synchronized (this) {
+            active.remove(temp.getName());
+            if (directory.equals(temp.getParentFile()) && growing.remove(temp.getName())) {
+                // A growing output may have overwritten an earlier one of the same name.
+                load();
+                Long previous = entries.remove(temp.getName());
+                if (previous != null) {
+                    totalBytes -= previous;
+                    dirty = true;
+                }
+            }
+        }
+        temp.delete();
+    }
+
+    /** Marks a published output as used, e.g. when it is the source of a new job, so eviction takes it last. */
+    void touch(String path) {
+        File file = new File(path);
+        if (!directory.equals(file.getParentFile())) return;
+        synchronized (this) {
+            load();
+            if (entries.get(file.getName()) != null) dirty = true;
+        }
+    }
+
+    synchronized JSONObject stats() throws JSONException {
+        load();
+        JSONObject stats = new JSONObject();
+        stats.put("entries", entries.size());
+        stats.put("bytes", totalBytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("freeBytes", directory.getUsableSpace());
+        return stats;
+    }
+
+    /**
+     * Deletes temp files no running job owns and forgets outputs the app deleted itself. Files the index doesn't
+     * list were not published by this workspace, so they are neither adopted nor deleted.
+     */
+    void sweep() {
+        File[] temps = partial.listFiles();
+        if (temps != null) {
+            for (File temp : temps) {
+                if (!isActive(temp.getName())) temp.delete();
+            }
+        }
+        synchronized (this) {
+            load();
+            Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Long> entry = it.next();
+                if (new File(directory, entry.getKey()).isFile()) continue;
+                totalBytes -= entry.getValue();
+                it.remove();
+                dirty = true;
+            }
+            evict(null);
+            save();
+        }
+    }
+
+    synchronized void save() {
+        if (!dirty || !directory.isDirectory()) return;
+        File index = new File(directory, INDEX_FILE);
+        File tmp = new File(index.getPath() + TEMP_SUFFIX);
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            // Least recently used first, which is the order load() restores.
+            JSONArray array = new JSONArray();
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                array.put(new JSONObject().put("name", entry.getKey()).put("bytes", entry.getValue()));
+            }
+            out.write(array.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | JSONException e) {
+            tmp.delete();
+            return;
+        }
+        if (tmp.renameTo(index)) {
+            dirty = false;
+        } else {
+            tmp.delete();
+        }
+    }
+
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+        File index = new File(directory, INDEX_FILE);
+        if (!index.exists()) return;
+        try (InputStream in = new FileInputStream(index)) {
+            byte[] data = new byte[(int) index.length()];
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) break;
+                read += n;
+            }
+            JSONArray array = new JSONArray(new String(data, 0, read, StandardCharsets.UTF_8));
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject item = array.optJSONObject(i);
+                if (item == null || item.optString("name").isEmpty()) continue;
+                entries.put(item.optString("name"), item.optLong("bytes"));
+                totalBytes += item.optLong("bytes");
+            }
+        } catch (IOException | JSONException e) {
+            // Outputs listed in a corrupt index are simply no longer managed; they stay on disk.
+            index.delete();
+        }
+    }
+
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (maxBytes > 0 && totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            if (eldest.getKey().equals(keep) || growing.contains(eldest.getKey())) continue;
+            new File(directory, eldest.getKey()).delete();
+            totalBytes -= eldest.getValue();
+            it.remove();
+            dirty = true;
+        }
+    }
+
+    private synchronized boolean isActive(String name) {
+        // Side files (segment parts, fast start copies) are named after the temp output they belong to.
+        for (String temp : active) {
+            if (name.startsWith(temp)) return true;
+        }
+        return false;
+    }
+
+    private static long megabytes(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+}
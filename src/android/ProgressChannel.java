@@ -0,0 +1,134 @@
+package com.okanbeydanol.videoHelper;
+
+import android.os.SystemClock;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Forwards transcode progress to JS at a bounded rate. An update is sent only when both the minimum interval has
+ * passed and progress moved by at least the minimum delta; 0 and 100 are always sent. One JSON object is reused
+ * for every update since PluginResult serializes its message when it is created. fps is only reported when the
+ * pipeline counts the frames its encoder emits into {@link #frameCounter}. Messages leave through a {@link Sender}
+ * rather than a CallbackContext, so the per-update path also runs on a plain JVM.
+ */
+final class ProgressChannel {
+    /** Delivers a message to JS, keeping the callback open; the plugin wraps it in a PluginResult. */
+    interface Sender {
+        /** message is reused for the next update, so it has to be serialized before this returns. */
+        void send(JSONObject message);
+    }
+
+    static final long DEFAULT_MIN_INTERVAL_MS = 250;
+    static final double DEFAULT_MIN_DELTA = 1.0;
+
+    private final Sender sender;
+    private final File outputFile;
+    private final double mediaDurationSec;
+    private final long minIntervalMs;
+    private final double minDelta;
+    private final JSONObject message = new JSONObject();
+    private AtomicLong framesEncoded;
+    private long startedAt;
+    private long lastSentAt;
+    private double lastSent = -1;
+
+    ProgressChannel(String jobId, Sender sender, File outputFile, double mediaDurationSec,
+                    long minIntervalMs, double minDelta) {
+        this.sender = sender;
+        this.outputFile = outputFile;
+        this.mediaDurationSec = mediaDurationSec;
+        this.minIntervalMs = Math.max(0, minIntervalMs);
+        this.minDelta = Math.max(0, minDelta);
+        try {
+            message.put("jobId", jobId);
+            message.put("completed", false);
+            message.put("error", false);
+        } catch (JSONException ignored) {
+        }
+    }
+
+    /** Adds a fixed field to every message, e.g. the rendition a ladder channel reports for. */
+    ProgressChannel with(String key, Object value) {
+        try {
+            message.put(key, value);
+        } catch (JSONException ignored) {
+        }
+        return this;
+    }
+
+    /** The counter a pipeline adds each encoded video frame to; asking for it turns fps reporting on. */
+    synchronized AtomicLong frameCounter() {
+        if (framesEncoded == null) framesEncoded = new AtomicLong();
+        return framesEncoded;
+    }
+
+    synchronized void start() {
+        startedAt = SystemClock.elapsedRealtime();
+        send(0, startedAt);
+    }
+
+    /** @param fraction progress between 0 and 1 as reported by the transcoder */
+    synchronized void update(double fraction) {
+        double progress = Math.max(0, Math.min(100, fraction * 100));
+        long now = SystemClock.elapsedRealtime();
+        if (progress < 100) {
+            if (now - lastSentAt < minIntervalMs) return;
+            if (progress - lastSent < minDelta) return;
+        } else if (lastSent >= 100) {
+            return;
+        }
+        send(progress, now);
+    }
+
+    /** Reports a sealed fragment of a fragmented output. Never rate limited: uploaders need every one. */
+    synchronized void fragment(int index, long offset, long size, long startUs, long durationUs) {
+        try {
+            JSONObject fragment = new JSONObject();
+            fragment.put("index", index);
+            fragment.put("init", index == 0);
+            fragment.put("path", outputFile.getAbsolutePath());
+            fragment.put("offset", offset);
+            fragment.put("size", size);
+            fragment.put("start", startUs / 1_000_000.0);
+            fragment.put("duration", durationUs / 1_000_000.0);
+            message.put("fragment", fragment);
+            message.put("encodedBytes", offset + size);
+        } catch (JSONException e) {
+            return;
+        }
+        sender.send(message);
+        message.remove("fragment");
+    }
+
+    private void send(double progress, long now) {
+        lastSent = progress;
+        lastSentAt = now;
+        try {
+            message.put("progress", progress);
+            double elapsedSec = (now - startedAt) / 1000.0;
+            double mediaSec = mediaDurationSec * progress / 100;
+            if (elapsedSec > 0 && progress > 0) {
+                message.put("speed", mediaSec / elapsedSec);
+                long frames = framesEncoded != null ? framesEncoded.get() : 0;
+                if (frames > 0) {
+                    message.put("fps", frames / elapsedSec);
+                } else {
+                    message.remove("fps");
+                }
+                message.put("etaMs", Math.round(elapsedSec * 1000 * (100 - progress) / progress));
+            } else {
+                message.remove("speed");
+                message.remove("fps");
+                message.remove("etaMs");
+            }
+            message.put("encodedBytes", outputFile.length());
+        } catch (JSONException e) {
+            return;
+        }
+        sender.send(message);
+    }
+}
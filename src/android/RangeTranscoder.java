@@ -0,0 +1,765 @@
+package com.okanbeydanol.videoHelper;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.opengl.EGLSurface;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.ypresto.androidtranscoder.MediaTranscoder;
+import net.ypresto.androidtranscoder.format.MediaFormatStrategy;
+import net.ypresto.androidtranscoder.utils.MediaExtractorUtils;
+
+/**
+ * Transcodes only the [startUs, endUs) range of the source. Samples outside the range are never fed to the
+ * decoder (except the frames between the preceding sync sample and startUs, which are decoded but not
+ * encoded), and output timestamps are rebased to start at zero.
+ */
+final class RangeTranscoder {
+    private static final long SLEEP_TO_WAIT_TRACK_MS = 10;
+    private static final String KEY_ROTATION_DEGREES = "rotation-degrees";
+
+    private final String inputPath;
+    private final String outputPath;
+    private final MediaFormatStrategy strategy;
+    private final long startUs;
+    private final long endUs;
+    private boolean losslessRemux;
+    private long fragmentDurationUs;
+    private FragmentedMp4Writer.FragmentListener fragmentListener;
+    private boolean includeVideo = true;
+    private boolean includeAudio = true;
+    private JobMetrics metrics;
+    private AtomicLong frameCounter;
+
+    RangeTranscoder(String inputPath, String outputPath, MediaFormatStrategy strategy, long startUs, long endUs) {
+        this.inputPath = inputPath;
+        this.outputPath = outputPath;
+        this.strategy = strategy;
+        this.startUs = Math.max(0, startUs);
+        this.endUs = endUs > 0 ? endUs : Long.MAX_VALUE;
+    }
+
+    /** Try a sample-table copy before falling back to the extractor/muxer loop; for strategies that pass through. */
+    RangeTranscoder setLosslessRemux(boolean losslessRemux) {
+        this.losslessRemux = losslessRemux;
+        return this;
+    }
+
+    /** The subset of MediaMuxer the pipelines write through, so the output container can be swapped. */
+    interface Muxer {
+        void setOrientationHint(int degrees);
+
+        int addTrack(MediaFormat format);
+
+        void start();
+
+        void writeSampleData(int track, ByteBuffer data, MediaCodec.BufferInfo info);
+
+        void stop();
+
+        void release();
+    }
+
+    /** Writes a fragmented MP4 instead, reporting each fragment as soon as it is on disk. */
+    RangeTranscoder setFragmentedOutput(long fragmentDurationUs, FragmentedMp4Writer.FragmentListener listener) {
+        this.fragmentDurationUs = fragmentDurationUs;
+        this.fragmentListener = listener;
+        return this;
+    }
+
+    /** Restricts the output to the given tracks of the source. */
+    RangeTranscoder setTracks(boolean video, boolean audio) {
+        this.includeVideo = video;
+        this.includeAudio = audio;
+        return this;
+    }
+
+    /** Records read bytes, encoded frames, codec names and the time spent under the job's metrics. */
+    RangeTranscoder setMetrics(JobMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /** Adds every video frame the encoder emits to frames; passed-through frames aren't counted. */
+    RangeTranscoder setFrameCounter(AtomicLong frames) {
+        this.frameCounter = frames;
+        return this;
+    }
+
+    Future<Void> start(ExecutorService executor, MediaTranscoder.Listener listener) {
+        AtomicBoolean started = new AtomicBoolean();
+        FutureTask<Void> task = new FutureTask<Void>(() -> {
+            started.set(true);
+            try {
+                if (losslessRemux && fragmentListener == null && includeVideo && includeAudio && remux()) {
+                    listener.onTranscodeCompleted();
+                    return null;
+                }
+                transcode(listener);
+                listener.onTranscodeCompleted();
+            } catch (InterruptedException | ClosedByInterruptException e) {
+                listener.onTranscodeCanceled();
+            } catch (Exception e) {
+                listener.onTranscodeFailed(e);
+            }
+            return null;
+        }) {
+            @Override protected void done() {
+                // A task canceled before it ran never reaches the listener otherwise.
+                if (isCancelled() && started.compareAndSet(false, true)) listener.onTranscodeCanceled();
+            }
+        };
+        executor.execute(task);
+        return task;
+    }
+
+    private boolean remux() throws IOException {
+        long begunAt = metrics != null ? metrics.begin("remux") : 0;
+        try {
+            return LosslessTrimmer.trim(new File(inputPath), new File(outputPath), startUs, endUs, true) != null;
+        } finally {
+            if (metrics != null) metrics.end("remux", begunAt);
+        }
+    }
+
+    void transcode(MediaTranscoder.Listener listener) throws IOException, InterruptedException {
+        MediaExtractor extractor = new MediaExtractor();
+        QueuedMuxer muxer = null;
+        List<TrackPipeline> pipelines = new ArrayList<>();
+        boolean success = false;
+        long begunAt = metrics != null ? metrics.begin("transcode") : 0;
+        try {
+            extractor.setDataSource(inputPath);
+            MediaExtractorUtils.TrackResult tracks = MediaExtractorUtils.getFirstVideoAndAudioTrack(extractor);
+            MediaFormat videoInput = includeVideo ? tracks.mVideoTrackFormat : null;
+            MediaFormat audioInput = includeAudio ? tracks.mAudioTrackFormat : null;
+            MediaFormat videoOutput = videoInput != null ? strategy.createVideoOutputFormat(videoInput) : null;
+            MediaFormat audioOutput = audioInput != null ? strategy.createAudioOutputFormat(audioInput) : null;
+
+            Muxer output = fragmentListener != null
+                ? new FragmentedMp4Writer(outputPath, fragmentDurationUs, fragmentListener)
+                : new PlatformMuxer(new MediaMuxer(outputPath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4));
+            muxer = new QueuedMuxer(output,
+                (videoInput != null ? 1 : 0) + (audioInput != null ? 1 : 0));
+
+            long baseUs = startUs;
+            if (videoInput != null) {
+                if (videoInput.containsKey(KEY_ROTATION_DEGREES)) {
+                    muxer.setOrientationHint(videoInput.getInteger(KEY_ROTATION_DEGREES));
+                    videoInput.setInteger(KEY_ROTATION_DEGREES, 0);
+                }
+                extractor.selectTrack(tracks.mVideoTrackIndex);
+                extractor.seekTo(startUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                long syncUs = Math.max(0, extractor.getSampleTime());
+                if (videoOutput == null) baseUs = syncUs;
+                if (audioInput != null) {
+                    extractor.selectTrack(tracks.mAudioTrackIndex);
+                    extractor.seekTo(syncUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                }
+                if (videoOutput == null) {
+                    pipelines.add(new PassthroughPipeline(tracks.mVideoTrackIndex, videoInput, muxer, baseUs));
+                } else {
+                    VideoPipeline video = new VideoPipeline(tracks.mVideoTrackIndex, videoInput, videoOutput, muxer, startUs, baseUs);
+                    video.frameCounter = frameCounter;
+                    pipelines.add(video);
+                }
+            } else if (audioInput != null) {
+                extractor.selectTrack(tracks.mAudioTrackIndex);
+                extractor.seekTo(startUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            }
+            if (audioInput != null) {
+                pipelines.add(audioOutput == null
+                    ? new PassthroughPipeline(tracks.mAudioTrackIndex, audioInput, muxer, baseUs)
+                    : new AudioPipeline(tracks.mAudioTrackIndex, audioInput, audioOutput, muxer, baseUs));
+            }
+            if (pipelines.isEmpty()) throw new IOException("No video or audio track found in " + inputPath);
+
+            long rangeUs = Math.min(endUs, sourceDurationUs(videoInput, audioInput)) - baseUs;
+            double lastProgress = -1;
+            while (!allDone(pipelines)) {
+                if (Thread.interrupted()) throw new InterruptedException();
+                boolean stepped = feed(extractor, pipelines, endUs);
+                for (TrackPipeline pipeline : pipelines) {
+                    stepped |= pipeline.drain();
+                }
+                if (!stepped) Thread.sleep(SLEEP_TO_WAIT_TRACK_MS);
+
+                double progress = progress(pipelines, rangeUs);
+                if (progress != lastProgress) {
+                    lastProgress = progress;
+                    listener.onTranscodeProgress(progress);
+                }
+            }
+            muxer.stop();
+            success = true;
+        } finally {
+            if (metrics != null) report(pipelines, begunAt);
+            for (TrackPipeline pipeline : pipelines) {
+                try { pipeline.release(); } catch (Throwable ignored) {}
+            }
+            try { extractor.release(); } catch (Throwable ignored) {}
+            if (muxer != null) {
+                try { muxer.release(); } catch (Throwable ignored) {}
+            }
+            if (!success) new File(outputPath).delete();
+        }
+    }
+
+    private void report(List<TrackPipeline> pipelines, long begunAt) {
+        for (TrackPipeline pipeline : pipelines) {
+            metrics.read(pipeline.bytesRead);
+            if (!(pipeline instanceof CodecPipeline)) continue;
+            CodecPipeline codecs = (CodecPipeline) pipeline;
+            metrics.codec(codecs.decoder.getName());
+            if (codecs.encoder != null) metrics.codec(codecs.encoder.getName());
+            if (pipeline instanceof VideoPipeline) metrics.encoded(pipeline.samplesWritten);
+        }
+        metrics.end("transcode", begunAt);
+    }
+
+    static boolean feed(MediaExtractor extractor, List<? extends TrackPipeline> pipelines, long endUs) {
+        int trackIndex = extractor.getSampleTrackIndex();
+        if (trackIndex < 0) {
+            boolean signaled = false;
+            for (TrackPipeline pipeline : pipelines) {
+                signaled |= pipeline.endInput();
+            }
+            return signaled;
+        }
+        for (TrackPipeline pipeline : pipelines) {
+            if (pipeline.extractorTrack != trackIndex) continue;
+            if (extractor.getSampleTime() >= endUs) {
+                extractor.unselectTrack(trackIndex);
+                pipeline.endInput();
+                return true;
+            }
+            if (!pipeline.feed(extractor)) return false;
+            extractor.advance();
+            return true;
+        }
+        extractor.advance();
+        return true;
+    }
+
+    static boolean allDone(List<? extends TrackPipeline> pipelines) {
+        for (TrackPipeline pipeline : pipelines) {
+            if (!pipeline.outputDone) return false;
+        }
+        return true;
+    }
+
+    private static double progress(List<TrackPipeline> pipelines, long rangeUs) {
+        if (rangeUs <= 0) return 0;
+        double progress = 1;
+        for (TrackPipeline pipeline : pipelines) {
+            double trackProgress = pipeline.outputDone ? 1 : (double) pipeline.writtenUs / rangeUs;
+            progress = Math.min(progress, trackProgress);
+        }
+        return Math.max(0, Math.min(1, progress));
+    }
+
+    static long sourceDurationUs(MediaFormat videoInput, MediaFormat audioInput) {
+        long durationUs = 0;
+        if (videoInput != null && videoInput.containsKey(MediaFormat.KEY_DURATION)) {
+            durationUs = videoInput.getLong(MediaFormat.KEY_DURATION);
+        }
+        if (audioInput != null && audioInput.containsKey(MediaFormat.KEY_DURATION)) {
+            durationUs = Math.max(durationUs, audioInput.getLong(MediaFormat.KEY_DURATION));
+        }
+        return durationUs > 0 ? durationUs : Long.MAX_VALUE;
+    }
+
+    abstract static class TrackPipeline {
+        final int extractorTrack;
+        boolean inputDone;
+        boolean outputDone;
+        long writtenUs;
+        long bytesRead;
+        int samplesWritten;
+
+        TrackPipeline(int extractorTrack) {
+            this.extractorTrack = extractorTrack;
+        }
+
+        abstract boolean feed(MediaExtractor extractor);
+
+        boolean endInput() {
+            if (inputDone) return false;
+            inputDone = true;
+            return true;
+        }
+
+        abstract boolean drain();
+
+        abstract void release();
+    }
+
+    static final class PassthroughPipeline extends TrackPipeline {
+        private final TrackSink muxer;
+        private final int muxerTrack;
+        private final long baseUs;
+        private final ByteBuffer buffer;
+        private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+
+        PassthroughPipeline(int extractorTrack, MediaFormat format, TrackSink muxer, long baseUs) {
+            super(extractorTrack);
+            this.muxer = muxer;
+            this.baseUs = baseUs;
+            this.muxerTrack = muxer.addTrack(format);
+            int bufferSize = format.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE)
+                ? format.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE) : 1024 * 1024;
+            this.buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.nativeOrder());
+        }
+
+        @Override
+        boolean feed(MediaExtractor extractor) {
+            long sampleTimeUs = extractor.getSampleTime();
+            if (sampleTimeUs < baseUs) return true;
+            buffer.clear();
+            int size = extractor.readSampleData(buffer, 0);
+            if (size <= 0) return true;
+            boolean sync = (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0;
+            info.set(0, size, sampleTimeUs - baseUs, sync ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0);
+            muxer.writeSampleData(muxerTrack, buffer, info);
+            writtenUs = info.presentationTimeUs;
+            bytesRead += size;
+            samplesWritten++;
+            return true;
+        }
+
+        @Override
+        boolean endInput() {
+            outputDone = true;
+            return super.endInput();
+        }
+
+        @Override
+        boolean drain() {
+            return false;
+        }
+
+        @Override
+        void release() {
+        }
+    }
+
+    abstract static class CodecPipeline extends TrackPipeline {
+        final TrackSink muxer;
+        final MediaCodec decoder;
+        final MediaCodec.BufferInfo decoderInfo = new MediaCodec.BufferInfo();
+        final MediaCodec.BufferInfo encoderInfo = new MediaCodec.BufferInfo();
+        MediaCodec encoder;
+        /** Also counts the samples the encoder emits when set. */
+        AtomicLong frameCounter;
+        int muxerTrack = -1;
+        boolean decoderDone;
+        private boolean decoderEosQueued;
+
+        CodecPipeline(int extractorTrack, TrackSink muxer, MediaCodec decoder) {
+            super(extractorTrack);
+            this.muxer = muxer;
+            this.decoder = decoder;
+        }
+
+        @Override
+        boolean feed(MediaExtractor extractor) {
+            int index = decoder.dequeueInputBuffer(0);
+            if (index < 0) return false;
+            int size = extractor.readSampleData(decoder.getInputBuffer(index), 0);
+            if (size < 0) {
+                decoder.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                decoderEosQueued = true;
+                inputDone = true;
+                return true;
+            }
+            decoder.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+            bytesRead += size;
+            return true;
+        }
+
+        boolean queueDecoderEos() {
+            if (!inputDone || decoderEosQueued) return false;
+            int index = decoder.dequeueInputBuffer(0);
+            if (index < 0) return false;
+            decoder.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            decoderEosQueued = true;
+            return true;
+        }
+
+        boolean drainEncoder() {
+            if (encoder == null || outputDone) return false;
+            boolean stepped = false;
+            while (true) {
+                int index = encoder.dequeueOutputBuffer(encoderInfo, 0);
+                if (index == MediaCodec.INFO_TRY_AGAIN_LATER) return stepped;
+                stepped = true;
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    muxerTrack = muxer.addTrack(encoder.getOutputFormat());
+                    continue;
+                }
+                if (index < 0) continue;
+                if ((encoderInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && encoderInfo.size > 0) {
+                    muxer.writeSampleData(muxerTrack, encoder.getOutputBuffer(index), encoderInfo);
+                    writtenUs = encoderInfo.presentationTimeUs;
+                    samplesWritten++;
+                    if (frameCounter != null) frameCounter.incrementAndGet();
+                }
+                encoder.releaseOutputBuffer(index, false);
+                if ((encoderInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    outputDone = true;
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        void release() {
+            try { decoder.stop(); } catch (Throwable ignored) {}
+            decoder.release();
+            if (encoder != null) {
+                try { encoder.stop(); } catch (Throwable ignored) {}
+                encoder.release();
+            }
+        }
+    }
+
+    private static final class VideoPipeline extends CodecPipeline {
+        private final long startUs;
+        private final long baseUs;
+        private final int width;
+        private final int height;
+        private EglCore egl;
+        private Surface encoderSurface;
+        private EGLSurface eglSurface;
+        private DecoderOutputSurface outputSurface;
+        /** Output frame spacing when frames are dropped to lower the frame rate, else 0. */
+        private final long frameIntervalUs;
+        private long nextFrameUs = Long.MIN_VALUE;
+
+        VideoPipeline(int extractorTrack, MediaFormat inputFormat, MediaFormat outputFormat, TrackSink muxer,
+                      long startUs, long baseUs) throws IOException {
+            super(extractorTrack, muxer, MediaCodec.createDecoderByType(inputFormat.getString(MediaFormat.KEY_MIME)));
+            this.startUs = startUs;
+            this.baseUs = baseUs;
+            this.width = outputFormat.getInteger(MediaFormat.KEY_WIDTH);
+            this.height = outputFormat.getInteger(MediaFormat.KEY_HEIGHT);
+            this.frameIntervalUs = CustomAndroidFormatStrategy.decimates(inputFormat, outputFormat)
+                ? (long) (1_000_000 / CustomAndroidFormatStrategy.frameRate(outputFormat, 0)) : 0;
+            // The caller never sees a pipeline whose setup failed, so whatever was created so far is released here.
+            try {
+                encoder = MediaCodec.createEncoderByType(outputFormat.getString(MediaFormat.KEY_MIME));
+                encoder.configure(outputFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+                encoderSurface = encoder.createInputSurface();
+                egl = new EglCore();
+                eglSurface = egl.createWindowSurface(encoderSurface);
+                egl.makeCurrent(eglSurface);
+                encoder.start();
+                outputSurface = new DecoderOutputSurface();
+                decoder.configure(inputFormat, outputSurface.getSurface(), null, 0);
+                decoder.start();
+            } catch (IOException | RuntimeException e) {
+                release();
+                throw e;
+            }
+        }
+
+        @Override
+        boolean drain() {
+            boolean stepped = drainEncoder();
+            stepped |= queueDecoderEos();
+            if (decoderDone) return stepped;
+            int index = decoder.dequeueOutputBuffer(decoderInfo, 0);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) return stepped;
+            if (index < 0) return true;
+            if ((decoderInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                decoder.releaseOutputBuffer(index, false);
+                encoder.signalEndOfInputStream();
+                decoderDone = true;
+                return true;
+            }
+            boolean render = decoderInfo.size > 0 && decoderInfo.presentationTimeUs >= startUs && keepFrame(decoderInfo.presentationTimeUs);
+            decoder.releaseOutputBuffer(index, render);
+            if (render) {
+                outputSurface.awaitNewImage();
+                outputSurface.drawImage(width, height);
+                egl.setPresentationTime(eglSurface, (decoderInfo.presentationTimeUs - baseUs) * 1000L);
+                egl.swapBuffers(eglSurface);
+            }
+            return true;
+        }
+
+        /**
+         * Keeps the frames nearest to a grid of frameIntervalUs. The quarter-interval slack keeps sources whose
+         * timestamps jitter from dropping frames that are only slightly early.
+         */
+        private boolean keepFrame(long presentationTimeUs) {
+            if (frameIntervalUs == 0) return true;
+            if (nextFrameUs != Long.MIN_VALUE && presentationTimeUs < nextFrameUs - frameIntervalUs / 4) return false;
+            nextFrameUs = nextFrameUs == Long.MIN_VALUE || nextFrameUs + frameIntervalUs <= presentationTimeUs
+                ? presentationTimeUs + frameIntervalUs : nextFrameUs + frameIntervalUs;
+            return true;
+        }
+
+        @Override
+        void release() {
+            if (outputSurface != null) outputSurface.release();
+            if (egl != null) {
+                egl.releaseSurface(eglSurface);
+                egl.release();
+            }
+            if (encoderSurface != null) encoderSurface.release();
+            super.release();
+        }
+    }
+
+    static final class AudioPipeline extends CodecPipeline {
+        private static final int BYTES_PER_SAMPLE = 2;
+
+        private final MediaFormat outputFormat;
+        private final long baseUs;
+        private int inChannels;
+        private int outChannels;
+        private int sampleRate;
+        private int pendingIndex = -1;
+        private ByteBuffer pendingBuffer;
+        private long pendingPtsUs;
+        private boolean encoderEosQueued;
+
+        AudioPipeline(int extractorTrack, MediaFormat inputFormat, MediaFormat outputFormat, TrackSink muxer,
+                      long baseUs) throws IOException {
+            super(extractorTrack, muxer, MediaCodec.createDecoderByType(inputFormat.getString(MediaFormat.KEY_MIME)));
+            this.outputFormat = outputFormat;
+            this.baseUs = baseUs;
+            decoder.configure(inputFormat, null, null, 0);
+            decoder.start();
+        }
+
+        private void createEncoder(MediaFormat decodedFormat) throws IOException {
+            inChannels = decodedFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            sampleRate = decodedFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            outChannels = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            outputFormat.setInteger(MediaFormat.KEY_SAMPLE_RATE, sampleRate);
+            encoder = MediaCodec.createEncoderByType(outputFormat.getString(MediaFormat.KEY_MIME));
+            encoder.configure(outputFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            encoder.start();
+        }
+
+        @Override
+        boolean drain() {
+            try {
+                boolean stepped = drainEncoder();
+                stepped |= queueDecoderEos();
+                if (pendingIndex < 0 && !decoderDone) {
+                    int index = decoder.dequeueOutputBuffer(decoderInfo, 0);
+                    if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                        if (encoder == null) createEncoder(decoder.getOutputFormat());
+                        return true;
+                    }
+                    if (index >= 0) {
+                        stepped = true;
+                        if (encoder == null) createEncoder(decoder.getOutputFormat());
+                        if ((decoderInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) decoderDone = true;
+                        if (decoderInfo.size > 0 && decoderInfo.presentationTimeUs >= baseUs) {
+                            pendingIndex = index;
+                            pendingBuffer = decoder.getOutputBuffer(index);
+                            pendingPtsUs = decoderInfo.presentationTimeUs;
+                        } else {
+                            decoder.releaseOutputBuffer(index, false);
+                        }
+                    }
+                }
+                if (pendingIndex >= 0) {
+                    stepped |= feedEncoder();
+                } else if (decoderDone && !encoderEosQueued && encoder != null) {
+                    int index = encoder.dequeueInputBuffer(0);
+                    if (index >= 0) {
+                        encoder.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        encoderEosQueued = true;
+                        stepped = true;
+                    }
+                } else if (decoderDone && encoder == null) {
+                    outputDone = true;
+                }
+                return stepped;
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private boolean feedEncoder() {
+            int index = encoder.dequeueInputBuffer(0);
+            if (index < 0) return false;
+            ShortBuffer in = pendingBuffer.order(ByteOrder.nativeOrder()).asShortBuffer();
+            ByteBuffer outBytes = encoder.getInputBuffer(index);
+            outBytes.clear();
+            ShortBuffer out = outBytes.order(ByteOrder.nativeOrder()).asShortBuffer();
+            int framesAvailable = in.remaining() / inChannels;
+            int framesToCopy = Math.min(framesAvailable, out.remaining() / outChannels);
+            remix(in, out, framesToCopy);
+            encoder.queueInputBuffer(index, 0, framesToCopy * outChannels * BYTES_PER_SAMPLE, pendingPtsUs - baseUs, 0);
+            if (framesToCopy == framesAvailable) {
+                decoder.releaseOutputBuffer(pendingIndex, false);
+                pendingIndex = -1;
+                pendingBuffer = null;
+            } else {
+                pendingBuffer.position(pendingBuffer.position() + framesToCopy * inChannels * BYTES_PER_SAMPLE);
+                pendingPtsUs += framesToCopy * 1_000_000L / sampleRate;
+            }
+            return true;
+        }
+
+        private void remix(ShortBuffer in, ShortBuffer out, int frames) {
+            if (inChannels == outChannels) {
+                int limit = in.limit();
+                in.limit(in.position() + frames * inChannels);
+                out.put(in);
+                in.limit(limit);
+                return;
+            }
+            for (int i = 0; i < frames; i++) {
+                if (inChannels == 1) {
+                    short sample = in.get();
+                    for (int c = 0; c < outChannels; c++) out.put(sample);
+                } else if (outChannels == 1) {
+                    int sum = 0;
+                    for (int c = 0; c < inChannels; c++) sum += in.get();
+                    out.put((short) (sum / inChannels));
+                } else {
+                    for (int c = 0; c < inChannels; c++) {
+                        short sample = in.get();
+                        if (c < outChannels) out.put(sample);
+                    }
+                    for (int c = inChannels; c < outChannels; c++) out.put((short) 0);
+                }
+            }
+        }
+    }
+
+    static final class PlatformMuxer implements Muxer {
+        private final MediaMuxer muxer;
+
+        PlatformMuxer(MediaMuxer muxer) {
+            this.muxer = muxer;
+        }
+
+        @Override public void setOrientationHint(int degrees) {
+            muxer.setOrientationHint(degrees);
+        }
+
+        @Override public int addTrack(MediaFormat format) {
+            return muxer.addTrack(format);
+        }
+
+        @Override public void start() {
+            muxer.start();
+        }
+
+        @Override public void writeSampleData(int track, ByteBuffer data, MediaCodec.BufferInfo info) {
+            muxer.writeSampleData(track, data, info);
+        }
+
+        @Override public void stop() {
+            muxer.stop();
+        }
+
+        @Override public void release() {
+            muxer.release();
+        }
+    }
+
+    /** Where a pipeline sends its encoded samples. */
+    interface TrackSink {
+        int addTrack(MediaFormat format);
+
+        void writeSampleData(int track, ByteBuffer data, MediaCodec.BufferInfo info);
+    }
+
+    /** Holds samples back until every expected track has been added, then starts the muxer. */
+    static final class QueuedMuxer implements TrackSink {
+        private final Muxer muxer;
+        private final int expectedTracks;
+        private final List<PendingSample> pending = new ArrayList<>();
+        private int addedTracks;
+        private boolean started;
+
+        QueuedMuxer(Muxer muxer, int expectedTracks) {
+            this.muxer = muxer;
+            this.expectedTracks = expectedTracks;
+        }
+
+        void setOrientationHint(int degrees) {
+            muxer.setOrientationHint(degrees);
+        }
+
+        @Override
+        public int addTrack(MediaFormat format) {
+            int track = muxer.addTrack(format);
+            if (++addedTracks == expectedTracks) startAndFlush();
+            return track;
+        }
+
+        private void startAndFlush() {
+            muxer.start();
+            started = true;
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            for (PendingSample sample : pending) {
+                info.set(0, sample.data.remaining(), sample.presentationTimeUs, sample.flags);
+                muxer.writeSampleData(sample.track, sample.data, info);
+            }
+            pending.clear();
+        }
+
+        @Override
+        public void writeSampleData(int track, ByteBuffer data, MediaCodec.BufferInfo info) {
+            if (started) {
+                muxer.writeSampleData(track, data, info);
+                return;
+            }
+            ByteBuffer copy = ByteBuffer.allocate(info.size);
+            ByteBuffer source = data.duplicate();
+            source.limit(info.offset + info.size).position(info.offset);
+            copy.put(source).flip();
+            pending.add(new PendingSample(track, copy, info.presentationTimeUs, info.flags));
+        }
+
+        void stop() {
+            if (!started && addedTracks > 0) startAndFlush();
+            if (started) muxer.stop();
+            started = false;
+        }
+
+        void release() {
+            muxer.release();
+        }
+
+        private static final class PendingSample {
+            final int track;
+            final ByteBuffer data;
+            final long presentationTimeUs;
+            final int flags;
+
+            PendingSample(int track, ByteBuffer data, long presentationTimeUs, int flags) {
+                this.track = track;
+                this.data = data;
+                this.presentationTimeUs = presentationTimeUs;
+                this.flags = flags;
+            }
+        }
+    }
+}
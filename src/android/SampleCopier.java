@@ -0,0 +1,60 @@
+package com.okanbeydanol.videoHelper;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The sample loop of the remux fallback: copies samples unchanged from a demuxer to a muxer, rebasing their
+ * timestamps. Kept free of android.media so the loop can be tested and benchmarked on a plain JVM; the plugin
+ * plugs in a MediaExtractor and a {@link RangeTranscoder.Muxer}.
+ */
+final class SampleCopier {
+    private SampleCopier() {
+    }
+
+    /** Samples in file order, like MediaExtractor with the wanted tracks selected. */
+    interface Source {
+        /** Track of the current sample, or -1 once there are no more samples. */
+        int track();
+
+        long sampleTimeUs();
+
+        boolean isSync();
+
+        /** Reads the current sample to the start of buffer and returns its size. */
+        int read(ByteBuffer buffer);
+
+        void advance();
+    }
+
+    interface Sink {
+        void write(int track, ByteBuffer data, int size, long presentationTimeUs, boolean sync) throws IOException;
+    }
+
+    /**
+     * Copies every sample of a mapped track from the source's current position until one lies past endUs, and
+     * returns the number of bytes copied. trackMap maps source tracks to sink tracks, -1 skipping a track.
+     */
+    static long copy(Source source, int[] trackMap, Sink sink, ByteBuffer buffer, long baseUs, long endUs) throws IOException {
+        long bytes = 0;
+        while (true) {
+            int track = source.track();
+            if (track < 0) break;
+            if (trackMap[track] == -1) {
+                source.advance();
+                continue;
+            }
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Trim canceled");
+            long sampleTimeUs = source.sampleTimeUs();
+            if (sampleTimeUs < 0 || sampleTimeUs > endUs) break;
+
+            int size = source.read(buffer);
+            if (size <= 0) break;
+            bytes += size;
+            sink.write(trackMap[track], buffer, size, Math.max(0, sampleTimeUs - baseUs), source.isSync());
+            source.advance();
+        }
+        return bytes;
+    }
+}
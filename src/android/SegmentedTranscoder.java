@@ -0,0 +1,386 @@
+package com.okanbeydanol.videoHelper;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.ypresto.androidtranscoder.MediaTranscoder;
+import net.ypresto.androidtranscoder.format.MediaFormatStrategy;
+
+import static com.okanbeydanol.videoHelper.Mp4Parser.*;
+
+/**
+ * Transcodes a range by splitting its video at sync samples into chunks that are encoded concurrently, each on
+ * its own decoder/encoder pair, while the audio is processed in one separate pass. The encoded chunks are then
+ * stitched with {@link Mp4Writer} into one MP4 with continuous timestamps. Whenever the source can't be split or
+ * the chunks can't be joined losslessly, the range is transcoded in one piece instead.
+ */
+final class SegmentedTranscoder {
+    static final int MAX_PARALLELISM = 4;
+    /** Shorter chunks cost more in codec setup than they gain. */
+    private static final long MIN_CHUNK_US = 4_000_000;
+    /** Granularity at which the stitched audio and video samples are interleaved. */
+    private static final long INTERLEAVE_US = 1_000_000;
+    /** Share of the reported progress taken by the stitch. */
+    private static final double STITCH_SHARE = 0.05;
+    private static final Map<String, Integer> MAX_INSTANCES = new ConcurrentHashMap<>();
+
+    private final String inputPath;
+    private final String outputPath;
+    private final MediaFormatStrategy strategy;
+    private final long startUs;
+    private final long endUs;
+    private final int parallelism;
+    private JobMetrics metrics;
+    private AtomicLong frameCounter;
+
+    SegmentedTranscoder(String inputPath, String outputPath, MediaFormatStrategy strategy, long startUs, long endUs,
+                        int parallelism) {
+        this.inputPath = inputPath;
+        this.outputPath = outputPath;
+        this.strategy = strategy;
+        this.startUs = Math.max(0, startUs);
+        this.endUs = endUs > 0 ? endUs : Long.MAX_VALUE;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /** Chunks to encode at once when the caller doesn't say: half the cores, bounded by the codec instance limits. */
+    static int autoParallelism(String sourceMime, String outputMime) {
+        int parallelism = Math.min(MAX_PARALLELISM, Runtime.getRuntime().availableProcessors() / 2);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            if (sourceMime != null) parallelism = Math.min(parallelism, maxInstances(sourceMime, false));
+            parallelism = Math.min(parallelism, maxInstances(outputMime, true));
+        }
+        return Math.max(1, parallelism);
+    }
+
+    private static int maxInstances(String mime, boolean encoder) {
+        String key = mime + (encoder ? "/encoder" : "/decoder");
+        Integer cached = MAX_INSTANCES.get(key);
+        if (cached != null) return cached;
+        int max = 0;
+        try {
+            for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+                if (info.isEncoder() != encoder) continue;
+                for (String type : info.getSupportedTypes()) {
+                    if (type.equalsIgnoreCase(mime)) max = Math.max(max, info.getCapabilitiesForType(type).getMaxSupportedInstances());
+                }
+            }
+        } catch (RuntimeException ignored) {
+        }
+        int instances = max > 0 ? max : Integer.MAX_VALUE;
+        MAX_INSTANCES.put(key, instances);
+        return instances;
+    }
+
+    SegmentedTranscoder setMetrics(JobMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /** Adds the frames every chunk's encoder emits to frames; see {@link RangeTranscoder#setFrameCounter}. */
+    SegmentedTranscoder setFrameCounter(AtomicLong frames) {
+        this.frameCounter = frames;
+        return this;
+    }
+
+    Future<Void> start(ExecutorService executor, MediaTranscoder.Listener listener) {
+        AtomicBoolean started = new AtomicBoolean();
+        FutureTask<Void> task = new FutureTask<Void>(() -> {
+            started.set(true);
+            try {
+                transcode(executor, listener);
+                listener.onTranscodeCompleted();
+            } catch (InterruptedException | InterruptedIOException | ClosedByInterruptException e) {
+                listener.onTranscodeCanceled();
+            } catch (Exception e) {
+                listener.onTranscodeFailed(e);
+            }
+            return null;
+        }) {
+            @Override protected void done() {
+                if (isCancelled() && started.compareAndSet(false, true)) listener.onTranscodeCanceled();
+            }
+        };
+        executor.execute(task);
+        return task;
+    }
+
+    private void transcode(ExecutorService executor, MediaTranscoder.Listener listener) throws Exception {
+        long[] bounds = null;
+        boolean hasAudio = false;
+        try (FileInputStream in = new FileInputStream(inputPath); FileChannel channel = in.getChannel()) {
+            Mp4Movie movie = Mp4Parser.parse(channel);
+            Mp4Track video = movie == null || movie.fragmented ? null : movie.firstTrack("video/");
+            Mp4SampleTable table = video != null ? Mp4SampleTable.parse(movie.moov, video) : null;
+            if (table != null && table.sampleCount > 0) {
+                bounds = chunkBounds(video, table, Math.min(endUs, movie.durationUs()));
+                hasAudio = movie.firstTrack("audio/") != null;
+            }
+        }
+        if (bounds == null) {
+            range(outputPath, startUs, endUs).transcode(listener);
+            return;
+        }
+
+        int chunks = bounds.length - 1;
+        File[] parts = new File[chunks];
+        File audio = hasAudio ? new File(outputPath + ".audio.tmp") : null;
+        List<Part> running = new ArrayList<>();
+        BlockingQueue<Part> finished = new LinkedBlockingQueue<>();
+        Progress progress = new Progress(bounds, hasAudio, listener);
+        try {
+            for (int k = 0; k < chunks; k++) {
+                parts[k] = new File(outputPath + ".part" + k + ".tmp");
+                long chunkEndUs = k == chunks - 1 ? endUs : bounds[k + 1];
+                Part part = new Part(k, progress, finished);
+                running.add(part);
+                part.future = range(parts[k].getAbsolutePath(), bounds[k], chunkEndUs)
+                    .setTracks(true, false)
+                    .start(executor, part);
+            }
+            if (audio != null) {
+                Part part = new Part(-1, progress, finished);
+                running.add(part);
+                part.future = range(audio.getAbsolutePath(), startUs, endUs)
+                    .setTracks(false, true)
+                    .start(executor, part);
+            }
+            for (int i = 0; i < running.size(); i++) {
+                Part part = finished.take();
+                if (part.canceled) throw new InterruptedException();
+                if (part.error != null) throw part.error;
+            }
+            long stitchBegunAt = metrics != null ? metrics.begin("stitch") : 0;
+            boolean stitched = stitch(bounds, parts, audio, listener);
+            if (metrics != null) metrics.end("stitch", stitchBegunAt);
+            if (!stitched) {
+                // Chunks encoded with differing parameters can't share one sample description.
+                range(outputPath, startUs, endUs).transcode(listener);
+            }
+        } finally {
+            for (Part part : running) {
+                if (part.future != null) part.future.cancel(true);
+            }
+            for (File part : parts) {
+                if (part != null) part.delete();
+            }
+            if (audio != null) audio.delete();
+        }
+    }
+
+    private RangeTranscoder range(String output, long fromUs, long toUs) {
+        return new RangeTranscoder(inputPath, output, strategy, fromUs, toUs).setMetrics(metrics).setFrameCounter(frameCounter);
+    }
+
+    /** Chunk start times followed by the end of the range, or null when the range isn't worth splitting. */
+    private long[] chunkBounds(Mp4Track video, Mp4SampleTable table, long rangeEndUs) {
+        long rangeUs = rangeEndUs - startUs;
+        int chunks = (int) Math.min(parallelism, rangeUs / MIN_CHUNK_US);
+        if (chunks < 2) return null;
+
+        // Presentation times exactly as the extractor reports them, so RangeTranscoder cuts on these samples.
+        long editStart = Math.max(0, video.editMediaTime);
+        int syncCount = table.syncSamples == null ? table.sampleCount : table.syncSamples.length;
+        long[] syncTimes = new long[syncCount];
+        for (int i = 0; i < syncCount; i++) {
+            int sample = table.syncSamples == null ? i : table.syncSamples[i];
+            syncTimes[i] = table.toMicros(table.decodeTimes[sample] + table.compositionOffset(sample) - editStart);
+        }
+        Arrays.sort(syncTimes);
+
+        long[] bounds = new long[chunks + 1];
+        int count = 0;
+        bounds[count++] = startUs;
+        for (int k = 1; k < chunks; k++) {
+            long target = startUs + rangeUs * k / chunks;
+            int index = Arrays.binarySearch(syncTimes, target);
+            if (index < 0) index = -index - 1;
+            if (index == syncCount || (index > 0 && target - syncTimes[index - 1] < syncTimes[index] - target)) index--;
+            long boundary = syncTimes[index];
+            if (boundary - bounds[count - 1] >= MIN_CHUNK_US / 2 && rangeEndUs - boundary >= MIN_CHUNK_US / 2) {
+                bounds[count++] = boundary;
+            }
+        }
+        bounds[count++] = rangeEndUs;
+        return count > 2 ? Arrays.copyOf(bounds, count) : null;
+    }
+
+    /** Joins the encoded chunks and the audio pass; returns false when the chunks can't share one track. */
+    private boolean stitch(long[] bounds, File[] parts, File audio, MediaTranscoder.Listener listener) throws IOException {
+        int chunks = parts.length;
+        List<FileInputStream> streams = new ArrayList<>();
+        try {
+            FileChannel[] channels = new FileChannel[chunks];
+            Mp4Movie[] movies = new Mp4Movie[chunks];
+            Mp4Track[] tracks = new Mp4Track[chunks];
+            Mp4SampleTable[] tables = new Mp4SampleTable[chunks];
+            for (int k = 0; k < chunks; k++) {
+                FileInputStream in = new FileInputStream(parts[k]);
+                streams.add(in);
+                channels[k] = in.getChannel();
+                movies[k] = Mp4Parser.parse(channels[k]);
+                tracks[k] = movies[k] != null ? movies[k].firstTrack("video/") : null;
+                tables[k] = tracks[k] != null ? Mp4SampleTable.parse(movies[k].moov, tracks[k]) : null;
+                if (tables[k] == null || tables[k].sampleCount == 0) throw new IOException("Unreadable video chunk " + k);
+                if (k > 0 && (tracks[k].editMediaTime != tracks[0].editMediaTime
+                    || !tracks[k].sampleDescription(movies[k].moov).equals(tracks[0].sampleDescription(movies[0].moov)))) {
+                    return false;
+                }
+            }
+
+            FileChannel audioChannel = null;
+            Mp4Movie audioMovie = null;
+            Mp4Track audioTrack = null;
+            Mp4SampleTable audioTable = null;
+            if (audio != null) {
+                FileInputStream in = new FileInputStream(audio);
+                streams.add(in);
+                audioChannel = in.getChannel();
+                audioMovie = Mp4Parser.parse(audioChannel);
+                audioTrack = audioMovie != null ? audioMovie.firstTrack("audio/") : null;
+                audioTable = audioTrack != null ? Mp4SampleTable.parse(audioMovie.moov, audioTrack) : null;
+                if (audioTable == null) throw new IOException("Unreadable audio track");
+            }
+
+            // Cut both tracks on a common grid so Mp4Writer can interleave them.
+            TreeSet<Long> grid = new TreeSet<>();
+            long rangeUs = bounds[chunks] - startUs;
+            for (long t = 0; t < rangeUs; t += INTERLEAVE_US) grid.add(t);
+            for (int k = 0; k < chunks; k++) grid.add(bounds[k] - startUs);
+            Long[] cells = grid.toArray(new Long[0]);
+
+            Mp4Writer.TrackPlan videoPlan = new Mp4Writer.TrackPlan(movies[0].moov, tracks[0]);
+            videoPlan.mediaTime = tracks[0].editMediaTime >= 0 ? tracks[0].editMediaTime : -1;
+            Mp4Writer.TrackPlan audioPlan = null;
+            if (audioTable != null && audioTable.sampleCount > 0) {
+                audioPlan = new Mp4Writer.TrackPlan(audioMovie.moov, audioTrack);
+                audioPlan.mediaTime = audioTrack.editMediaTime >= 0 ? audioTrack.editMediaTime : -1;
+            }
+            int chunk = 0;
+            for (int i = 0; i < cells.length; i++) {
+                long cellStart = cells[i];
+                boolean last = i == cells.length - 1;
+                while (chunk + 1 < chunks && bounds[chunk + 1] - startUs <= cellStart) chunk++;
+                Mp4SampleTable table = tables[chunk];
+                long chunkStart = bounds[chunk] - startUs;
+                boolean chunkEnd = last || (chunk + 1 < chunks && cells[i + 1] == bounds[chunk + 1] - startUs);
+                int first = table.sampleAtOrAfter(table.fromMicros(cellStart - chunkStart));
+                int end = chunkEnd ? table.sampleCount : table.sampleAtOrAfter(table.fromMicros(cells[i + 1] - chunkStart));
+                // The last frame of a chunk lasts until the next chunk starts, whatever the muxer guessed.
+                long endTime = chunkEnd && chunk + 1 < chunks
+                    ? table.decodeTimes[0] + table.fromMicros(bounds[chunk + 1] - bounds[chunk]) : -1;
+                videoPlan.add(channels[chunk], table, first, end, endTime);
+                if (audioPlan != null) {
+                    int audioFirst = audioTable.sampleAtOrAfter(audioTable.fromMicros(cellStart));
+                    int audioEnd = last ? audioTable.sampleCount : audioTable.sampleAtOrAfter(audioTable.fromMicros(cells[i + 1]));
+                    audioPlan.add(audioChannel, audioTable, audioFirst, audioEnd);
+                }
+            }
+            List<Mp4Writer.TrackPlan> plans = new ArrayList<>();
+            plans.add(videoPlan);
+            if (audioPlan != null) plans.add(audioPlan);
+
+            Mp4Writer writer = new Mp4Writer(Mp4Writer.readBox(channels[0], movies[0].topLevelBox(FTYP)), movies[0].moov)
+                .setFastStart(true);
+            boolean success = false;
+            try (RandomAccessFile out = new RandomAccessFile(outputPath, "rw"); FileChannel outChannel = out.getChannel()) {
+                writer.write(plans, outChannel, (written, total) ->
+                    listener.onTranscodeProgress(1 - STITCH_SHARE + STITCH_SHARE * written / Math.max(1, total)));
+                success = true;
+            } finally {
+                if (!success) new File(outputPath).delete();
+            }
+            return true;
+        } finally {
+            for (FileInputStream in : streams) {
+                try { in.close(); } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    /** Combines per-chunk progress weighted by chunk length; the audio pass runs alongside and bounds the total. */
+    private static final class Progress {
+        private final double[] weights;
+        private final double[] chunks;
+        private final MediaTranscoder.Listener listener;
+        private double audio;
+
+        Progress(long[] bounds, boolean hasAudio, MediaTranscoder.Listener listener) {
+            int count = bounds.length - 1;
+            this.weights = new double[count];
+            this.chunks = new double[count];
+            this.listener = listener;
+            this.audio = hasAudio ? 0 : 1;
+            double range = bounds[count] - bounds[0];
+            for (int k = 0; k < count; k++) weights[k] = (bounds[k + 1] - bounds[k]) / range;
+        }
+
+        synchronized void update(int chunk, double fraction) {
+            if (chunk < 0) {
+                audio = fraction;
+            } else {
+                chunks[chunk] = fraction;
+            }
+            double video = 0;
+            for (int k = 0; k < chunks.length; k++) video += chunks[k] * weights[k];
+            listener.onTranscodeProgress(Math.min(video, audio) * (1 - STITCH_SHARE));
+        }
+    }
+
+    /** Outcome of one chunk (or, with index -1, of the audio pass). */
+    private static final class Part implements MediaTranscoder.Listener {
+        private final int index;
+        private final Progress progress;
+        private final BlockingQueue<Part> finished;
+        volatile Future<Void> future;
+        volatile Exception error;
+        volatile boolean canceled;
+
+        Part(int index, Progress progress, BlockingQueue<Part> finished) {
+            this.index = index;
+            this.progress = progress;
+            this.finished = finished;
+        }
+
+        @Override public void onTranscodeProgress(double fraction) {
+            progress.update(index, fraction);
+        }
+
+        @Override public void onTranscodeCompleted() {
+            progress.update(index, 1);
+            finished.add(this);
+        }
+
+        @Override public void onTranscodeCanceled() {
+            canceled = true;
+            finished.add(this);
+        }
+
+        @Override public void onTranscodeFailed(Exception exception) {
+            error = exception;
+            finished.add(this);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.okanbeydanol.videoHelper;
+
+import java.nio.ByteBuffer;
+
+import static com.okanbeydanol.videoHelper.Mp4Parser.*;
+
+/**
+ * Silence for an AAC-LC track, so a clip without audio can join clips that have it. The frames carry no spectral
+ * data and decode to silence at any sample rate; only mono and stereo layouts are covered.
+ */
+final class SilentAac {
+    static final int SAMPLES_PER_FRAME = 1024;
+    private static final int MP4A = fourcc("mp4a");
+    private static final int AOT_AAC_LC = 2;
+    private static final int[] SAMPLE_RATES = {96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000,
+        11025, 8000, 7350};
+    private static final byte[] MONO = {0x00, (byte) 0xC8, 0x00, (byte) 0x80, 0x23, (byte) 0x80};
+    private static final byte[] STEREO = {0x21, 0x00, 0x49, (byte) 0x90, 0x02, 0x19, 0x00, 0x23, (byte) 0x80};
+
+    final int sampleRate;
+    final int channels;
+    final byte[] frame;
+
+    private SilentAac(int sampleRate, int channels, byte[] frame) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.frame = frame;
+    }
+
+    /** Silence matching the track's sample description, or null when it isn't mono or stereo AAC-LC. */
+    static SilentAac forTrack(ByteBuffer moov, Mp4Track track) {
+        if (track.sampleEntryType != MP4A) return null;
+        ByteBuffer stsd = track.sampleDescription(moov);
+        int end = stsd.limit();
+        int entry = contentStart(stsd, 0) + 8;
+        if (entry + 36 > end) return null;
+        int entryEnd = boxEnd(stsd, entry, end);
+        if (entryEnd < 0) return null;
+        int soundVersion = stsd.getShort(entry + 16) & 0xFFFF;
+        int childrenStart = entry + (soundVersion == 1 ? 52 : soundVersion == 2 ? 72 : 36);
+        int esds = findChild(stsd, childrenStart, entryEnd, ESDS);
+        if (esds < 0) return null;
+        int config = decoderSpecificInfo(stsd, contentStart(stsd, esds) + 4, boxEnd(stsd, esds, entryEnd));
+        if (config < 0 || config + 2 > entryEnd) return null;
+
+        int b0 = stsd.get(config) & 0xFF;
+        int b1 = stsd.get(config + 1) & 0xFF;
+        if (b0 >> 3 != AOT_AAC_LC) return null;
+        int rateIndex = ((b0 & 0x07) << 1) | (b1 >> 7);
+        int channels = (b1 >> 3) & 0x0F;
+        if (rateIndex >= SAMPLE_RATES.length) return null;
+        if (channels == 1) return new SilentAac(SAMPLE_RATES[rateIndex], 1, MONO);
+        if (channels == 2) return new SilentAac(SAMPLE_RATES[rateIndex], 2, STEREO);
+        return null;
+    }
+
+    /**
+     * Enough frames to cover durationUs in the track's timescale, back to back from offset 0 of a file holding
+     * {@link #frames}. The last frame may end early; the writer stretches it to the clip's end.
+     */
+    Mp4SampleTable table(long timescale, long durationUs) {
+        int count = (int) Math.max(1, durationUs * sampleRate / (SAMPLES_PER_FRAME * 1_000_000L));
+        int[] sizes = new int[count];
+        long[] decodeTimes = new long[count + 1];
+        for (int i = 0; i < count; i++) {
+            sizes[i] = frame.length;
+            decodeTimes[i + 1] = (long) (i + 1) * SAMPLES_PER_FRAME * timescale / sampleRate;
+        }
+        return Mp4SampleTable.contiguous(timescale, sizes, decodeTimes);
+    }
+
+    /** The payload for {@link #table}: count copies of the frame. */
+    ByteBuffer frames(int count) {
+        ByteBuffer data = ByteBuffer.allocate(count * frame.length);
+        for (int i = 0; i < count; i++) data.put(frame);
+        data.flip();
+        return data;
+    }
+
+    /** Position of the AudioSpecificConfig in an ES_Descriptor, or -1. */
+    private static int decoderSpecificInfo(ByteBuffer buf, int p, int end) {
+        if (end < 0) return -1;
+        while (p < end) {
+            int tag = buf.get(p++) & 0xFF;
+            int length = 0;
+            for (int i = 0; i < 4 && p < end; i++) {
+                int b = buf.get(p++) & 0xFF;
+                length = (length << 7) | (b & 0x7F);
+                if ((b & 0x80) == 0) break;
+            }
+            if (tag == 0x03) {
+                int flags = buf.get(p + 2) & 0xFF;
+                p += 3;
+                if ((flags & 0x80) != 0) p += 2;
+                if ((flags & 0x40) != 0) p += 1 + (buf.get(p) & 0xFF);
+                if ((flags & 0x20) != 0) p += 2;
+            } else if (tag == 0x04) {
+                // objectTypeIndication 0x40 is MPEG-4 audio; the rest is stream type, buffer size and bitrates.
+                if ((buf.get(p) & 0xFF) != 0x40) return -1;
+                p += 13;
+            } else if (tag == 0x05) {
+                return length >= 2 ? p : -1;
+            } else {
+                p += length;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,156 @@
+package com.okanbeydanol.videoHelper;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.media.MediaMetadataRetriever;
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Grabs any number of frames from one video through a single retriever session. On API 27+ frames are decoded
+ * close to the target size; older releases decode at full size. Either way a frame that doesn't match the target
+ * exactly is scaled into one reused bitmap, so a given width and height come out the same on every release.
+ */
+final class ThumbnailExtractor implements Closeable {
+    private static final int MAX_POOLED_BUFFER = 4 * 1024 * 1024;
+    /** Exact requests this close to a keyframe take the keyframe itself, which needs no decode beyond it. */
+    private static final long KEYFRAME_SNAP_US = 16_000;
+    private static final ThreadLocal<ByteArrayOutputStream> ENCODE_BUFFER =
+        ThreadLocal.withInitial(() -> new ByteArrayOutputStream(64 * 1024));
+
+    private final MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+    private final int option;
+    private final int targetWidth;
+    private final int targetHeight;
+    private Bitmap scratch;
+    private Canvas canvas;
+    private final Rect destination = new Rect();
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private KeyframeIndex keyframes;
+
+    /** A width or height of 0 keeps the aspect ratio of the other; both 0 keeps the source size. */
+    ThumbnailExtractor(String videoPath, int width, int height, boolean exact) throws IOException {
+        try {
+            retriever.setDataSource(videoPath);
+        } catch (RuntimeException e) {
+            close();
+            throw new IOException("Cannot open " + videoPath + ": " + e.getMessage(), e);
+        }
+        option = exact ? MediaMetadataRetriever.OPTION_CLOSEST : MediaMetadataRetriever.OPTION_CLOSEST_SYNC;
+        if (width > 0 && height > 0) {
+            targetWidth = width;
+            targetHeight = height;
+        } else if (width > 0 || height > 0) {
+            double aspectRatio = displayAspectRatio();
+            targetWidth = width > 0 ? width : (int) Math.round(height * aspectRatio);
+            targetHeight = height > 0 ? height : (int) Math.round(width / aspectRatio);
+        } else {
+            targetWidth = 0;
+            targetHeight = 0;
+        }
+    }
+
+    ThumbnailExtractor setKeyframes(KeyframeIndex keyframes) {
+        this.keyframes = keyframes;
+        return this;
+    }
+
+    /** Writes the frame at timeUs to the output file and returns false when no frame could be decoded. */
+    boolean writeFrame(long timeUs, File output, Bitmap.CompressFormat format, int quality) throws IOException {
+        Bitmap frame = frameAt(timeUs);
+        if (frame == null) return false;
+        try (OutputStream out = new FileOutputStream(output)) {
+            if (!frame.compress(format, quality, out)) throw new IOException("Failed to encode frame at " + timeUs + "us");
+        } finally {
+            if (frame != scratch) frame.recycle();
+        }
+        return true;
+    }
+
+    /** Encodes the frame at timeUs in memory, or returns null when no frame could be decoded. */
+    byte[] encodeFrame(long timeUs, Bitmap.CompressFormat format, int quality) throws IOException {
+        Bitmap frame = frameAt(timeUs);
+        if (frame == null) return null;
+        ByteArrayOutputStream buffer = ENCODE_BUFFER.get();
+        buffer.reset();
+        try {
+            if (!frame.compress(format, quality, buffer)) throw new IOException("Failed to encode frame at " + timeUs + "us");
+            return buffer.toByteArray();
+        } finally {
+            if (frame != scratch) frame.recycle();
+            if (buffer.size() > MAX_POOLED_BUFFER) ENCODE_BUFFER.remove();
+        }
+    }
+
+    static Bitmap.CompressFormat compressFormat(String name) {
+        if (name != null && name.toLowerCase(Locale.ENGLISH).equals("webp")) {
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+        }
+        return Bitmap.CompressFormat.JPEG;
+    }
+
+    static String extension(Bitmap.CompressFormat format) {
+        return format == Bitmap.CompressFormat.JPEG ? ".jpg" : ".webp";
+    }
+
+    /** The returned bitmap may be the shared scratch bitmap; it is only valid until the next call. */
+    Bitmap frameAt(long timeUs) {
+        int option = this.option;
+        if (keyframes != null && option == MediaMetadataRetriever.OPTION_CLOSEST) {
+            long keyframeUs = keyframes.keyframeAtOrBefore(timeUs);
+            if (Math.abs(timeUs - keyframeUs) <= KEYFRAME_SNAP_US) {
+                timeUs = keyframeUs;
+                option = MediaMetadataRetriever.OPTION_CLOSEST_SYNC;
+            }
+        }
+        if (targetWidth == 0) return retriever.getFrameAtTime(timeUs, option);
+        // getScaledFrameAtTime fits inside the box keeping the aspect ratio; the scratch copy below stretches to it.
+        Bitmap frame = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1
+            ? retriever.getScaledFrameAtTime(timeUs, option, targetWidth, targetHeight)
+            : retriever.getFrameAtTime(timeUs, option);
+        if (frame == null) return null;
+        if (frame.getWidth() == targetWidth && frame.getHeight() == targetHeight) return frame;
+        if (scratch == null) {
+            scratch = Bitmap.createBitmap(targetWidth, targetHeight, Bitmap.Config.ARGB_8888);
+            canvas = new Canvas(scratch);
+            destination.set(0, 0, targetWidth, targetHeight);
+        }
+        canvas.drawBitmap(frame, null, destination, paint);
+        frame.recycle();
+        return scratch;
+    }
+
+    private double displayAspectRatio() {
+        double width = parse(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH));
+        double height = parse(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT));
+        double rotation = parse(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION));
+        if (width <= 0 || height <= 0) return 16.0 / 9.0;
+        return rotation == 90 || rotation == 270 ? height / width : width / height;
+    }
+
+    private static double parse(String value) {
+        try {
+            return value == null ? 0 : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        try { retriever.release(); } catch (Throwable ignored) {}
+        if (scratch != null) {
+            scratch.recycle();
+            scratch = null;
+        }
+    }
+}
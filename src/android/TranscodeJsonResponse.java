@@ -6,9 +6,15 @@ import org.json.JSONObject;
 
 class TranscodeCompletedJsonResponse implements JsonResponseCreator {
     private final String outputPath;
+    private final String mode;
 
     public TranscodeCompletedJsonResponse(String outputPath) {
+        this(outputPath, null);
+    }
+
+    public TranscodeCompletedJsonResponse(String outputPath, String mode) {
         this.outputPath = outputPath;
+        this.mode = mode;
     }
 
     @Override
@@ -19,6 +25,7 @@ class TranscodeCompletedJsonResponse implements JsonResponseCreator {
         completedJson.put("error", false);
         completedJson.put("message", "Completed!");
         completedJson.put("data", outputPath);
+        if (mode != null) completedJson.put("mode", mode);
         return completedJson;
     }
 }
@@ -52,22 +59,6 @@ class TranscodeFailedJsonResponse implements JsonResponseCreator {
         return failedJson;
     }
 }
-class TranscodeProgressJsonResponse implements JsonResponseCreator {
-    private final double progress;
-
-    public TranscodeProgressJsonResponse(double progress) {
-        this.progress = progress;
-    }
-
-    @Override
-    public JSONObject createResponse() throws JSONException {
-        JSONObject progressJson = new JSONObject();
-        progressJson.put("progress", progress);
-        progressJson.put("completed", false);
-        progressJson.put("error", false);
-        return progressJson;
-    }
-}
 
 interface JsonResponseCreator {
     JSONObject createResponse() throws JSONException;
@@ -0,0 +1,98 @@
+package com.okanbeydanol.videoHelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * Compares a probed source against the requested output and decides how much of it actually has to be
+ * re-encoded: nothing (remux), only the audio track, or everything.
+ */
+final class TranscodePlanner {
+    private static final String AVC = "video/avc";
+    private static final String AAC = "audio/mp4a-latm";
+    /** Tolerance before a source bitrate counts as above the requested one. */
+    private static final double BITRATE_SLACK = 1.05;
+    /** Same for frame rates, so a 30.5 fps capture isn't re-encoded against a 30 fps limit. */
+    private static final double FRAME_RATE_SLACK = 1.05;
+
+    enum Mode {
+        PASSTHROUGH, AUDIO_ONLY, FULL;
+
+        String label() {
+            return name().toLowerCase(Locale.ENGLISH).replace('_', '-');
+        }
+    }
+
+    static final class Plan {
+        final Mode mode;
+        /** Bitrate to give the video encoder, 0 to let the strategy pick; only meaningful for {@link Mode#FULL}. */
+        final int videoBitrate;
+        /** Measured from the sample tables when possible, -1 when unknown. */
+        final long sourceVideoBitrate;
+        /** True when a full re-encode was only chosen for bitrate, so the source itself is an acceptable result. */
+        final boolean sourceAcceptable;
+
+        Plan(Mode mode, int videoBitrate, long sourceVideoBitrate, boolean sourceAcceptable) {
+            this.mode = mode;
+            this.videoBitrate = videoBitrate;
+            this.sourceVideoBitrate = sourceVideoBitrate;
+            this.sourceAcceptable = sourceAcceptable;
+        }
+    }
+
+    private TranscodePlanner() {
+    }
+
+    /**
+     * @param videoMime the codec a full re-encode would produce; sources already in it can be kept
+     * @param maxFrameRate sources faster than this need a re-encode; 0 for no limit
+     */
+    static Plan plan(File source, VideoInfo info, int width, int height, int videoBitrate, int audioBitrate,
+                     int audioChannels, String videoMime, int maxFrameRate) {
+        long sourceVideoBitrate = info.bitrate;
+        long sourceAudioBitrate = -1;
+        double sourceFrameRate = 0;
+        try (FileInputStream in = new FileInputStream(source); FileChannel channel = in.getChannel()) {
+            Mp4Movie movie = Mp4Parser.parse(channel);
+            if (movie != null) {
+                Mp4Track video = movie.firstTrack("video/");
+                Mp4Track audio = movie.firstTrack("audio/");
+                Mp4SampleTable videoTable = video != null ? Mp4SampleTable.parse(movie.moov, video) : null;
+                if (videoTable != null && videoTable.duration() > 0) {
+                    sourceVideoBitrate = trackBitrate(videoTable);
+                    sourceFrameRate = (double) videoTable.sampleCount * videoTable.timescale / videoTable.duration();
+                }
+                Mp4SampleTable audioTable = audio != null ? Mp4SampleTable.parse(movie.moov, audio) : null;
+                if (audioTable != null && audioTable.duration() > 0) sourceAudioBitrate = trackBitrate(audioTable);
+            }
+        } catch (IOException | RuntimeException ignored) {
+        }
+
+        float sourceLonger = Math.max(info.width, info.height);
+        int targetLonger = Math.max(width, height);
+        boolean sizeOk = targetLonger <= 0 || sourceLonger <= targetLonger;
+        boolean codecOk = AVC.equals(info.videoMediaType) || (videoMime != null && videoMime.equals(info.videoMediaType));
+        boolean bitrateOk = videoBitrate <= 0 || (sourceVideoBitrate > 0 && sourceVideoBitrate <= videoBitrate * BITRATE_SLACK);
+        boolean frameRateOk = maxFrameRate <= 0 || sourceFrameRate <= maxFrameRate * FRAME_RATE_SLACK;
+        boolean videoOk = sizeOk && codecOk && bitrateOk && frameRateOk;
+
+        boolean audioOk = info.audioMediaType == null
+            || (AAC.equals(info.audioMediaType)
+                && audioChannels == CustomAndroidFormatStrategy.AUDIO_CHANNELS_AS_IS
+                && (audioBitrate == CustomAndroidFormatStrategy.AUDIO_BITRATE_AS_IS
+                    || (sourceAudioBitrate > 0 && sourceAudioBitrate <= audioBitrate * BITRATE_SLACK)));
+
+        int encoderBitrate = Math.max(0, videoBitrate);
+        if (videoOk) return new Plan(audioOk ? Mode.PASSTHROUGH : Mode.AUDIO_ONLY, encoderBitrate, sourceVideoBitrate, true);
+        return new Plan(Mode.FULL, encoderBitrate, sourceVideoBitrate, sizeOk && codecOk && frameRateOk && audioOk);
+    }
+
+    private static long trackBitrate(Mp4SampleTable table) {
+        long bytes = 0;
+        for (int size : table.sizes) bytes += size;
+        return bytes * 8L * table.timescale / table.duration();
+    }
+}
@@ -0,0 +1,66 @@
+package com.okanbeydanol.videoHelper;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Set;
+
+class VideoInfo {
+    final float width;
+    final float height;
+    final long rotationDegrees;
+    final double duration;
+    final long bitrate;
+    final long size;
+    final String videoMediaType;
+    final String audioMediaType;
+
+    VideoInfo(float width, float height, long rotationDegrees, double duration, long bitrate, long size,
+              String videoMediaType, String audioMediaType) {
+        this.width = width;
+        this.height = height;
+        this.rotationDegrees = rotationDegrees;
+        this.duration = duration;
+        this.bitrate = bitrate;
+        this.size = size;
+        this.videoMediaType = videoMediaType;
+        this.audioMediaType = audioMediaType;
+    }
+
+    String getOrientation() {
+        boolean isPortrait = (width < height);
+        boolean rotated = (rotationDegrees == 90L || rotationDegrees == 270L);
+        return (isPortrait ^ rotated) ? "portrait" : "landscape";
+    }
+
+    JSONObject toJson() throws JSONException {
+        JSONObject videoInfo = new JSONObject();
+        videoInfo.put("width", width);
+        videoInfo.put("height", height);
+        videoInfo.put("rotationDegrees", rotationDegrees);
+        videoInfo.put("duration", duration);
+        videoInfo.put("bitrate", bitrate);
+        videoInfo.put("orientation", getOrientation());
+        videoInfo.put("size", size);
+        videoInfo.put("videoMediaType", videoMediaType);
+        videoInfo.put("audioMediaType", audioMediaType);
+        return videoInfo;
+    }
+
+    /** Only the given keys, or all of them when fields is null. */
+    JSONObject toJson(Set<String> fields) throws JSONException {
+        JSONObject videoInfo = toJson();
+        if (fields == null) return videoInfo;
+        JSONObject filtered = new JSONObject();
+        for (String field : fields) {
+            if (videoInfo.has(field)) filtered.put(field, videoInfo.get(field));
+        }
+        return filtered;
+    }
+
+    static VideoInfo fromJson(JSONObject json) {
+        return new VideoInfo((float) json.optDouble("width", 0), (float) json.optDouble("height", 0),
+            json.optLong("rotationDegrees", 0), json.optDouble("duration", 0), json.optLong("bitrate", 0),
+            json.optLong("size", 0), json.optString("videoMediaType", null), json.optString("audioMediaType", null));
+    }
+}
@@ -0,0 +1,133 @@
+package com.okanbeydanol.videoHelper;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Probes many files with a fixed number of workers pulling from one shared index, so a large folder costs a few
+ * pool threads instead of one task per file. Results are handed out in small batches as they complete; a file
+ * that fails to probe is reported with its error and doesn't stop the others.
+ */
+final class VideoInfoBatch {
+    /** Fields that are answered from the file system without opening the container. */
+    private static final Set<String> STAT_FIELDS = Collections.singleton("size");
+
+    interface Prober {
+        VideoInfo probe(String path) throws IOException;
+    }
+
+    interface Sink {
+        void results(JSONArray results);
+    }
+
+    private final List<String> paths;
+    private final Set<String> fields;
+    private final int parallelism;
+    private final int batchSize;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final Object lock = new Object();
+    private JSONArray pending = new JSONArray();
+
+    /** @param fields keys to return for each file, or null for all of them */
+    VideoInfoBatch(List<String> paths, Set<String> fields, int parallelism, int batchSize) {
+        this.paths = paths;
+        this.fields = fields == null ? null : new HashSet<>(fields);
+        this.parallelism = Math.max(1, Math.min(parallelism, paths.size()));
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    static int defaultParallelism() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    int failed() {
+        return failed.get();
+    }
+
+    /** Blocks until every file is probed or canceled turns true; the last batch is flushed before returning. */
+    void run(Executor executor, Prober prober, Sink sink, BooleanSupplier canceled) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(parallelism);
+        for (int w = 0; w < parallelism; w++) {
+            executor.execute(() -> {
+                try {
+                    int index;
+                    while (!canceled.getAsBoolean() && (index = next.getAndIncrement()) < paths.size()) {
+                        add(probe(index, prober), sink);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        try {
+            done.await();
+        } finally {
+            flush(sink);
+        }
+    }
+
+    private JSONObject probe(int index, Prober prober) {
+        String path = paths.get(index);
+        JSONObject result = new JSONObject();
+        try {
+            result.put("index", index);
+            result.put("path", path);
+            try {
+                if (fields != null && STAT_FIELDS.containsAll(fields)) {
+                    File file = new File(path);
+                    if (!file.isFile()) throw new IOException("File not found");
+                    result.put("info", new JSONObject().put("size", file.length()));
+                } else {
+                    result.put("info", prober.probe(path).toJson(fields));
+                }
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                result.put("error", true);
+                result.put("message", e.getMessage() != null ? e.getMessage() : e.toString());
+            }
+        } catch (JSONException ignored) {
+        }
+        return result;
+    }
+
+    private void add(JSONObject result, Sink sink) {
+        JSONArray full = null;
+        synchronized (lock) {
+            pending.put(result);
+            if (pending.length() >= batchSize) {
+                full = pending;
+                pending = new JSONArray();
+            }
+        }
+        if (full != null) sink.results(full);
+    }
+
+    private void flush(Sink sink) {
+        JSONArray rest;
+        synchronized (lock) {
+            rest = pending;
+            pending = new JSONArray();
+        }
+        if (rest.length() > 0) sink.results(rest);
+    }
+
+    static Set<String> parseFields(JSONArray fields) {
+        if (fields == null || fields.length() == 0) return null;
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < fields.length(); i++) result.add(fields.optString(i));
+        return result;
+    }
+}
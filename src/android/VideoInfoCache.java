@@ -0,0 +1,173 @@
+package com.okanbeydanol.videoHelper;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class VideoInfoCache {
+    static final int DEFAULT_CAPACITY = 256;
+    private static final VideoInfoCache INSTANCE = new VideoInfoCache(DEFAULT_CAPACITY);
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private int capacity;
+    private File persistFile;
+    private boolean dirty;
+
+    private VideoInfoCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    static VideoInfoCache getInstance() {
+        return INSTANCE;
+    }
+
+    synchronized void setCapacity(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        trimToCapacity();
+    }
+
+    VideoInfo get(File file) throws IOException {
+        String key = file.getCanonicalPath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+                hits.incrementAndGet();
+                return entry.info;
+            }
+            if (entry != null) {
+                entries.remove(key);
+                dirty = true;
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    void put(File file, VideoInfo info) throws IOException {
+        String key = file.getCanonicalPath();
+        Entry entry = new Entry(file.length(), file.lastModified(), info);
+        synchronized (this) {
+            if (capacity == 0) return;
+            entries.put(key, entry);
+            dirty = true;
+            trimToCapacity();
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        dirty = true;
+    }
+
+    synchronized JSONObject stats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("entries", entries.size());
+        stats.put("capacity", capacity);
+        stats.put("persistent", persistFile != null);
+        return stats;
+    }
+
+    /**
+     * Loads the saved entries and starts saving to file. Lookups made before this ran are newer than anything on
+     * disk, so they win over saved entries for the same path and stay the most recently used. save() is a no-op
+     * until the load has finished, so it can't overwrite the file with only those lookups.
+     */
+    synchronized void enablePersistence(File file) {
+        LinkedHashMap<String, Entry> current = new LinkedHashMap<>(entries);
+        entries.clear();
+        try {
+            load(file);
+        } finally {
+            for (Map.Entry<String, Entry> e : current.entrySet()) entries.put(e.getKey(), e.getValue());
+            trimToCapacity();
+            dirty = !current.isEmpty();
+            persistFile = file;
+        }
+    }
+
+    private void load(File file) {
+        if (!file.exists()) return;
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) break;
+                read += n;
+            }
+            JSONArray array = new JSONArray(new String(data, 0, read, StandardCharsets.UTF_8));
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject item = array.optJSONObject(i);
+                if (item == null || item.optJSONObject("info") == null) continue;
+                entries.put(item.optString("path"), new Entry(item.optLong("size"), item.optLong("lastModified"),
+                    VideoInfo.fromJson(item.optJSONObject("info"))));
+            }
+        } catch (IOException | JSONException e) {
+            file.delete();
+        }
+    }
+
+    synchronized void save() {
+        if (persistFile == null || !dirty) return;
+        File tmp = new File(persistFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            JSONArray array = new JSONArray();
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                JSONObject item = new JSONObject();
+                item.put("path", e.getKey());
+                item.put("size", e.getValue().size);
+                item.put("lastModified", e.getValue().lastModified);
+                item.put("info", e.getValue().info.toJson());
+                array.put(item);
+            }
+            out.write(array.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | JSONException e) {
+            tmp.delete();
+            return;
+        }
+        if (tmp.renameTo(persistFile)) {
+            dirty = false;
+        } else {
+            tmp.delete();
+        }
+    }
+
+    private void trimToCapacity() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() > capacity && it.hasNext()) {
+            it.next();
+            it.remove();
+            dirty = true;
+        }
+    }
+
+    private static final class Entry {
+        final long size;
+        final long lastModified;
+        final VideoInfo info;
+
+        Entry(long size, long lastModified, VideoInfo info) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.info = info;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package com.okanbeydanol.videoHelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.ypresto.androidtranscoder.MediaTranscoder;
+
+/**
+ * Joins clips into one MP4 with continuous timestamps. Clips whose sample descriptions match the first clip are
+ * copied with {@link Mp4Writer} without decoding; the others are re-encoded first. When a re-encoded clip still
+ * can't share a track with the originals (encoders rarely reproduce a camera's parameter sets), every clip is
+ * re-encoded with the same settings and the join is tried again. The output has audio when the first clip does:
+ * later clips without audio get AAC silence, and audio of later clips is dropped when the first clip has none.
+ */
+final class VideoMerger {
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final List<String> inputPaths;
+    private final String outputPath;
+    private final int videoBitrate;
+    private final int frameRate;
+    private final boolean fastStart;
+    private int transcodedClips;
+    private long totalWork;
+    private long doneWork;
+    private double lastProgress;
+    private AtomicLong frameCounter;
+    private JobMetrics metrics;
+
+    /** @param videoBitrate bitrate for clips that have to be re-encoded; 0 keeps the first clip's */
+    VideoMerger(List<String> inputPaths, String outputPath, int videoBitrate, int frameRate, boolean fastStart) {
+        this.inputPaths = inputPaths;
+        this.outputPath = outputPath;
+        this.videoBitrate = videoBitrate;
+        this.frameRate = frameRate;
+        this.fastStart = fastStart;
+    }
+
+    /** Number of clips that were re-encoded; valid once the merge has completed. */
+    int transcodedClips() {
+        return transcodedClips;
+    }
+
+    /** Adds the frames encoded for re-encoded clips to frames; copied clips aren't counted. */
+    VideoMerger setFrameCounter(AtomicLong frames) {
+        this.frameCounter = frames;
+        return this;
+    }
+
+    /** Records re-encodes as RangeTranscoder does, plus the join as the "merge" stage, under the job's metrics. */
+    VideoMerger setMetrics(JobMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    Future<Void> start(ExecutorService executor, MediaTranscoder.Listener listener) {
+        AtomicBoolean started = new AtomicBoolean();
+        FutureTask<Void> task = new FutureTask<Void>(() -> {
+            started.set(true);
+            try {
+                merge(listener);
+                listener.onTranscodeCompleted();
+            } catch (InterruptedException | InterruptedIOException | ClosedByInterruptException e) {
+                listener.onTranscodeCanceled();
+            } catch (Exception e) {
+                listener.onTranscodeFailed(e);
+            }
+            return null;
+        }) {
+            @Override protected void done() {
+                if (isCancelled() && started.compareAndSet(false, true)) listener.onTranscodeCanceled();
+            }
+        };
+        executor.execute(task);
+        return task;
+    }
+
+    private void merge(MediaTranscoder.Listener listener) throws Exception {
+        int count = inputPaths.size();
+        File[] files = new File[count];
+        File[] temps = new File[count];
+        for (int k = 0; k < count; k++) files[k] = new File(inputPaths.get(k));
+        try {
+            boolean[] compatible = compatibility(files);
+            totalWork = 0;
+            for (int k = 0; k < count; k++) {
+                totalWork += files[k].length() * (compatible[k] ? 1 : 2);
+            }
+            for (int k = 0; k < count; k++) {
+                if (!compatible[k]) files[k] = transcode(k, files[k], temps, files[0], listener);
+            }
+            if (transcodedClips > 0 && !all(compatibility(files))) {
+                // Re-encode the originals too, so every clip comes out of the same encoder configuration.
+                for (int k = 0; k < count; k++) {
+                    if (temps[k] == null) totalWork += files[k].length();
+                }
+                File reference = files[0];
+                for (int k = 0; k < count; k++) {
+                    if (temps[k] == null) files[k] = transcode(k, files[k], temps, reference, listener);
+                }
+                if (!all(compatibility(files))) {
+                    throw new IOException("Clips differ in size, rotation or audio format and can't be joined");
+                }
+            }
+            join(files, listener);
+        } finally {
+            for (File temp : temps) {
+                if (temp != null) temp.delete();
+            }
+        }
+    }
+
+    private static boolean all(boolean[] values) {
+        for (boolean value : values) {
+            if (!value) return false;
+        }
+        return true;
+    }
+
+    /** Marks the clips that can share tracks with the first one. */
+    private static boolean[] compatibility(File[] files) throws IOException {
+        boolean[] compatible = new boolean[files.length];
+        Clip reference = Clip.open(files[0]);
+        try {
+            compatible[0] = true;
+            for (int k = 1; k < files.length; k++) {
+                Clip clip = Clip.open(files[k]);
+                try {
+                    if (clip.audio == null && reference.audio != null
+                        && SilentAac.forTrack(reference.movie.moov, reference.audio) == null) {
+                        throw new IOException("Clip " + k + " has no audio track and the first clip's audio isn't mono or"
+                            + " stereo AAC, which is the only kind it can be padded with silence for");
+                    }
+                    compatible[k] = clip.matches(reference);
+                } finally {
+                    clip.close();
+                }
+            }
+        } finally {
+            reference.close();
+        }
+        return compatible;
+    }
+
+    private File transcode(int index, File source, File[] temps, File reference, MediaTranscoder.Listener listener)
+        throws IOException, InterruptedException {
+        int width;
+        int height;
+        int bitrate = videoBitrate;
+        Clip ref = Clip.open(reference);
+        try {
+            width = ref.video.width;
+            height = ref.video.height;
+            if (bitrate <= 0) {
+                long bytes = 0;
+                for (int size : ref.videoTable.sizes) bytes += size;
+                long duration = ref.videoTable.duration();
+                bitrate = duration > 0 ? (int) (bytes * 8L * ref.videoTable.timescale / duration) : 0;
+            }
+        } finally {
+            ref.close();
+        }
+        File temp = new File(outputPath + ".clip" + index + TEMP_SUFFIX);
+        temps[index] = temp;
+        long work = source.length();
+        CustomAndroidFormatStrategy strategy = new CustomAndroidFormatStrategy(bitrate, frameRate, width, height,
+            CustomAndroidFormatStrategy.AUDIO_BITRATE_AS_IS, CustomAndroidFormatStrategy.AUDIO_CHANNELS_AS_IS);
+        new RangeTranscoder(source.getAbsolutePath(), temp.getAbsolutePath(), strategy, 0, 0)
+            .setMetrics(metrics)
+            .setFrameCounter(frameCounter)
+            .transcode(new ProgressAdapter(this, work, listener));
+        transcodedClips++;
+        report(work, 0, listener);
+        return temp;
+    }
+
+    private void join(File[] files, MediaTranscoder.Listener listener) throws IOException {
+        List<FileInputStream> streams = new ArrayList<>();
+        List<File> silences = new ArrayList<>();
+        long begunAt = metrics != null ? metrics.begin("merge") : 0;
+        try {
+            Mp4Movie first = null;
+            FileChannel firstChannel = null;
+            Mp4Writer.TrackPlan videoPlan = null;
+            Mp4Writer.TrackPlan audioPlan = null;
+            SilentAac silence = null;
+            for (int k = 0; k < files.length; k++) {
+                File file = files[k];
+                FileInputStream in = new FileInputStream(file);
+                streams.add(in);
+                FileChannel channel = in.getChannel();
+                Clip clip = Clip.parse(channel);
+                if (clip == null) throw new IOException("Unreadable clip " + file);
+                if (videoPlan == null) {
+                    first = clip.movie;
+                    firstChannel = channel;
+                    videoPlan = new Mp4Writer.TrackPlan(clip.movie.moov, clip.video);
+                    videoPlan.mediaTime = clip.video.editMediaTime >= 0 ? clip.video.editMediaTime : -1;
+                    if (clip.audio != null) {
+                        audioPlan = new Mp4Writer.TrackPlan(clip.movie.moov, clip.audio);
+                        audioPlan.mediaTime = clip.audio.editMediaTime >= 0 ? clip.audio.editMediaTime : -1;
+                    }
+                }
+                // Both tracks of a clip end together so the next clip starts in sync.
+                long clipUs = clip.videoTable.toMicros(clip.videoTable.duration());
+                if (clip.audioTable != null) clipUs = Math.max(clipUs, clip.audioTable.toMicros(clip.audioTable.duration()));
+                videoPlan.add(channel, clip.videoTable, 0, clip.videoTable.sampleCount,
+                    clip.videoTable.decodeTimes[0] + clip.videoTable.fromMicros(clipUs));
+                if (audioPlan != null && clip.audioTable != null) {
+                    audioPlan.add(channel, clip.audioTable, 0, clip.audioTable.sampleCount,
+                        clip.audioTable.decodeTimes[0] + clip.audioTable.fromMicros(clipUs));
+                } else if (audioPlan != null) {
+                    // compatibility() made sure the first clip's audio can be padded. The silent frames sit at the
+                    // start of their own file, so the writer puts them ahead of this clip's video rather than
+                    // interleaving them; they are a few bytes each.
+                    if (silence == null) silence = SilentAac.forTrack(first.moov, audioPlan.template);
+                    Mp4SampleTable table = silence.table(audioPlan.template.timescale, clipUs);
+                    File silenceFile = new File(outputPath + ".silence" + k + TEMP_SUFFIX);
+                    silences.add(silenceFile);
+                    FileChannel silent = silenceChannel(silenceFile, silence.frames(table.sampleCount), streams);
+                    audioPlan.add(silent, table, 0, table.sampleCount, table.fromMicros(clipUs));
+                }
+            }
+            List<Mp4Writer.TrackPlan> plans = new ArrayList<>();
+            plans.add(videoPlan);
+            if (audioPlan != null) plans.add(audioPlan);
+
+            Mp4Writer writer = new Mp4Writer(Mp4Writer.readBox(firstChannel, first.topLevelBox(Mp4Parser.FTYP)), first.moov)
+                .setFastStart(fastStart);
+            long work = 0;
+            for (File file : files) work += file.length();
+            long joinWork = work;
+            boolean success = false;
+            try (RandomAccessFile out = new RandomAccessFile(outputPath, "rw"); FileChannel outChannel = out.getChannel()) {
+                outChannel.truncate(0);
+                writer.write(plans, outChannel, (written, total) ->
+                    report(0, (long) (joinWork * (double) written / Math.max(1, total)), listener));
+                success = true;
+                if (metrics != null) metrics.read(joinWork);
+            } finally {
+                if (!success) new File(outputPath).delete();
+            }
+        } finally {
+            if (metrics != null) metrics.end("merge", begunAt);
+            for (FileInputStream in : streams) {
+                try { in.close(); } catch (IOException ignored) {}
+            }
+            for (File file : silences) file.delete();
+        }
+    }
+
+    /** Writes data to file and opens it for reading; the stream joins streams so the caller closes it. */
+    private static FileChannel silenceChannel(File file, ByteBuffer data, List<FileInputStream> streams) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw"); FileChannel channel = out.getChannel()) {
+            channel.truncate(0);
+            while (data.hasRemaining()) channel.write(data);
+        }
+        FileInputStream in = new FileInputStream(file);
+        streams.add(in);
+        return in.getChannel();
+    }
+
+    /** Progress is measured in source bytes: each re-encode counts its clip once, the final join every clip. */
+    private void report(long finished, long current, MediaTranscoder.Listener listener) {
+        doneWork += finished;
+        double progress = Math.min(1, (double) (doneWork + current) / Math.max(1, totalWork));
+        if (progress <= lastProgress) return;
+        lastProgress = progress;
+        listener.onTranscodeProgress(progress);
+    }
+
+    private static final class ProgressAdapter implements MediaTranscoder.Listener {
+        private final VideoMerger merger;
+        private final long work;
+        private final MediaTranscoder.Listener listener;
+
+        ProgressAdapter(VideoMerger merger, long work, MediaTranscoder.Listener listener) {
+            this.merger = merger;
+            this.work = work;
+            this.listener = listener;
+        }
+
+        @Override public void onTranscodeProgress(double progress) {
+            merger.report(0, (long) (work * progress), listener);
+        }
+
+        @Override public void onTranscodeCompleted() {
+        }
+
+        @Override public void onTranscodeCanceled() {
+        }
+
+        @Override public void onTranscodeFailed(Exception exception) {
+        }
+    }
+
+    private static final class Clip {
+        final FileInputStream stream;
+        final Mp4Movie movie;
+        final Mp4Track video;
+        final Mp4Track audio;
+        final Mp4SampleTable videoTable;
+        final Mp4SampleTable audioTable;
+
+        private Clip(FileInputStream stream, Mp4Movie movie, Mp4Track video, Mp4Track audio, Mp4SampleTable videoTable,
+                     Mp4SampleTable audioTable) {
+            this.stream = stream;
+            this.movie = movie;
+            this.video = video;
+            this.audio = audio;
+            this.videoTable = videoTable;
+            this.audioTable = audioTable;
+        }
+
+        static Clip open(File file) throws IOException {
+            FileInputStream in = new FileInputStream(file);
+            Clip clip = null;
+            try {
+                Mp4Movie movie = Mp4Parser.parse(in.getChannel());
+                clip = movie == null ? null : from(in, movie);
+            } finally {
+                if (clip == null) in.close();
+            }
+            if (clip == null) throw new IOException("Not a mergeable MP4: " + file);
+            return clip;
+        }
+
+        /** For channels owned by the caller. */
+        static Clip parse(FileChannel channel) throws IOException {
+            Mp4Movie movie = Mp4Parser.parse(channel);
+            return movie == null ? null : from(null, movie);
+        }
+
+        private static Clip from(FileInputStream stream, Mp4Movie movie) {
+            if (movie.fragmented) return null;
+            Mp4Track video = movie.firstTrack("video/");
+            Mp4Track audio = movie.firstTrack("audio/");
+            Mp4SampleTable videoTable = video != null ? Mp4SampleTable.parse(movie.moov, video) : null;
+            Mp4SampleTable audioTable = audio != null ? Mp4SampleTable.parse(movie.moov, audio) : null;
+            if (videoTable == null || videoTable.sampleCount == 0) return null;
+            if (audioTable != null && audioTable.sampleCount == 0) {
+                audio = null;
+                audioTable = null;
+            }
+            if (audio != null && audioTable == null) return null;
+            return new Clip(stream, movie, video, audio, videoTable, audioTable);
+        }
+
+        boolean matches(Clip other) {
+            if (video.rotationDegrees != other.video.rotationDegrees || video.editMediaTime != other.video.editMediaTime
+                || !video.sampleDescription(movie.moov).equals(other.video.sampleDescription(other.movie.moov))) {
+                return false;
+            }
+            // Audio edit offsets differ by priming and trimming; the output keeps the first clip's, which moves a
+            // later clip's audio by at most a frame or so against its video. A missing track on either side is
+            // padded or dropped by join.
+            return audio == null || other.audio == null || audio.sampleDescription(movie.moov).equals(other.audio.sampleDescription(other.movie.moov));
+        }
+
+        void close() {
+            try { stream.close(); } catch (IOException ignored) {}
+        }
+    }
+}
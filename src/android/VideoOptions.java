@@ -0,0 +1,99 @@
+package com.okanbeydanol.videoHelper;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/** The options object every action receives from JS. Only needs org.json, so it also parses on a plain JVM. */
+final class VideoOptions {
+    /** Keeps the source's audio bitrate or channel count; the format strategy reads the same values. */
+    static final int AUDIO_BITRATE_AS_IS = -1;
+    static final int AUDIO_CHANNELS_AS_IS = -1;
+    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd/HH-mm-ss", Locale.ENGLISH);
+
+    String videoPath;
+    String outputFileName;
+    JSONObject extra;
+    int width;
+    int height;
+    int videoBitrate;
+    int audioBitrate;
+    int audioChannels;
+    int videoDuration;
+    long atTimeOpt;
+    double trimStart;
+    double trimEnd;
+    String jobId;
+    String jobTag;
+
+    VideoOptions(String videoPath, String outputFileName, int width, int height,
+                 int videoBitrate, int audioBitrate, int audioChannels,
+                 int videoDuration, long atTimeOpt, JSONObject extra) {
+        this.videoPath = videoPath;
+        this.outputFileName = outputFileName;
+        this.extra = extra;
+        this.width = width;
+        this.height = height;
+        this.videoBitrate = videoBitrate;
+        this.audioBitrate = audioBitrate;
+        this.audioChannels = audioChannels;
+        this.videoDuration = videoDuration;
+        this.atTimeOpt = atTimeOpt;
+    }
+
+    /** Plain JSON in, no plugin state: newJobId is only called when the options don't name the job. */
+    static VideoOptions parse(JSONObject options, Supplier<String> newJobId) throws JSONException, UnsupportedEncodingException {
+        // mergeVideos passes fileUris instead; the first clip stands in for options that need a single source.
+        String videoPath = preprocessVideoPath(options.has("fileUris") && !options.has("fileUri")
+            ? options.getJSONArray("fileUris").getString(0) : options.getString("fileUri"));
+        String outputFileName;
+        synchronized (DATE_FORMAT) {
+            outputFileName = options.optString("outputFileName", DATE_FORMAT.format(new Date()));
+        }
+        int width = options.optInt("width", 0);
+        int height = options.optInt("height", 0);
+        int videoBitrate = options.optInt("videoBitrate");
+        int audioBitrate = options.optInt("audioBitrate", AUDIO_BITRATE_AS_IS);
+        int audioChannels = options.optInt("audioChannels", AUDIO_CHANNELS_AS_IS);
+        int videoDuration = (int) (options.optLong("duration", 0));
+        long atTimeOpt = options.optLong("atTime", 0);
+        VideoOptions videoOptions = new VideoOptions(videoPath, outputFileName, width, height, videoBitrate, audioBitrate, audioChannels, videoDuration, atTimeOpt, options);
+        videoOptions.trimStart = Math.max(0, options.optDouble("trimStart", 0));
+        videoOptions.trimEnd = Math.max(0, options.optDouble("trimEnd", 0));
+        String jobId = options.optString("jobId", "");
+        videoOptions.jobId = jobId.isEmpty() ? newJobId.get() : jobId;
+        videoOptions.jobTag = options.has("tag") ? options.optString("tag") : null;
+        return videoOptions;
+    }
+
+    /** Turns a file:// URI (possibly percent-encoded) from JS into a plain path. */
+    static String preprocessVideoPath(String videoPath) throws UnsupportedEncodingException {
+        return removeFileProtocolPrefix(URLDecoder.decode(videoPath, "UTF-8"));
+    }
+
+    private static String removeFileProtocolPrefix(String videoPath) {
+        return videoPath.startsWith("file://") ? videoPath.substring(7) : videoPath;
+    }
+
+    boolean includeMetrics() {
+        return extra.optBoolean("metrics", false);
+    }
+
+    boolean useCache() {
+        return extra.optBoolean("cache", false);
+    }
+
+    boolean binaryOutput() {
+        return "binary".equals(extra.optString("output", "file"));
+    }
+
+    JobScheduler.Priority priority(JobScheduler.Priority fallback) {
+        return JobScheduler.Priority.fromOption(extra.optString("priority", null), fallback);
+    }
+}
@@ -0,0 +1,69 @@
+package com.okanbeydanol.videoHelper;
+
+import android.media.MediaExtractor;
+import android.media.MediaMetadataRetriever;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Objects;
+
+import net.ypresto.androidtranscoder.utils.MediaExtractorUtils;
+
+final class VideoProbe {
+    private VideoProbe() {
+    }
+
+    static VideoInfo probe(String videoPath) throws IOException {
+        File videoFile = new File(videoPath);
+        VideoInfo info = probeContainer(videoFile);
+        return info != null ? info : probeWithRetriever(videoFile);
+    }
+
+    static VideoInfo probeContainer(File videoFile) {
+        try (FileInputStream in = new FileInputStream(videoFile); FileChannel channel = in.getChannel()) {
+            Mp4Movie movie = Mp4Parser.parse(channel);
+            return movie == null ? null : fromMovie(movie);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    static VideoInfo fromMovie(Mp4Movie movie) {
+        for (Mp4Track track : movie.tracks) {
+            if (track.mime == null && (track.handlerType == Mp4Parser.VIDE || track.handlerType == Mp4Parser.SOUN)) {
+                return null;
+            }
+        }
+        Mp4Track video = movie.firstTrack("video/");
+        Mp4Track audio = movie.firstTrack("audio/");
+        long durationMs = movie.durationUs() / 1000L;
+        if (video == null || durationMs <= 0) return null;
+        long bitrate = movie.fileSize * 8L * 1000L / durationMs;
+        return new VideoInfo(video.width, video.height, video.rotationDegrees, durationMs / 1000.0, bitrate,
+            movie.fileSize, video.mime, audio != null ? audio.mime : null);
+    }
+
+    static VideoInfo probeWithRetriever(File videoFile) throws IOException {
+        String videoPath = videoFile.getAbsolutePath();
+        MediaExtractor extractor = null;
+        try (MediaMetadataRetriever retriever = new MediaMetadataRetriever()) {
+            retriever.setDataSource(videoPath);
+            float width = Float.parseFloat(Objects.requireNonNull(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH)));
+            float height = Float.parseFloat(Objects.requireNonNull(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT)));
+            double duration = Double.parseDouble(Objects.requireNonNull(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION))) / 1000.0;
+            long bitrate = Long.parseLong(Objects.requireNonNull(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_BITRATE)));
+            long rotationDegrees = Long.parseLong(Objects.requireNonNull(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION)));
+
+            extractor = new MediaExtractor();
+            extractor.setDataSource(videoPath);
+            MediaExtractorUtils.TrackResult trackResult = MediaExtractorUtils.getFirstVideoAndAudioTrack(extractor);
+
+            return new VideoInfo(width, height, rotationDegrees, duration, bitrate, videoFile.length(),
+                trackResult.mVideoTrackMime, trackResult.mAudioTrackMime);
+        } finally {
+            if (extractor != null) try { extractor.release(); } catch (Throwable ignored) {}
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.okanbeydanol.videoHelper;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import net.ypresto.androidtranscoder.utils.MediaExtractorUtils;
+
+/**
+ * Reduces the first audio track to a fixed number of min/max peak buckets while it is being decoded. Each PCM
+ * buffer is folded into the buckets and released straight away, so memory stays the same for any clip length.
+ */
+final class WaveformExtractor {
+    private static final long TIMEOUT_US = 10_000;
+
+    final int bucketCount;
+    final short[] mins;
+    final short[] maxs;
+    int sampleRate;
+    int channels;
+    long durationUs;
+
+    WaveformExtractor(int bucketCount) {
+        this.bucketCount = bucketCount;
+        this.mins = new short[bucketCount];
+        this.maxs = new short[bucketCount];
+    }
+
+    /** Decodes [startUs, endUs) of the audio track; endUs <= 0 means the end of the track. */
+    void extract(String inputPath, long startUs, long endUs) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec decoder = null;
+        try {
+            extractor.setDataSource(inputPath);
+            MediaExtractorUtils.TrackResult tracks = MediaExtractorUtils.getFirstVideoAndAudioTrack(extractor);
+            MediaFormat format = tracks.mAudioTrackFormat;
+            if (format == null) throw new IOException("No audio track found in " + inputPath);
+            long trackUs = format.containsKey(MediaFormat.KEY_DURATION) ? format.getLong(MediaFormat.KEY_DURATION) : 0;
+            if (endUs <= 0 || (trackUs > 0 && endUs > trackUs)) endUs = trackUs;
+            if (endUs <= startUs) throw new IOException("Audio track has no duration");
+            durationUs = endUs - startUs;
+            sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            // Buckets nothing was decoded into stay flat rather than showing a spurious peak.
+            Arrays.fill(mins, Short.MAX_VALUE);
+            Arrays.fill(maxs, Short.MIN_VALUE);
+
+            extractor.selectTrack(tracks.mAudioTrackIndex);
+            extractor.seekTo(startUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            decoder = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            decoder.configure(format, null, null, 0);
+            decoder.start();
+
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            boolean outputDone = false;
+            while (!outputDone) {
+                if (Thread.interrupted()) throw new InterruptedIOException("Waveform canceled");
+                if (!inputDone) {
+                    int index = decoder.dequeueInputBuffer(TIMEOUT_US);
+                    if (index >= 0) {
+                        int size = extractor.readSampleData(decoder.getInputBuffer(index), 0);
+                        long sampleTimeUs = extractor.getSampleTime();
+                        if (size < 0 || sampleTimeUs >= endUs) {
+                            decoder.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            decoder.queueInputBuffer(index, 0, size, sampleTimeUs, 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+                int index = decoder.dequeueOutputBuffer(info, TIMEOUT_US);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat output = decoder.getOutputFormat();
+                    sampleRate = output.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    channels = output.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                } else if (index >= 0) {
+                    if (info.size > 0) {
+                        ByteBuffer buffer = decoder.getOutputBuffer(index);
+                        buffer.limit(info.offset + info.size).position(info.offset);
+                        fold(buffer.order(ByteOrder.nativeOrder()).asShortBuffer(), info.presentationTimeUs, startUs);
+                    }
+                    decoder.releaseOutputBuffer(index, false);
+                    outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                }
+            }
+            for (int b = 0; b < bucketCount; b++) {
+                if (mins[b] > maxs[b]) mins[b] = maxs[b] = 0;
+            }
+        } finally {
+            if (decoder != null) {
+                try { decoder.stop(); } catch (Throwable ignored) {}
+                decoder.release();
+            }
+            extractor.release();
+        }
+    }
+
+    private void fold(ShortBuffer pcm, long ptsUs, long startUs) {
+        int frames = pcm.remaining() / channels;
+        // Bucket boundaries in frames relative to this buffer, so the inner loop does no time arithmetic.
+        double framesPerBucket = durationUs / 1_000_000.0 * sampleRate / bucketCount;
+        double firstFrame = (ptsUs - startUs) / 1_000_000.0 * sampleRate;
+        int frame = 0;
+        if (firstFrame < 0) frame = (int) Math.min(frames, Math.ceil(-firstFrame));
+        pcm.position(frame * channels);
+        while (frame < frames) {
+            int bucket = (int) ((firstFrame + frame) / framesPerBucket);
+            if (bucket >= bucketCount) return;
+            int bucketEnd = (int) Math.min(frames, Math.ceil((bucket + 1) * framesPerBucket - firstFrame));
+            if (bucketEnd <= frame) bucketEnd = frame + 1;
+            short min = mins[bucket];
+            short max = maxs[bucket];
+            for (int n = (bucketEnd - frame) * channels; n > 0; n--) {
+                short sample = pcm.get();
+                if (sample < min) min = sample;
+                if (sample > max) max = sample;
+            }
+            mins[bucket] = min;
+            maxs[bucket] = max;
+            frame = bucketEnd;
+        }
+    }
+
+    /** Little-endian int16 pairs, min then max, one pair per bucket. */
+    byte[] toBytes() {
+        ByteBuffer out = ByteBuffer.allocate(bucketCount * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int b = 0; b < bucketCount; b++) out.putShort(mins[b]).putShort(maxs[b]);
+        return out.array();
+    }
+}
@@ -6,36 +6,100 @@ import org.json.*;
 import android.graphics.Bitmap;
 import android.media.*;
 import android.os.Environment;
-
-import androidx.annotation.NonNull;
+import android.os.SystemClock;
 
 import java.io.*;
-import java.net.URLDecoder;
 import java.nio.ByteBuffer;
-import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import net.ypresto.androidtranscoder.MediaTranscoder;
 import net.ypresto.androidtranscoder.format.MediaFormatStrategy;
-import net.ypresto.androidtranscoder.utils.MediaExtractorUtils;
 
 public class VideoHelper extends CordovaPlugin {
     private static final long MICROS_PER_SECOND = 1_000_000L;
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd/HH-mm-ss", Locale.ENGLISH);
+    private static final long PROBE_TIMEOUT_MS = 60_000L;
+    private static final int OUTPUT_FRAME_RATE = 30;
+    private static final ScheduledExecutorService TIMEOUT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "VideoHelper-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private interface ActionExecutor {
         void execute(JSONArray args, CallbackContext callbackContext) throws JSONException, IOException;
     }
 
     private final Map<String, ActionExecutor> actionMap;
+    private final JobScheduler jobs = new JobScheduler();
+    private ArtifactCache artifacts;
+    private KeyframeIndex.Store keyframes;
+    private OutputWorkspace workspace;
 
     public VideoHelper() {
         actionMap = new HashMap<>();
         actionMap.put("transcodeVideo", this::transcodeVideo);
+        actionMap.put("transcodeLadder", this::transcodeLadder);
+        actionMap.put("mergeVideos", this::mergeVideos);
         actionMap.put("trimVideo", this::trimVideo);
         actionMap.put("createThumbnail", this::createThumbnail);
+        actionMap.put("createThumbnails", this::createThumbnails);
+        actionMap.put("getWaveform", this::getWaveform);
+        actionMap.put("getKeyframes", this::getKeyframes);
         actionMap.put("getVideoInfo", this::executeGetVideoInfo);
+        actionMap.put("getVideoInfos", this::getVideoInfos);
+        actionMap.put("getVideoInfoCacheStats", this::getVideoInfoCacheStats);
+        actionMap.put("getArtifactCacheStats", this::getArtifactCacheStats);
+        actionMap.put("getOutputWorkspaceStats", this::getOutputWorkspaceStats);
+        actionMap.put("cancelJob", this::cancelJob);
+        actionMap.put("listJobs", this::listJobs);
+        actionMap.put("getMetrics", this::getMetrics);
+    }
+
+    @Override
+    protected void pluginInitialize() {
+        VideoInfoCache infoCache = VideoInfoCache.getInstance();
+        infoCache.setCapacity(preferences.getInteger("VideoHelperInfoCacheSize", VideoInfoCache.DEFAULT_CAPACITY));
+        jobs.setMaxConcurrent(preferences.getInteger("VideoHelperMaxConcurrentJobs", JobScheduler.DEFAULT_MAX_CONCURRENT));
+        jobs.setMetricsHistory(preferences.getInteger("VideoHelperMetricsHistory", JobMetrics.DEFAULT_HISTORY));
+        long artifactCacheBytes = preferences.getInteger("VideoHelperArtifactCacheMB",
+            (int) (ArtifactCache.DEFAULT_MAX_BYTES / (1024 * 1024))) * 1024L * 1024L;
+        artifacts = new ArtifactCache(new File(cordova.getContext().getCacheDir(), "videohelper-artifacts"), artifactCacheBytes);
+        keyframes = new KeyframeIndex.Store(new File(cordova.getContext().getCacheDir(), "videohelper-keyframes"));
+        long outputQuotaBytes = preferences.getInteger("VideoHelperOutputQuotaMB",
+            (int) (OutputWorkspace.DEFAULT_MAX_BYTES / (1024 * 1024))) * 1024L * 1024L;
+        workspace = new OutputWorkspace(new File(Environment.getExternalStorageDirectory().getAbsolutePath() +
+            "/Android/data/" + cordova.getActivity().getPackageName() + "/files/videos"), outputQuotaBytes);
+        Thread sweeper = new Thread(workspace::sweep, "VideoHelper-sweep");
+        sweeper.setPriority(Thread.MIN_PRIORITY);
+        sweeper.setDaemon(true);
+        sweeper.start();
+        if (preferences.getBoolean("VideoHelperPersistInfoCache", false)) {
+            File cacheFile = new File(cordova.getContext().getCacheDir(), "videohelper-info-cache.json");
+            cordova.getThreadPool().execute(() -> infoCache.enablePersistence(cacheFile));
+        }
+    }
+
+    @Override
+    public void onPause(boolean multitasking) {
+        cordova.getThreadPool().execute(() -> {
+            VideoInfoCache.getInstance().save();
+            workspace.save();
+        });
+    }
+
+    @Override
+    public void onReset() {
+        jobs.cancelAll(null, true);
+    }
+
+    @Override
+    public void onDestroy() {
+        jobs.cancelAll(null, true);
+        VideoInfoCache.getInstance().save();
+        workspace.save();
     }
 
     @Override
@@ -58,92 +122,478 @@ public class VideoHelper extends CordovaPlugin {
     }
 
     private VideoOptions extractVideoOptions(JSONArray args) throws JSONException, UnsupportedEncodingException {
-        JSONObject options = args.optJSONObject(0);
-        String videoPath = preprocessVideoPath(options.getString("fileUri"));
-        String outputFileName = options.optString("outputFileName", DATE_FORMAT.format(new Date()));
-        int width = options.optInt("width", 0);
-        int height = options.optInt("height", 0);
-        int videoBitrate = options.optInt("videoBitrate");
-        int audioBitrate = options.optInt("audioBitrate", CustomAndroidFormatStrategy.AUDIO_BITRATE_AS_IS);
-        int audioChannels = options.optInt("audioChannels", CustomAndroidFormatStrategy.AUDIO_CHANNELS_AS_IS);
-        int videoDuration = (int) (options.optLong("duration", 0));
-        long atTimeOpt = options.optLong("atTime", 0);
-        return new VideoOptions(videoPath, outputFileName, width, height, videoBitrate, audioBitrate, audioChannels, videoDuration, atTimeOpt, options);
+        VideoOptions options = VideoOptions.parse(args.optJSONObject(0), jobs::newId);
+        workspace.touch(options.videoPath);
+        return options;
     }
 
     private void transcodeVideo(JSONArray args, CallbackContext callbackContext) {
         try {
             VideoOptions options = extractVideoOptions(args);
+            if (jobIdTaken(options.jobId, callbackContext)) return;
             String outputExtension = ".mp4";
-            File mediaStorageDir = getOrCreateMediaStorageDir();
-            String outputPathForTrim = new File(mediaStorageDir, "trim-" + options.outputFileName + outputExtension).getAbsolutePath();
-            String outputPathForCompress = new File(mediaStorageDir, options.outputFileName + outputExtension).getAbsolutePath();
-            MediaFormatStrategy outFormatStrategy =
-                new CustomAndroidFormatStrategy(options.videoBitrate, 30, options.width, options.height, options.audioBitrate, options.audioChannels);
-            JSONObject videoInfo = getVideoInfoSynchronously(options.videoPath);
-
-            long sourceDurationSec = Math.round(videoInfo.optDouble("duration", 0));
-            long requested = options.videoDuration == 0 ? sourceDurationSec : options.videoDuration;
-            boolean needTrim = requested > 0 && requested < sourceDurationSec;
-
-            cordova.getThreadPool().execute(() -> {
-                try {
-                    MediaTranscoder.Listener listener = new MediaTranscoder.Listener() {
-                        @Override public void onTranscodeProgress(double progress) {
-                            sendJsonResponse(new TranscodeProgressJsonResponse(progress * 100), true, callbackContext);
+            String outputName = options.outputFileName + outputExtension;
+            String jobId = options.jobId;
+            long probeBegunAt = SystemClock.elapsedRealtime();
+            CompletableFuture<VideoInfo> probe = probeVideoInfo(options.videoPath);
+            probe
+                .thenAcceptAsync(finalStage(videoInfo -> {
+                    long probeMs = SystemClock.elapsedRealtime() - probeBegunAt;
+                    long sourceDurationSec = Math.round(videoInfo.duration);
+                    long requested = options.videoDuration == 0 ? sourceDurationSec : options.videoDuration;
+                    boolean needTrim = options.trimStart > 0 || (requested > 0 && requested < sourceDurationSec);
+                    long startUs = (long) (options.trimStart * MICROS_PER_SECOND);
+                    long endUs = startUs + requested * MICROS_PER_SECOND;
+                    double mediaDurationSec = needTrim ? requested : videoInfo.duration;
+                    String outputPath = null;
+                    OutputCommit commit = null;
+                    boolean fragmented = options.extra.optBoolean("fragmented", false);
+                    long fragmentDurationUs = (long) (options.extra.optDouble("fragmentDuration",
+                        FragmentedMp4Writer.DEFAULT_FRAGMENT_DURATION_US / (double) MICROS_PER_SECOND) * MICROS_PER_SECOND);
+                    boolean fastStart = !fragmented && options.extra.optBoolean("fastStart", false);
+                    // FragmentedMp4Writer only writes avcC sample descriptions.
+                    String codec = fragmented ? "avc" : options.extra.optString("codec", "avc");
+                    String videoMime = CustomAndroidFormatStrategy.videoMime(codec);
+                    int maxFrameRate = options.extra.optInt("maxFrameRate", 0);
+                    double bitsPerPixel = options.extra.optDouble("bitsPerPixel", CustomAndroidFormatStrategy.DEFAULT_BITS_PER_PIXEL);
+                    // Fragment paths are handed out while the job runs, so fragmented outputs go straight to their
+                    // published name and never through the cache, whose temp files are renamed on commit.
+                    if (options.useCache() && !fragmented) {
+                        Map<String, Object> params = new HashMap<>();
+                        params.put("width", options.width);
+                        params.put("height", options.height);
+                        params.put("videoBitrate", options.videoBitrate);
+                        params.put("audioBitrate", options.audioBitrate);
+                        params.put("audioChannels", options.audioChannels);
+                        params.put("frameRate", OUTPUT_FRAME_RATE);
+                        params.put("maxFrameRate", maxFrameRate);
+                        params.put("codec", videoMime);
+                        params.put("bitsPerPixel", bitsPerPixel);
+                        params.put("passthrough", options.extra.optBoolean("passthrough", true));
+                        params.put("fastStart", fastStart);
+                        params.put("range", needTrim ? startUs + "-" + endUs : "all");
+                        String key = artifacts.key(new File(options.videoPath), "transcode", params);
+                        File cached = artifacts.get(key, outputExtension);
+                        if (cached != null) {
+                            sendJobResponse(jobId, () -> new TranscodeCompletedJsonResponse(cached.getAbsolutePath()).createResponse()
+                                .put("cached", true), false, callbackContext);
+                            return;
                         }
-                        @Override public void onTranscodeCompleted() {
-                            File trimmedFile = new File(outputPathForTrim);
-                            if (trimmedFile.exists()) trimmedFile.delete();
-                            File outFile = new File(outputPathForCompress);
-                            if (!outFile.exists()) {
-                                sendJsonResponse(new TranscodeFailedJsonResponse(new Exception("Output missing after transcode")), false, callbackContext);
-                                return;
+                        outputPath = artifacts.tempFile(key, outputExtension).getAbsolutePath();
+                        commit = temp -> artifacts.commit(temp, key, outputExtension).getAbsolutePath();
+                    }
+                    File source = new File(options.videoPath);
+                    TranscodePlanner.Plan plan = TranscodePlanner.plan(source, videoInfo, options.width, options.height,
+                        options.videoBitrate, options.audioBitrate, options.audioChannels, videoMime, maxFrameRate);
+                    TranscodePlanner.Mode mode = options.extra.optBoolean("passthrough", true) ? plan.mode : TranscodePlanner.Mode.FULL;
+                    long sourceShare = (long) (source.length() * Math.min(1.0, mediaDurationSec / videoInfo.duration));
+                    long expectedBytes = mode == TranscodePlanner.Mode.FULL && plan.videoBitrate > 0
+                        ? expectedBytes(plan.videoBitrate + Math.max(0, options.audioBitrate), mediaDurationSec) : sourceShare;
+                    if (commit == null) {
+                        outputPath = (fragmented ? workspace.growingFile(outputName, expectedBytes)
+                            : workspace.tempFile(outputName, expectedBytes)).getAbsolutePath();
+                        commit = temp -> workspace.commit(temp, outputName).getAbsolutePath();
+                    } else {
+                        // Cached transcodes are written to the cache folder, which may sit on another volume.
+                        artifacts.ensureSpace(expectedBytes);
+                    }
+                    String transcodeOutput = outputPath;
+                    CustomAndroidFormatStrategy outFormatStrategy = new CustomAndroidFormatStrategy(plan.videoBitrate, OUTPUT_FRAME_RATE,
+                        options.width, options.height, options.audioBitrate, options.audioChannels, mode != TranscodePlanner.Mode.FULL)
+                        .setVideoCodec(codec)
+                        .setMaxFrameRate(maxFrameRate)
+                        .setBitrateModel(bitsPerPixel, plan.sourceVideoBitrate);
+                    // Every fragment has to start on a sync frame.
+                    if (fragmented) {
+                        outFormatStrategy.setKeyFrameInterval(Math.min(CustomAndroidFormatStrategy.DEFAULT_KEYFRAME_INTERVAL,
+                            fragmentDurationUs / (float) MICROS_PER_SECOND));
+                    }
+                    // A full re-encode that was only needed to lower the bitrate must not end up bigger than the source.
+                    // Fragmented outputs are left alone since their fragments have already been handed out.
+                    long sourceBudget = mode == TranscodePlanner.Mode.FULL && plan.sourceAcceptable && !fragmented
+                        ? sourceShare : Long.MAX_VALUE;
+                    OutputGuard guard = output -> {
+                        String label = mode.label();
+                        if (output.length() > sourceBudget) {
+                            long remuxEndUs = needTrim ? endUs : Long.MAX_VALUE;
+                            if (LosslessTrimmer.trim(source, output, needTrim ? startUs : 0, remuxEndUs, true) != null) {
+                                label = TranscodePlanner.Mode.PASSTHROUGH.label();
                             }
-                            sendJsonResponse(new TranscodeCompletedJsonResponse(outputPathForCompress), false, callbackContext);
-                        }
-                        @Override public void onTranscodeCanceled() {
-                            sendJsonResponse(new TranscodeCanceledJsonResponse(), false, callbackContext);
-                        }
-                        @Override public void onTranscodeFailed(Exception exception) {
-                            sendJsonResponse(new TranscodeFailedJsonResponse(exception), false, callbackContext);
                         }
+                        // Outputs written by Mp4Writer already lead with moov; MediaMuxer ones get it moved.
+                        if (fastStart) Mp4FastStart.apply(output);
+                        return label;
                     };
+                    ProgressChannel progress = new ProgressChannel(jobId, progressSender(callbackContext), new File(transcodeOutput),
+                        mediaDurationSec,
+                        options.extra.optLong("progressInterval", ProgressChannel.DEFAULT_MIN_INTERVAL_MS),
+                        options.extra.optDouble("progressStep", ProgressChannel.DEFAULT_MIN_DELTA));
+                    MediaTranscoder.Listener listener = transcodeListener(jobId, transcodeOutput, guard, commit, progress, callbackContext);
+                    try {
+                        jobs.submit(jobId, "transcode", options.jobTag, options.priority(JobScheduler.Priority.NORMAL), options.includeMetrics(), new JobScheduler.Work() {
+                            @Override public Future<?> start() throws IOException {
+                                progress.start();
+                                JobMetrics metrics = metricsFor(jobId);
+                                metrics.stage("probe", probeMs);
+                                if (fragmented) {
+                                    return new RangeTranscoder(options.videoPath, transcodeOutput, outFormatStrategy, startUs, needTrim ? endUs : 0)
+                                        .setFragmentedOutput(fragmentDurationUs, progress::fragment)
+                                        .setMetrics(metrics)
+                                        .setFrameCounter(progress.frameCounter())
+                                        .start(cordova.getThreadPool(), listener);
+                                }
+                                int parallelism = options.extra.optInt("parallelism", 0);
+                                if (parallelism <= 0 && mode == TranscodePlanner.Mode.FULL) {
+                                    parallelism = SegmentedTranscoder.autoParallelism(videoInfo.videoMediaType, videoMime);
+                                }
+                                // Each chunk would restart the frame-dropping grid, leaving uneven gaps at every join.
+                                if (mode == TranscodePlanner.Mode.FULL && parallelism > 1 && videoInfo.videoMediaType != null
+                                    && maxFrameRate <= 0) {
+                                    return new SegmentedTranscoder(options.videoPath, transcodeOutput, outFormatStrategy, startUs,
+                                        needTrim ? endUs : 0, parallelism).setMetrics(metrics).setFrameCounter(progress.frameCounter())
+                                        .start(cordova.getThreadPool(), listener);
+                                }
+                                // Only the plugin's own pipelines drop frames to honour maxFrameRate.
+                                if (needTrim || mode == TranscodePlanner.Mode.PASSTHROUGH || maxFrameRate > 0) {
+                                    return new RangeTranscoder(options.videoPath, transcodeOutput, outFormatStrategy, startUs, needTrim ? endUs : 0)
+                                        .setLosslessRemux(mode == TranscodePlanner.Mode.PASSTHROUGH)
+                                        .setMetrics(metrics)
+                                        .setFrameCounter(progress.frameCounter())
+                                        .start(cordova.getThreadPool(), listener);
+                                }
+                                // The stock transcoder reads the whole source and doesn't expose its codecs or frame count,
+                                // so its progress carries no fps.
+                                metrics.read(source.length());
+                                metrics.begin("transcode");
+                                return MediaTranscoder.getInstance().transcodeVideo(
+                                    options.videoPath,
+                                    transcodeOutput,
+                                    outFormatStrategy,
+                                    listener
+                                );
+                            }
+                            @Override public void abort(Exception cause) {
+                                if (cause instanceof CancellationException) {
+                                    listener.onTranscodeCanceled();
+                                } else {
+                                    listener.onTranscodeFailed(cause);
+                                }
+                            }
+                        });
+                    } catch (JobScheduler.DuplicateJobException e) {
+                        rejectDuplicate(e, () -> workspace.discard(new File(transcodeOutput)), callbackContext);
+                    }
+                }), cordova.getThreadPool())
+                .exceptionally(e -> {
+                    Throwable cause = unwrap(e);
+                    if (probe.isCompletedExceptionally()) {
+                        handleException("transcode video", cause, callbackContext);
+                    } else {
+                        sendJobFailure(jobId, new Exception(cause.toString()), callbackContext);
+                    }
+                    return null;
+                });
+        } catch (Exception e) {
+            handleException("transcode video", e, callbackContext);
+        }
+    }
 
-                    String sourceForTranscode = options.videoPath;
-                    if (needTrim) {
-                        long endUs = requested * MICROS_PER_SECOND;
-                        if (trimVideoSegment(options.videoPath, outputPathForTrim, 0, endUs, videoInfo.getInt("rotationDegrees"))) {
-                            sourceForTranscode = outputPathForTrim;
-                        }
+    private void transcodeLadder(JSONArray args, CallbackContext callbackContext) {
+        try {
+            VideoOptions options = extractVideoOptions(args);
+            if (jobIdTaken(options.jobId, callbackContext)) return;
+            JSONArray targets = options.extra.optJSONArray("renditions");
+            if (targets == null || targets.length() == 0) {
+                callbackContext.error("At least one rendition is required.");
+                return;
+            }
+            List<LadderTranscoder.Rendition> renditions = new ArrayList<>();
+            List<String> outputNames = new ArrayList<>();
+            for (int i = 0; i < targets.length(); i++) {
+                JSONObject target = targets.getJSONObject(i);
+                String name = target.optString("outputFileName", options.outputFileName + "-" + i) + ".mp4";
+                MediaFormatStrategy strategy = new CustomAndroidFormatStrategy(target.optInt("videoBitrate"), OUTPUT_FRAME_RATE,
+                    target.optInt("width", 0), target.optInt("height", 0), options.audioBitrate, options.audioChannels)
+                    .setVideoCodec(target.optString("codec", options.extra.optString("codec", "avc")))
+                    .setBitrateModel(target.optDouble("bitsPerPixel",
+                        options.extra.optDouble("bitsPerPixel", CustomAndroidFormatStrategy.DEFAULT_BITS_PER_PIXEL)), 0);
+                renditions.add(new LadderTranscoder.Rendition(workspace.tempFile(name, 0).getAbsolutePath(), strategy));
+                outputNames.add(name);
+            }
+            // Audio is encoded once for the whole ladder, so only the top-level audio options apply.
+            MediaFormatStrategy audioStrategy = new CustomAndroidFormatStrategy(0, OUTPUT_FRAME_RATE, 0, 0,
+                options.audioBitrate, options.audioChannels, true);
+            boolean fastStart = options.extra.optBoolean("fastStart", false);
+            String jobId = options.jobId;
+            long probeBegunAt = SystemClock.elapsedRealtime();
+            CompletableFuture<VideoInfo> probe = probeVideoInfo(options.videoPath);
+            probe
+                .thenAcceptAsync(finalStage(videoInfo -> {
+                    long probeMs = SystemClock.elapsedRealtime() - probeBegunAt;
+                    long startUs = (long) (options.trimStart * MICROS_PER_SECOND);
+                    long endUs = options.videoDuration > 0 ? startUs + options.videoDuration * MICROS_PER_SECOND : 0;
+                    double mediaDurationSec = options.videoDuration > 0
+                        ? Math.min(options.videoDuration, videoInfo.duration - options.trimStart) : videoInfo.duration - options.trimStart;
+                    long sourceShare = (long) (new File(options.videoPath).length() * Math.min(1.0, mediaDurationSec / videoInfo.duration));
+                    long expectedBytes = 0;
+                    for (int i = 0; i < targets.length(); i++) {
+                        int bitrate = targets.getJSONObject(i).optInt("videoBitrate");
+                        expectedBytes += bitrate > 0 ? expectedBytes(bitrate + Math.max(0, options.audioBitrate), mediaDurationSec) : sourceShare;
+                    }
+                    workspace.ensureSpace(expectedBytes);
+                    List<ProgressChannel> channels = new ArrayList<>();
+                    for (int i = 0; i < renditions.size(); i++) {
+                        ProgressChannel channel = new ProgressChannel(jobId, progressSender(callbackContext),
+                            new File(renditions.get(i).outputPath),
+                            mediaDurationSec,
+                            options.extra.optLong("progressInterval", ProgressChannel.DEFAULT_MIN_INTERVAL_MS),
+                            options.extra.optDouble("progressStep", ProgressChannel.DEFAULT_MIN_DELTA)).with("rendition", i);
+                        renditions.get(i).setFrameCounter(channel.frameCounter());
+                        channels.add(channel);
+                    }
+                    LadderTranscoder.Listener listener = ladderListener(jobId, renditions, outputNames, fastStart, channels, callbackContext);
+                    try {
+                        jobs.submit(jobId, "ladder", options.jobTag, options.priority(JobScheduler.Priority.NORMAL), options.includeMetrics(), new JobScheduler.Work() {
+                            @Override public Future<?> start() {
+                                for (ProgressChannel channel : channels) channel.start();
+                                JobMetrics metrics = metricsFor(jobId);
+                                metrics.stage("probe", probeMs);
+                                return new LadderTranscoder(options.videoPath, renditions, audioStrategy, startUs, endUs)
+                                    .setMetrics(metrics)
+                                    .start(cordova.getThreadPool(), listener);
+                            }
+                            @Override public void abort(Exception cause) {
+                                if (cause instanceof CancellationException) {
+                                    listener.onCanceled();
+                                } else {
+                                    listener.onFailed(cause);
+                                }
+                            }
+                        });
+                    } catch (JobScheduler.DuplicateJobException e) {
+                        rejectDuplicate(e, () -> {
+                            for (LadderTranscoder.Rendition rendition : renditions) workspace.discard(new File(rendition.outputPath));
+                        }, callbackContext);
+                    }
+                }), cordova.getThreadPool())
+                .exceptionally(e -> {
+                    Throwable cause = unwrap(e);
+                    for (LadderTranscoder.Rendition rendition : renditions) workspace.discard(new File(rendition.outputPath));
+                    if (probe.isCompletedExceptionally()) {
+                        handleException("transcode renditions", cause, callbackContext);
+                    } else {
+                        sendJobFailure(jobId, new Exception(cause.toString()), callbackContext);
                     }
+                    return null;
+                });
+        } catch (Exception e) {
+            handleException("transcode renditions", e, callbackContext);
+        }
+    }
 
-                    MediaTranscoder.getInstance().transcodeVideo(
-                        sourceForTranscode,
-                        outputPathForCompress,
-                        outFormatStrategy,
-                        listener
-                    );
-                } catch (Throwable e) {
-                    sendJsonResponse(new TranscodeFailedJsonResponse(new Exception(e.toString())), false, callbackContext);
+    private LadderTranscoder.Listener ladderListener(String jobId, List<LadderTranscoder.Rendition> renditions, List<String> outputNames,
+                                                     boolean fastStart, List<ProgressChannel> channels, CallbackContext callbackContext) {
+        String[] published = new String[renditions.size()];
+        return new LadderTranscoder.Listener() {
+            private IOException commitError;
+
+            @Override public void onProgress(int rendition, double fraction) {
+                channels.get(rendition).update(fraction);
+            }
+            @Override public void onRenditionCompleted(int rendition, String outputPath) {
+                File output = new File(outputPath);
+                try {
+                    if (fastStart) Mp4FastStart.apply(output);
+                } catch (IOException ignored) {
+                    // The rendition is still playable, just not progressively.
                 }
-            });
+                try {
+                    metricsFor(jobId).wrote(output.length());
+                    String path = workspace.commit(output, outputNames.get(rendition)).getAbsolutePath();
+                    published[rendition] = path;
+                    sendJobResponse(jobId, () -> new TranscodeCompletedJsonResponse(path).createResponse()
+                        .put("completed", false).put("rendition", rendition), true, callbackContext);
+                } catch (IOException e) {
+                    // Reported once the other renditions are done, so the final response stays the last one.
+                    if (commitError == null) commitError = e;
+                }
+            }
+            @Override public void onCompleted() {
+                jobs.finish(jobId);
+                if (commitError != null) {
+                    sendJobFailure(jobId, commitError, callbackContext);
+                    return;
+                }
+                JSONArray paths = new JSONArray();
+                for (String path : published) paths.put(path);
+                sendJobResponse(jobId, () -> new TranscodeCompletedJsonResponse(null).createResponse().put("data", paths),
+                    false, callbackContext);
+            }
+            @Override public void onCanceled() {
+                jobs.finish(jobId);
+                discardUnpublished();
+                sendJobResponse(jobId, new TranscodeCanceledJsonResponse(), false, callbackContext);
+            }
+            @Override public void onFailed(Exception exception) {
+                jobs.finish(jobId);
+                discardUnpublished();
+                sendJobFailure(jobId, exception, callbackContext);
+            }
+            private void discardUnpublished() {
+                for (int i = 0; i < published.length; i++) {
+                    if (published[i] == null) workspace.discard(new File(renditions.get(i).outputPath));
+                }
+            }
+        };
+    }
+
+    private void mergeVideos(JSONArray args, CallbackContext callbackContext) {
+        try {
+            VideoOptions options = extractVideoOptions(args);
+            if (jobIdTaken(options.jobId, callbackContext)) return;
+            JSONArray fileUris = options.extra.optJSONArray("fileUris");
+            if (fileUris == null || fileUris.length() < 2) {
+                callbackContext.error("At least two clips are required.");
+                return;
+            }
+            List<String> inputs = new ArrayList<>();
+            List<CompletableFuture<VideoInfo>> probes = new ArrayList<>();
+            long inputBytes = 0;
+            long probeBegunAt = SystemClock.elapsedRealtime();
+            for (int i = 0; i < fileUris.length(); i++) {
+                String path = VideoOptions.preprocessVideoPath(fileUris.getString(i));
+                inputs.add(path);
+                workspace.touch(path);
+                inputBytes += new File(path).length();
+                probes.add(probeVideoInfo(path));
+            }
+            String outputName = options.outputFileName + ".mp4";
+            String outputPath = workspace.tempFile(outputName, inputBytes).getAbsolutePath();
+            boolean fastStart = options.extra.optBoolean("fastStart", true);
+            String jobId = options.jobId;
+            CompletableFuture<Void> probe = CompletableFuture.allOf(probes.toArray(new CompletableFuture<?>[0]));
+            probe
+                .thenAcceptAsync(finalStage(ignored -> {
+                    long probeMs = SystemClock.elapsedRealtime() - probeBegunAt;
+                    double mediaDurationSec = 0;
+                    for (CompletableFuture<VideoInfo> clip : probes) mediaDurationSec += clip.join().duration;
+                    VideoMerger merger = new VideoMerger(inputs, outputPath, options.videoBitrate, OUTPUT_FRAME_RATE, fastStart);
+                    OutputGuard guard = output -> (merger.transcodedClips() == 0
+                        ? TranscodePlanner.Mode.PASSTHROUGH : TranscodePlanner.Mode.FULL).label();
+                    ProgressChannel progress = new ProgressChannel(jobId, progressSender(callbackContext), new File(outputPath),
+                        mediaDurationSec,
+                        options.extra.optLong("progressInterval", ProgressChannel.DEFAULT_MIN_INTERVAL_MS),
+                        options.extra.optDouble("progressStep", ProgressChannel.DEFAULT_MIN_DELTA));
+                    MediaTranscoder.Listener listener = transcodeListener(jobId, outputPath, guard,
+                        temp -> workspace.commit(temp, outputName).getAbsolutePath(), progress, callbackContext);
+                    try {
+                        jobs.submit(jobId, "merge", options.jobTag, options.priority(JobScheduler.Priority.NORMAL), options.includeMetrics(), new JobScheduler.Work() {
+                            @Override public Future<?> start() {
+                                progress.start();
+                                JobMetrics metrics = metricsFor(jobId);
+                                metrics.stage("probe", probeMs);
+                                return merger.setMetrics(metrics).setFrameCounter(progress.frameCounter())
+                                    .start(cordova.getThreadPool(), listener);
+                            }
+                            @Override public void abort(Exception cause) {
+                                if (cause instanceof CancellationException) {
+                                    listener.onTranscodeCanceled();
+                                } else {
+                                    listener.onTranscodeFailed(cause);
+                                }
+                            }
+                        });
+                    } catch (JobScheduler.DuplicateJobException e) {
+                        rejectDuplicate(e, () -> workspace.discard(new File(outputPath)), callbackContext);
+                    }
+                }), cordova.getThreadPool())
+                .exceptionally(e -> {
+                    Throwable cause = unwrap(e);
+                    workspace.discard(new File(outputPath));
+                    if (probe.isCompletedExceptionally()) {
+                        handleException("merge videos", cause, callbackContext);
+                    } else {
+                        sendJobFailure(jobId, new Exception(cause.toString()), callbackContext);
+                    }
+                    return null;
+                });
         } catch (Exception e) {
-            handleException(e, callbackContext);
+            handleException("merge videos", e, callbackContext);
         }
     }
 
-    private boolean trimVideoSegment(String inputPath, String outputPath, long startUs, long endUs, int rotationDegrees) throws IOException {
+    /** Sends progress messages as kept-alive results, so the final response can follow on the same callback. */
+    private static ProgressChannel.Sender progressSender(CallbackContext callbackContext) {
+        return message -> {
+            PluginResult result = new PluginResult(PluginResult.Status.OK, message);
+            result.setKeepCallback(true);
+            callbackContext.sendPluginResult(result);
+        };
+    }
+
+    /** Moves a finished temp output to its final place and returns the path to report. */
+    private interface OutputCommit {
+        String commit(File output) throws IOException;
+    }
+
+    /** Checks (and may replace) a finished output; returns the transcode mode to report. */
+    private interface OutputGuard {
+        String check(File output) throws IOException;
+    }
+
+    private MediaTranscoder.Listener transcodeListener(String jobId, String outputPath, OutputGuard guard, OutputCommit commit,
+                                                       ProgressChannel progress, CallbackContext callbackContext) {
+        return new MediaTranscoder.Listener() {
+            @Override public void onTranscodeProgress(double fraction) {
+                progress.update(fraction);
+            }
+            @Override public void onTranscodeCompleted() {
+                // The stock transcoder reports on the main thread; the output check may copy the source.
+                cordova.getThreadPool().execute(() -> {
+                    File outFile = new File(outputPath);
+                    JobMetrics metrics = metricsFor(jobId);
+                    try {
+                        if (!outFile.exists()) throw new IOException("Output missing after transcode");
+                        long begunAt = metrics.begin("finalize");
+                        String mode = guard.check(outFile);
+                        metrics.wrote(outFile.length());
+                        String path = commit.commit(outFile);
+                        metrics.end("finalize", begunAt);
+                        sendJobResponse(jobId, new TranscodeCompletedJsonResponse(path, mode), false, callbackContext);
+                    } catch (IOException e) {
+                        workspace.discard(outFile);
+                        sendJobFailure(jobId, e, callbackContext);
+                    } finally {
+                        jobs.finish(jobId);
+                    }
+                });
+            }
+            @Override public void onTranscodeCanceled() {
+                jobs.finish(jobId);
+                workspace.discard(new File(outputPath));
+                sendJobResponse(jobId, new TranscodeCanceledJsonResponse(), false, callbackContext);
+            }
+            @Override public void onTranscodeFailed(Exception exception) {
+                jobs.finish(jobId);
+                workspace.discard(new File(outputPath));
+                sendJobFailure(jobId, exception, callbackContext);
+            }
+        };
+    }
+
+    /** Copies samples from the keyframe at or before startUs up to endUs, with timestamps starting at zero. */
+    private boolean trimVideoSegment(String inputPath, String outputPath, long startUs, long endUs, int rotationDegrees,
+                                     KeyframeIndex index, JobMetrics metrics) throws IOException {
         if (endUs <= startUs) return false;
         MediaExtractor extractor = new MediaExtractor();
-        MediaMuxer muxer = null;
+        RangeTranscoder.Muxer muxer = null;
         try {
             extractor.setDataSource(inputPath);
             final int trackCount = extractor.getTrackCount();
             int[] indexMap = new int[trackCount];
             Arrays.fill(indexMap, -1);
 
-            muxer = new MediaMuxer(outputPath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+            muxer = new RangeTranscoder.PlatformMuxer(new MediaMuxer(outputPath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4));
 
             boolean hasTrack = false;
             for (int i = 0; i < trackCount; i++) {
@@ -174,30 +624,32 @@ public class VideoHelper extends CordovaPlugin {
             }
             ByteBuffer buffer = ByteBuffer.allocateDirect(maxBufferSize);
 
-            extractor.seekTo(startUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            // Seek straight to the indexed keyframe so the cut point doesn't depend on how the extractor snaps.
+            long baseUs = index != null ? index.keyframeAtOrBefore(startUs) : -1;
+            extractor.seekTo(baseUs >= 0 ? baseUs : startUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            if (baseUs < 0) baseUs = Math.max(0, Math.min(startUs, extractor.getSampleTime()));
 
-            while (true) {
-                int trackIndex = extractor.getSampleTrackIndex();
-                if (trackIndex < 0) break;
-                if (indexMap[trackIndex] == -1) {
+            RangeTranscoder.Muxer output = muxer;
+            metrics.read(SampleCopier.copy(new SampleCopier.Source() {
+                @Override public int track() {
+                    return extractor.getSampleTrackIndex();
+                }
+                @Override public long sampleTimeUs() {
+                    return extractor.getSampleTime();
+                }
+                @Override public boolean isSync() {
+                    return (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0;
+                }
+                @Override public int read(ByteBuffer buffer) {
+                    return extractor.readSampleData(buffer, 0);
+                }
+                @Override public void advance() {
                     extractor.advance();
-                    continue;
                 }
-                long sampleTimeUs = extractor.getSampleTime();
-                if (sampleTimeUs < 0 || sampleTimeUs > endUs) break;
-
-                int sampleSize = extractor.readSampleData(buffer, 0);
-                if (sampleSize <= 0) break;
-
-                bufferInfo.offset = 0;
-                bufferInfo.size = sampleSize;
-                bufferInfo.presentationTimeUs = sampleTimeUs - startUs;
-                int sampleFlags = extractor.getSampleFlags();
-                bufferInfo.flags = ((sampleFlags & MediaExtractor.SAMPLE_FLAG_SYNC) != 0)
-                    ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0;
-                muxer.writeSampleData(indexMap[trackIndex], buffer, bufferInfo);
-                extractor.advance();
-            }
+            }, indexMap, (track, data, size, presentationTimeUs, sync) -> {
+                bufferInfo.set(0, size, presentationTimeUs, sync ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0);
+                output.writeSampleData(track, data, bufferInfo);
+            }, buffer, baseUs, endUs));
             return new File(outputPath).exists();
         } finally {
             try { extractor.release(); } catch (Throwable ignored) {}
@@ -209,162 +661,637 @@ public class VideoHelper extends CordovaPlugin {
     }
 
     private void getVideoInfo(String videoPath, CallbackContext callback) {
-        cordova.getThreadPool().execute(() -> {
-            MediaExtractor extractor = null;
-            try {
-                String newVideoPath = preprocessVideoPath(videoPath);
-                try (MediaMetadataRetriever retriever = new MediaMetadataRetriever()) {
-
-                    retriever.setDataSource(newVideoPath);
-                    float width = Float.parseFloat(Objects.requireNonNull(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH)));
-                    float height = Float.parseFloat(Objects.requireNonNull(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT)));
-                    double duration = Double.parseDouble(Objects.requireNonNull(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION))) / 1000.0;
-                    long bitrate = Long.parseLong(Objects.requireNonNull(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_BITRATE)));
-                    long rotationDegrees = Long.parseLong(Objects.requireNonNull(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION)));
-                    String orientation = getOrientation(width, height, rotationDegrees);
-
-                    extractor = new MediaExtractor();
-                    extractor.setDataSource(newVideoPath);
-                    MediaExtractorUtils.TrackResult trackResult = MediaExtractorUtils.getFirstVideoAndAudioTrack(extractor);
-
-                    File videoFile = new File(newVideoPath);
-                    JSONObject videoInfo = new JSONObject();
-                    videoInfo.put("width", width);
-                    videoInfo.put("height", height);
-                    videoInfo.put("rotationDegrees", rotationDegrees);
-                    videoInfo.put("duration", duration);
-                    videoInfo.put("bitrate", bitrate);
-                    videoInfo.put("orientation", orientation);
-                    videoInfo.put("size", videoFile.length());
-                    videoInfo.put("videoMediaType", trackResult.mVideoTrackMime);
-                    videoInfo.put("audioMediaType", trackResult.mAudioTrackMime);
-
+        CompletableFuture
+            .supplyAsync(task(() -> loadVideoInfo(VideoOptions.preprocessVideoPath(videoPath)).toJson()), cordova.getThreadPool())
+            .whenComplete((videoInfo, e) -> {
+                if (e == null) {
                     callback.success(videoInfo);
+                } else {
+                    callback.error("Failed to retrieve video metadata: " + unwrap(e).getMessage());
                 }
+            });
+    }
+
+    private CompletableFuture<VideoInfo> probeVideoInfo(String videoPath) {
+        CompletableFuture<VideoInfo> probe = new CompletableFuture<>();
+        ScheduledFuture<?> timeout = TIMEOUT_SCHEDULER.schedule(
+            () -> probe.completeExceptionally(new IOException("Error in getVideoInfo: Timed out retrieving video metadata")),
+            PROBE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        cordova.getThreadPool().execute(() -> {
+            try {
+                probe.complete(loadVideoInfo(videoPath));
             } catch (Exception e) {
-                callback.error("Failed to retrieve video metadata: " + e.getMessage());
+                probe.completeExceptionally(new IOException("Error in getVideoInfo: Failed to retrieve video metadata: " + e.getMessage(), e));
             } finally {
-                if (extractor != null) try { extractor.release(); } catch (Throwable ignored) {}
+                timeout.cancel(false);
+            }
+        });
+        return probe;
+    }
+
+    private VideoInfo loadVideoInfo(String videoPath) throws IOException {
+        File videoFile = new File(videoPath);
+        VideoInfoCache infoCache = VideoInfoCache.getInstance();
+        VideoInfo info = infoCache.get(videoFile);
+        if (info == null) {
+            info = VideoProbe.probe(videoPath);
+            infoCache.put(videoFile, info);
+        }
+        return info;
+    }
+
+    private void getVideoInfos(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        JSONArray uris = args.getJSONArray(0);
+        JSONObject options = args.optJSONObject(1);
+        if (options == null) options = new JSONObject();
+        List<String> paths = new ArrayList<>();
+        try {
+            for (int i = 0; i < uris.length(); i++) paths.add(VideoOptions.preprocessVideoPath(uris.getString(i)));
+        } catch (UnsupportedEncodingException e) {
+            handleException("retrieve video metadata", e, callbackContext);
+            return;
+        }
+        // The workers share the plugin's thread pool, so more of them than cores would only starve other jobs.
+        int maxConcurrency = VideoInfoBatch.defaultParallelism();
+        int concurrency = Math.max(1, Math.min(options.optInt("concurrency", maxConcurrency), maxConcurrency));
+        VideoInfoBatch batch = new VideoInfoBatch(paths, VideoInfoBatch.parseFields(options.optJSONArray("fields")),
+            concurrency, options.optInt("batchSize", 16));
+        String requestedId = options.optString("jobId", "");
+        String jobId = requestedId.isEmpty() ? jobs.newId() : requestedId;
+        if (jobIdTaken(jobId, callbackContext)) return;
+        JobScheduler.Priority priority = JobScheduler.Priority.fromOption(options.optString("priority", null),
+            JobScheduler.Priority.INTERACTIVE);
+        jobs.submit(jobId, "probe", options.has("tag") ? options.optString("tag") : null, priority,
+            options.optBoolean("metrics", false), new JobScheduler.Work() {
+            @Override public Future<?> start() {
+                return jobs.execute(cordova.getThreadPool(), jobId, () -> {
+                    try {
+                        batch.run(cordova.getThreadPool(), path -> loadVideoInfo(path),
+                            results -> sendJobResponse(jobId, () -> new JSONObject().put("completed", false).put("results", results),
+                                true, callbackContext),
+                            () -> jobs.isCanceled(jobId));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    if (jobs.isCanceled(jobId)) {
+                        abort(new CancellationException());
+                        return;
+                    }
+                    sendJobResponse(jobId, () -> new JSONObject().put("completed", true).put("total", paths.size())
+                        .put("failed", batch.failed()), false, callbackContext);
+                }, () -> abort(new CancellationException()));
+            }
+            @Override public void abort(Exception cause) {
+                boolean canceled = cause instanceof CancellationException;
+                sendJobError(jobId, canceled ? "Probe canceled." : "Failed to retrieve video metadata: " + cause.getMessage(),
+                    canceled ? null : cause, callbackContext);
             }
         });
     }
 
+    private void getVideoInfoCacheStats(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        callbackContext.success(VideoInfoCache.getInstance().stats());
+    }
+
+    private void getArtifactCacheStats(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        callbackContext.success(artifacts.stats());
+    }
+
+    private void getOutputWorkspaceStats(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        callbackContext.success(workspace.stats());
+    }
+
+    private void cancelJob(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        JSONObject options = args.optJSONObject(0);
+        int canceled;
+        if (options == null) {
+            canceled = jobs.cancel(args.getString(0)) ? 1 : 0;
+        } else if (options.has("jobId")) {
+            canceled = jobs.cancel(options.getString("jobId")) ? 1 : 0;
+        } else {
+            String tag = options.has("tag") ? options.getString("tag") : null;
+            canceled = jobs.cancelAll(tag, !options.optBoolean("queuedOnly", false));
+        }
+        JSONObject result = new JSONObject();
+        result.put("canceled", canceled);
+        callbackContext.success(result);
+    }
+
+    private void listJobs(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        callbackContext.success(jobs.list());
+    }
+
+    /** Metrics of one job when a jobId is given, otherwise of the most recently finished jobs, oldest first. */
+    private void getMetrics(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        JSONObject options = args.optJSONObject(0);
+        String jobId = options != null ? options.optString("jobId", "") : "";
+        if (jobId.isEmpty()) {
+            callbackContext.success(jobs.metricsHistory());
+            return;
+        }
+        JobMetrics metrics = jobs.metrics(jobId);
+        if (metrics == null) {
+            callbackContext.error("No metrics for job " + jobId + ".");
+            return;
+        }
+        callbackContext.success(metrics.toJson());
+    }
+
+    /** Never null, so instrumentation doesn't need to care whether the job is still known. */
+    private JobMetrics metricsFor(String jobId) {
+        JobMetrics metrics = jobs.metrics(jobId);
+        return metrics != null ? metrics : new JobMetrics(jobId, "unknown", false);
+    }
+
+    /** Adds the job's metrics to its final response when the caller asked for them. */
+    private JSONObject attachMetrics(String jobId, JSONObject response) throws JSONException {
+        JobMetrics metrics = jobs.metrics(jobId);
+        if (metrics != null && metrics.attach) {
+            metrics.finished();
+            response.put("metrics", metrics.toJson());
+        }
+        return response;
+    }
+
     private void trimVideo(JSONArray args, CallbackContext callbackContext) {
         try {
             VideoOptions options = extractVideoOptions(args);
+            if (jobIdTaken(options.jobId, callbackContext)) return;
             String outputExtension = ".mp4";
-            File mediaStorageDir = getOrCreateMediaStorageDir();
-            JSONObject videoInfo = getVideoInfoSynchronously(options.videoPath);
-            String outputPath = new File(mediaStorageDir.getPath(), "trimmed-" + options.outputFileName + outputExtension).getAbsolutePath();
-            long duration = options.videoDuration == 0 ? videoInfo.getLong("duration") : options.videoDuration;
-            cordova.getThreadPool().execute(() -> {
-                try {
-                    boolean trimmed;
-                    long startUs = 0L;
-                    long endUs = duration * MICROS_PER_SECOND;
-                    trimmed = trimVideoSegment(options.videoPath, outputPath, startUs, endUs, videoInfo.getInt("rotationDegrees"));
-                    if (trimmed) {
-                        callbackContext.success(outputPath);
+            String outputName = "trimmed-" + options.outputFileName + outputExtension;
+            String jobId = options.jobId;
+            long probeBegunAt = SystemClock.elapsedRealtime();
+            probeVideoInfo(options.videoPath)
+                .thenAcceptAsync(finalStage(videoInfo -> {
+                    long probeMs = SystemClock.elapsedRealtime() - probeBegunAt;
+                    long startUs = (long) (options.trimStart * MICROS_PER_SECOND);
+                    long endUs;
+                    if (options.trimEnd > 0) {
+                        endUs = (long) (options.trimEnd * MICROS_PER_SECOND);
+                    } else if (options.videoDuration > 0) {
+                        endUs = startUs + options.videoDuration * MICROS_PER_SECOND;
                     } else {
-                        callbackContext.error("Failed to trim video.");
+                        endUs = Long.MAX_VALUE;
                     }
-                } catch (Exception e) {
-                    handleException(e, callbackContext);
-                }
-            });
+                    boolean fastStart = options.extra.optBoolean("fastStart", true);
+                    long sourceEndUs = (long) (videoInfo.duration * MICROS_PER_SECOND);
+                    double keptShare = sourceEndUs > 0 ? Math.min(1.0, (double) (Math.min(endUs, sourceEndUs) - startUs) / sourceEndUs) : 1.0;
+                    File output = workspace.tempFile(outputName, (long) (new File(options.videoPath).length() * keptShare));
+                    String outputPath = output.getAbsolutePath();
+                    try {
+                        jobs.submit(jobId, "trim", options.jobTag, options.priority(JobScheduler.Priority.NORMAL), options.includeMetrics(), new JobScheduler.Work() {
+                            @Override public Future<?> start() {
+                                return jobs.execute(cordova.getThreadPool(), jobId, () -> {
+                                    JobMetrics metrics = metricsFor(jobId);
+                                    metrics.stage("probe", probeMs);
+                                    boolean trimmed = false;
+                                    String published = null;
+                                    Exception error = null;
+                                    try {
+                                        long begunAt = metrics.begin("trim");
+                                        trimmed = LosslessTrimmer.trim(new File(options.videoPath), output, startUs, endUs, fastStart) != null;
+                                        metrics.end("trim", begunAt);
+                                        if (!trimmed) {
+                                            begunAt = metrics.begin("remux");
+                                            trimmed = trimVideoSegment(options.videoPath, outputPath, startUs, Math.min(endUs, sourceEndUs),
+                                                (int) videoInfo.rotationDegrees, keyframeIndex(options.videoPath), metrics);
+                                            metrics.end("remux", begunAt);
+                                            if (trimmed && fastStart) {
+                                                begunAt = metrics.begin("fastStart");
+                                                Mp4FastStart.apply(output);
+                                                metrics.end("fastStart", begunAt);
+                                            }
+                                        }
+                                        if (trimmed && !jobs.isCanceled(jobId)) {
+                                            metrics.wrote(output.length());
+                                            published = workspace.commit(output, outputName).getAbsolutePath();
+                                        }
+                                    } catch (Exception e) {
+                                        error = e;
+                                    }
+                                    if (published == null) workspace.discard(output);
+                                    if (jobs.isCanceled(jobId)) {
+                                        abort(new CancellationException());
+                                    } else if (error != null) {
+                                        sendJobError(jobId, "Failed to trim video: " + error.getMessage(), error, callbackContext);
+                                    } else if (published != null) {
+                                        callbackContext.success(published);
+                                    } else {
+                                        sendJobError(jobId, "Failed to trim video.", null, callbackContext);
+                                    }
+                                }, () -> abort(new CancellationException()));
+                            }
+                            @Override public void abort(Exception cause) {
+                                workspace.discard(output);
+                                if (cause instanceof CancellationException) {
+                                    sendJobError(jobId, "Trim canceled.", null, callbackContext);
+                                } else {
+                                    sendJobError(jobId, "Failed to trim video: " + cause.getMessage(), cause, callbackContext);
+                                }
+                            }
+                        });
+                    } catch (JobScheduler.DuplicateJobException e) {
+                        rejectDuplicate(e, () -> workspace.discard(output), callbackContext);
+                    }
+                }), cordova.getThreadPool())
+                .exceptionally(e -> {
+                    handleException("trim video", unwrap(e), callbackContext);
+                    return null;
+                });
         } catch (Exception e) {
-            handleException(e, callbackContext);
+            handleException("trim video", e, callbackContext);
         }
     }
 
     private void createThumbnail(JSONArray args, CallbackContext callbackContext) {
         try {
             VideoOptions options = extractVideoOptions(args);
-            String outputExtension = ".jpg";
-            File mediaStorageDir = getOrCreateMediaStorageDir();
-            String outputPath = new File(mediaStorageDir.getPath(), options.outputFileName + outputExtension).getAbsolutePath();
-            final File outputFile = new File(outputPath);
-            cordova.getThreadPool().execute(() -> {
-                try (MediaMetadataRetriever mmr = new MediaMetadataRetriever();
-                     OutputStream outStream = new FileOutputStream(outputFile)) {
-
-                    mmr.setDataSource(options.videoPath);
-                    Bitmap bitmap = mmr.getFrameAtTime((options.atTimeOpt == 0) ? 0 : options.atTimeOpt * MICROS_PER_SECOND);
-                    if (bitmap == null) {
-                        callbackContext.error("Failed to capture frame.");
+            if (jobIdTaken(options.jobId, callbackContext)) return;
+            Bitmap.CompressFormat format = ThumbnailExtractor.compressFormat(options.extra.optString("format", null));
+            String outputExtension = ThumbnailExtractor.extension(format);
+            String outputName = options.binaryOutput() ? null : options.outputFileName + outputExtension;
+            if (outputName != null) workspace.ensureSpace(0);
+            String jobId = options.jobId;
+            jobs.submit(jobId, "thumbnail", options.jobTag, options.priority(JobScheduler.Priority.INTERACTIVE), options.includeMetrics(), new JobScheduler.Work() {
+                @Override public Future<?> start() {
+                    return jobs.execute(cordova.getThreadPool(), jobId,
+                        () -> writeThumbnail(options, format, outputName, callbackContext),
+                        () -> abort(new CancellationException()));
+                }
+                @Override public void abort(Exception cause) {
+                    boolean canceled = cause instanceof CancellationException;
+                    sendJobError(jobId, canceled ? "Thumbnail canceled." : "Exception during creating thumbnail: " + cause.getMessage(),
+                        canceled ? null : cause, callbackContext);
+                }
+            });
+        } catch (Exception e) {
+            handleException("create thumbnail", e, callbackContext);
+        }
+    }
+
+    /** Publishes the frame as outputName, or sends the encoded bytes back as an ArrayBuffer when outputName is null. */
+    private void writeThumbnail(VideoOptions options, Bitmap.CompressFormat format, String outputName, CallbackContext callbackContext) {
+        long timeUs = options.atTimeOpt * MICROS_PER_SECOND;
+        int quality = options.extra.optInt("quality", 80);
+        boolean exact = options.extra.optBoolean("exact", false);
+        File target = null;
+        try {
+            String extension = ThumbnailExtractor.extension(format);
+            String cacheKey = null;
+            if (outputName != null && options.useCache()) {
+                Map<String, Object> params = new HashMap<>();
+                params.put("atTime", options.atTimeOpt);
+                params.put("width", options.width);
+                params.put("height", options.height);
+                params.put("quality", quality);
+                params.put("exact", exact);
+                cacheKey = artifacts.key(new File(options.videoPath), "thumbnail", params);
+                File cached = artifacts.get(cacheKey, extension);
+                if (cached != null) {
+                    callbackContext.success(cached.getAbsolutePath());
+                    return;
+                }
+                target = artifacts.tempFile(cacheKey, extension);
+            } else if (outputName != null) {
+                target = workspace.tempFile(outputName, 0);
+            }
+            try (ThumbnailExtractor extractor = new ThumbnailExtractor(options.videoPath, options.width, options.height, exact)) {
+                if (exact) extractor.setKeyframes(keyframeIndex(options.videoPath));
+                if (target == null) {
+                    byte[] bytes = extractor.encodeFrame(timeUs, format, quality);
+                    if (bytes == null) {
+                        sendJobError(options.jobId, "Failed to capture frame.", null, callbackContext);
                         return;
                     }
-                    if (options.width > 0 || options.height > 0) {
-                        int videoWidth = bitmap.getWidth();
-                        int videoHeight = bitmap.getHeight();
-                        double aspectRatio = (double) videoWidth / (double) videoHeight;
-                        int targetWidth = options.width > 0 ? options.width : (options.height > 0 ? (int)(options.height * aspectRatio) : videoWidth);
-                        int targetHeight = options.height > 0 ? options.height : (int)(targetWidth / aspectRatio);
-                        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, targetWidth, targetHeight, false);
-                        if (scaled != bitmap) bitmap.recycle();
-                        bitmap = scaled;
+                    callbackContext.success(bytes);
+                    return;
+                }
+                if (!extractor.writeFrame(timeUs, target, format, quality)) {
+                    workspace.discard(target);
+                    sendJobError(options.jobId, "Failed to capture frame.", null, callbackContext);
+                    return;
+                }
+            }
+            File result = cacheKey == null ? workspace.commit(target, outputName) : artifacts.commit(target, cacheKey, extension);
+            callbackContext.success(result.getAbsolutePath());
+        } catch (Exception e) {
+            if (target != null) workspace.discard(target);
+            sendJobError(options.jobId, "Exception during creating thumbnail: " + e.getMessage(), e, callbackContext);
+        }
+    }
+
+    private void createThumbnails(JSONArray args, CallbackContext callbackContext) {
+        try {
+            VideoOptions options = extractVideoOptions(args);
+            if (jobIdTaken(options.jobId, callbackContext)) return;
+            boolean toFiles = !options.binaryOutput();
+            if (toFiles) workspace.ensureSpace(0);
+            String jobId = options.jobId;
+            long probeBegunAt = SystemClock.elapsedRealtime();
+            probeVideoInfo(options.videoPath)
+                .thenAcceptAsync(finalStage(videoInfo -> {
+                    long probeMs = SystemClock.elapsedRealtime() - probeBegunAt;
+                    double[] times = thumbnailTimes(options.extra, videoInfo.duration);
+                    jobs.submit(jobId, "thumbnails", options.jobTag, options.priority(JobScheduler.Priority.INTERACTIVE), options.includeMetrics(), new JobScheduler.Work() {
+                        @Override public Future<?> start() {
+                            metricsFor(jobId).stage("probe", probeMs);
+                            return jobs.execute(cordova.getThreadPool(), jobId,
+                                () -> writeThumbnails(options, times, toFiles, callbackContext),
+                                () -> abort(new CancellationException()));
+                        }
+                        @Override public void abort(Exception cause) {
+                            boolean canceled = cause instanceof CancellationException;
+                            sendJobError(jobId, canceled ? "Thumbnails canceled." : "Exception during creating thumbnails: " + cause.getMessage(),
+                                canceled ? null : cause, callbackContext);
+                        }
+                    });
+                }), cordova.getThreadPool())
+                .exceptionally(e -> {
+                    handleException("create thumbnails", unwrap(e), callbackContext);
+                    return null;
+                });
+        } catch (Exception e) {
+            handleException("create thumbnails", e, callbackContext);
+        }
+    }
+
+    private static double[] thumbnailTimes(JSONObject options, double durationSec) throws JSONException {
+        JSONArray times = options.optJSONArray("times");
+        if (times != null) {
+            double[] result = new double[times.length()];
+            for (int i = 0; i < result.length; i++) result[i] = Math.max(0, times.getDouble(i));
+            return result;
+        }
+        int count = options.optInt("count", 0);
+        if (count <= 0) throw new JSONException("Either times or count is required");
+        double[] result = new double[count];
+        for (int i = 0; i < count; i++) result[i] = durationSec * (i + 0.5) / count;
+        return result;
+    }
+
+    private void writeThumbnails(VideoOptions options, double[] times, boolean toFiles, CallbackContext callbackContext) {
+        // Decode in time order so the retriever only ever seeks forward; results still carry the caller's index.
+        Integer[] order = new Integer[times.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(times[a], times[b]));
+        int quality = options.extra.optInt("quality", 80);
+        boolean exact = options.extra.optBoolean("exact", false);
+        Bitmap.CompressFormat format = ThumbnailExtractor.compressFormat(options.extra.optString("format", null));
+        JSONArray paths = new JSONArray();
+        try (ThumbnailExtractor extractor = new ThumbnailExtractor(options.videoPath, options.width, options.height, exact)) {
+            if (exact) extractor.setKeyframes(keyframeIndex(options.videoPath));
+            for (int n = 0; n < order.length; n++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    sendJobError(options.jobId, "Thumbnails canceled.", null, callbackContext);
+                    return;
+                }
+                int index = order[n];
+                JSONObject frame = new JSONObject();
+                frame.put("index", index);
+                frame.put("time", times[index]);
+                frame.put("completed", false);
+                frame.put("progress", (n + 1) * 100.0 / order.length);
+                frame.put("jobId", options.jobId);
+                long timeUs = (long) (times[index] * MICROS_PER_SECOND);
+                byte[] bytes = null;
+                File temp = null;
+                try {
+                    if (!toFiles) {
+                        bytes = extractor.encodeFrame(timeUs, format, quality);
+                    } else {
+                        String outputName = options.outputFileName + "-" + index + ThumbnailExtractor.extension(format);
+                        temp = workspace.tempFile(outputName, 0);
+                        if (extractor.writeFrame(timeUs, temp, format, quality)) {
+                            String path = workspace.commit(temp, outputName).getAbsolutePath();
+                            frame.put("path", path);
+                            paths.put(path);
+                        } else {
+                            workspace.discard(temp);
+                        }
+                    }
+                    if (bytes == null && !frame.has("path")) {
+                        frame.put("error", true);
+                        frame.put("message", "Failed to capture frame.");
                     }
-                    bitmap.compress(Bitmap.CompressFormat.JPEG, 80, outStream);
-                    bitmap.recycle();
-                    callbackContext.success(outputPath);
-                } catch (Exception e) {
-                    callbackContext.error("Exception during creating thumbnail: " + e.getMessage());
+                } catch (IOException e) {
+                    if (temp != null) workspace.discard(temp);
+                    frame.put("error", true);
+                    frame.put("message", e.getMessage());
+                }
+                PluginResult result = bytes == null
+                    ? new PluginResult(PluginResult.Status.OK, frame)
+                    : new PluginResult(PluginResult.Status.OK, Arrays.asList(
+                        new PluginResult(PluginResult.Status.OK, frame), new PluginResult(PluginResult.Status.OK, bytes)));
+                result.setKeepCallback(true);
+                callbackContext.sendPluginResult(result);
+            }
+            JSONObject done = new JSONObject();
+            done.put("completed", true);
+            done.put("progress", 100);
+            done.put("data", paths);
+            sendJobResponse(options.jobId, () -> done, false, callbackContext);
+        } catch (Exception e) {
+            sendJobError(options.jobId, "Exception during creating thumbnails: " + e.getMessage(), e, callbackContext);
+        }
+    }
+
+    private void getWaveform(JSONArray args, CallbackContext callbackContext) {
+        try {
+            VideoOptions options = extractVideoOptions(args);
+            if (jobIdTaken(options.jobId, callbackContext)) return;
+            int buckets = options.extra.optInt("buckets", 512);
+            if (buckets <= 0) {
+                callbackContext.error("buckets must be positive.");
+                return;
+            }
+            long startUs = (long) (options.trimStart * MICROS_PER_SECOND);
+            long endUs = options.trimEnd > 0 ? (long) (options.trimEnd * MICROS_PER_SECOND) : 0;
+            String jobId = options.jobId;
+            jobs.submit(jobId, "waveform", options.jobTag, options.priority(JobScheduler.Priority.INTERACTIVE), options.includeMetrics(), new JobScheduler.Work() {
+                @Override public Future<?> start() {
+                    return jobs.execute(cordova.getThreadPool(), jobId, () -> {
+                        WaveformExtractor waveform = new WaveformExtractor(buckets);
+                        JobMetrics metrics = metricsFor(jobId);
+                        try {
+                            long begunAt = metrics.begin("decode");
+                            waveform.extract(options.videoPath, startUs, endUs);
+                            metrics.end("decode", begunAt);
+                            JSONObject summary = new JSONObject();
+                            summary.put("jobId", jobId);
+                            summary.put("completed", true);
+                            summary.put("buckets", buckets);
+                            summary.put("sampleRate", waveform.sampleRate);
+                            summary.put("channels", waveform.channels);
+                            summary.put("start", startUs / (double) MICROS_PER_SECOND);
+                            summary.put("duration", waveform.durationUs / (double) MICROS_PER_SECOND);
+                            attachMetrics(jobId, summary);
+                            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, Arrays.asList(
+                                new PluginResult(PluginResult.Status.OK, summary),
+                                new PluginResult(PluginResult.Status.OK, waveform.toBytes()))));
+                        } catch (Exception e) {
+                            if (jobs.isCanceled(jobId)) {
+                                abort(new CancellationException());
+                            } else {
+                                abort(e);
+                            }
+                        }
+                    }, () -> abort(new CancellationException()));
+                }
+                @Override public void abort(Exception cause) {
+                    boolean canceled = cause instanceof CancellationException;
+                    sendJobError(jobId, canceled ? "Waveform canceled." : "Failed to extract waveform: " + cause.getMessage(),
+                        canceled ? null : cause, callbackContext);
+                }
+            });
+        } catch (Exception e) {
+            handleException("extract waveform", e, callbackContext);
+        }
+    }
+
+    private void getKeyframes(JSONArray args, CallbackContext callbackContext) {
+        try {
+            VideoOptions options = extractVideoOptions(args);
+            if (jobIdTaken(options.jobId, callbackContext)) return;
+            String jobId = options.jobId;
+            jobs.submit(jobId, "keyframes", options.jobTag, options.priority(JobScheduler.Priority.INTERACTIVE), options.includeMetrics(), new JobScheduler.Work() {
+                @Override public Future<?> start() {
+                    return jobs.execute(cordova.getThreadPool(), jobId, () -> {
+                        try {
+                            KeyframeIndex index = keyframes.get(new File(options.videoPath));
+                            JSONArray times = new JSONArray();
+                            JSONArray offsets = new JSONArray();
+                            for (int i = 0; i < index.count(); i++) {
+                                times.put(index.timesUs[i] / (double) MICROS_PER_SECOND);
+                                offsets.put(index.offsets[i]);
+                            }
+                            JSONObject result = new JSONObject();
+                            result.put("jobId", jobId);
+                            result.put("count", index.count());
+                            result.put("duration", index.durationUs / (double) MICROS_PER_SECOND);
+                            result.put("times", times);
+                            result.put("offsets", offsets);
+                            callbackContext.success(attachMetrics(jobId, result));
+                        } catch (Exception e) {
+                            abort(jobs.isCanceled(jobId) ? new CancellationException() : e);
+                        }
+                    }, () -> abort(new CancellationException()));
+                }
+                @Override public void abort(Exception cause) {
+                    boolean canceled = cause instanceof CancellationException;
+                    sendJobError(jobId, canceled ? "Keyframes canceled." : "Failed to index keyframes: " + cause.getMessage(),
+                        canceled ? null : cause, callbackContext);
                 }
             });
-        } catch (JSONException | IOException e) {
-            handleException(e, callbackContext);
+        } catch (Exception e) {
+            handleException("index keyframes", e, callbackContext);
+        }
+    }
+
+    /**
+     * Rejects a request whose jobId still belongs to a queued or running job, before any output is allocated for
+     * it. The reply is a plain error so the other job's metrics and callbacks stay untouched.
+     */
+    private boolean jobIdTaken(String jobId, CallbackContext callbackContext) {
+        if (!jobs.contains(jobId)) return false;
+        callbackContext.error("Job " + jobId + " already exists.");
+        return true;
+    }
+
+    /**
+     * Answers a request that lost the race for its jobId after {@link #jobIdTaken}: releases what it set up and
+     * reports the clash. The id belongs to another job, so its metrics and callbacks are left alone.
+     */
+    private void rejectDuplicate(JobScheduler.DuplicateJobException e, Runnable cleanup, CallbackContext callbackContext) {
+        cleanup.run();
+        callbackContext.error(e.getMessage());
+    }
+
+    /** The source's keyframe index, or null when it can't be built; callers then seek the way they did before. */
+    private KeyframeIndex keyframeIndex(String path) {
+        try {
+            return keyframes.get(new File(path));
+        } catch (IOException e) {
+            return null;
         }
     }
 
-    private JSONObject getVideoInfoSynchronously(String videoPath) throws InterruptedException, IOException, JSONException {
-        final CountDownLatch latch = new CountDownLatch(1);
-        final JSONObject[] resultHolder = new JSONObject[1];
-        final String[] errorHolder = new String[1];
-        getVideoInfo(videoPath, new CallbackContext("videoInfo", webView) {
-            @Override
-            public void success(JSONObject result) {
-                resultHolder[0] = result;
-                latch.countDown();
+    private interface VoidStage<T> {
+        void accept(T input) throws Exception;
+    }
+
+    private interface Task<R> {
+        R call() throws Exception;
+    }
+
+    /**
+     * Wraps the stage that turns a probe into a job. Run it with thenAcceptAsync on the thread pool: a probe that
+     * has already completed would otherwise run it on the bridge thread that called execute.
+     */
+    private static <T> Consumer<T> finalStage(VoidStage<T> stage) {
+        return input -> {
+            try {
+                stage.accept(input);
+            } catch (Exception e) {
+                throw new CompletionException(e);
             }
-            @Override
-            public void error(String errorMessage) {
-                errorHolder[0] = errorMessage;
-                latch.countDown();
+        };
+    }
+
+    private static <R> Supplier<R> task(Task<R> task) {
+        return () -> {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
             }
-        });
-        latch.await();
-        if (errorHolder[0] != null) {
-            throw new IOException("Error in getVideoInfo: " + errorHolder[0]);
+        };
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
         }
-        return resultHolder[0];
+        return e;
     }
 
-    @NonNull
-    private static String getOrientation(float width, float height, long rotationDegrees) {
-        boolean isPortrait = (width < height);
-        boolean rotated = (rotationDegrees == 90L || rotationDegrees == 270L);
-        return (isPortrait ^ rotated) ? "portrait" : "landscape";
+    /** Rejects a request that failed before it became a job, so there are no metrics to report. */
+    private void handleException(String action, Throwable e, CallbackContext callbackContext) {
+        callbackContext.error("Failed to " + action + ": " + e.getMessage());
     }
 
-    private void handleException(Exception e, CallbackContext callbackContext) {
-        callbackContext.error("Failed to " + "compress video" + ": " + e.getMessage());
+    /** Size of a stream at bitsPerSecond; only good enough for the free-space check before a job starts. */
+    private static long expectedBytes(long bitsPerSecond, double durationSec) {
+        return (long) (bitsPerSecond / 8.0 * Math.max(0, durationSec));
     }
 
-    private File getOrCreateMediaStorageDir() throws IOException {
-        File mediaStorageDir = new File(Environment.getExternalStorageDirectory().getAbsolutePath() +
-            "/Android/data/" + cordova.getActivity().getPackageName() + "/files/videos");
-        if (!mediaStorageDir.exists() && !mediaStorageDir.mkdirs()) {
-            throw new IOException("Can't access or make videos directory");
-        }
-        return mediaStorageDir;
+    private void sendJobResponse(String jobId, JsonResponseCreator creator, boolean keepCallback, CallbackContext callbackContext) {
+        sendJsonResponse(() -> {
+            JSONObject response = creator.createResponse().put("jobId", jobId);
+            return keepCallback ? response : attachMetrics(jobId, response);
+        }, keepCallback, callbackContext);
     }
 
-    private String preprocessVideoPath(String videoPath) throws UnsupportedEncodingException {
-        return removeFileProtocolPrefix(URLDecoder.decode(videoPath, "UTF-8"));
+    private void sendJobFailure(String jobId, Exception exception, CallbackContext callbackContext) {
+        metricsFor(jobId).failed(exception);
+        sendJobResponse(jobId, new TranscodeFailedJsonResponse(exception), false, callbackContext);
     }
 
-    private String removeFileProtocolPrefix(String videoPath) {
-        return videoPath.startsWith("file://") ? videoPath.substring(7) : videoPath;
+    /**
+     * Ends a job whose callback takes a plain error message. With metrics requested the error is an object carrying
+     * the message and the job's metrics instead; error, when given, is recorded there with the stage it hit.
+     */
+    private void sendJobError(String jobId, String message, Throwable error, CallbackContext callbackContext) {
+        if (error != null) metricsFor(jobId).failed(error);
+        JobMetrics metrics = jobs.metrics(jobId);
+        if (metrics == null || !metrics.attach) {
+            callbackContext.error(message);
+            return;
+        }
+        try {
+            callbackContext.error(attachMetrics(jobId, new JSONObject().put("jobId", jobId).put("message", message)));
+        } catch (JSONException e) {
+            callbackContext.error(message);
+        }
     }
 
     private void sendJsonResponse(JsonResponseCreator creator, boolean keepCallback, CallbackContext callbackContext) {
@@ -376,32 +1303,4 @@ public class VideoHelper extends CordovaPlugin {
             callbackContext.error("Error creating JSON response.");
         }
     }
-
-    public static class VideoOptions {
-        String videoPath;
-        String outputFileName;
-        JSONObject extra;
-        int width;
-        int height;
-        int videoBitrate;
-        int audioBitrate;
-        int audioChannels;
-        int videoDuration;
-        long atTimeOpt;
-
-        VideoOptions(String videoPath, String outputFileName, int width, int height,
-                     int videoBitrate, int audioBitrate, int audioChannels,
-                     int videoDuration, long atTimeOpt, JSONObject extra) {
-            this.videoPath = videoPath;
-            this.outputFileName = outputFileName;
-            this.extra = extra;
-            this.width = width;
-            this.height = height;
-            this.videoBitrate = videoBitrate;
-            this.audioBitrate = audioBitrate;
-            this.audioChannels = audioChannels;
-            this.videoDuration = videoDuration;
-            this.atTimeOpt = atTimeOpt;
-        }
-    }
 }
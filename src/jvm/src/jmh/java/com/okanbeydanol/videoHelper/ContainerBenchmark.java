@@ -0,0 +1,70 @@
+package com.okanbeydanol.videoHelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/** Parsing and lossless trimming of the av.mp4 fixture, the steps a trim with mode "lossless" goes through. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ContainerBenchmark {
+    private File input;
+    private File output;
+    private FileInputStream in;
+    private FileChannel channel;
+    private Mp4Movie movie;
+
+    @Setup
+    public void setUp() throws IOException {
+        input = Mp4Fixtures.fixture(Mp4Fixtures.AV);
+        output = File.createTempFile("bench-trim", ".mp4");
+        in = new FileInputStream(input);
+        channel = in.getChannel();
+        movie = Mp4Parser.parse(channel);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        in.close();
+        output.delete();
+    }
+
+    @Benchmark
+    public Mp4Movie parse() throws IOException {
+        return Mp4Parser.parse(channel);
+    }
+
+    @Benchmark
+    public void sampleTables(Blackhole blackhole) {
+        for (Mp4Track track : movie.tracks) blackhole.consume(Mp4SampleTable.parse(movie.moov, track));
+    }
+
+    @Benchmark
+    public LosslessTrimmer.Result trim() throws IOException {
+        return LosslessTrimmer.trim(input, output, 1_000_000, 2_000_000, false);
+    }
+
+    @Benchmark
+    public LosslessTrimmer.Result trimFastStart() throws IOException {
+        return LosslessTrimmer.trim(input, output, 1_000_000, 2_000_000, true);
+    }
+}
@@ -0,0 +1,57 @@
+package com.okanbeydanol.videoHelper;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+
+/** The per-call JSON work of every action: reading the options and building the reply. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OptionsBenchmark {
+    private JSONObject options;
+    private Exception failure;
+
+    @Setup
+    public void setUp() throws JSONException {
+        options = new JSONObject("{\"fileUri\":\"file:///storage/My%20Videos/clip.mp4\",\"outputFileName\":\"out\","
+            + "\"width\":1280,\"height\":720,\"videoBitrate\":2000000,\"trimStart\":1.5,\"trimEnd\":4.25,"
+            + "\"jobId\":\"job-1\",\"tag\":\"upload\",\"priority\":\"high\"}");
+        failure = new IllegalStateException("Codec failed");
+    }
+
+    @Benchmark
+    public VideoOptions parseOptions() throws JSONException, UnsupportedEncodingException {
+        return VideoOptions.parse(options, () -> "job");
+    }
+
+    @Benchmark
+    public JSONObject completedResponse() throws JSONException {
+        return new TranscodeCompletedJsonResponse("/data/out.mp4", "lossless").createResponse();
+    }
+
+    @Benchmark
+    public JSONObject canceledResponse() throws JSONException {
+        return new TranscodeCanceledJsonResponse().createResponse();
+    }
+
+    @Benchmark
+    public JSONObject failedResponse() throws JSONException {
+        return new TranscodeFailedJsonResponse(failure).createResponse();
+    }
+}
@@ -0,0 +1,63 @@
+package com.okanbeydanol.videoHelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-update work of a running job: building a progress or fragment message and serializing it, as the
+ * PluginResult the plugin wraps it in does. Rate limiting is off so every call sends.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProgressBenchmark {
+    private File output;
+    private ProgressChannel channel;
+    private double fraction;
+    /** The last serialized message, returned so the work isn't optimized away. */
+    private String delivered;
+
+    @Setup
+    public void setUp() throws IOException {
+        output = File.createTempFile("bench-progress", ".mp4");
+        channel = new ProgressChannel("job-1", message -> delivered = message.toString(), output, 30, 0, 0);
+        channel.frameCounter().set(900);
+        channel.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        output.delete();
+    }
+
+    @Benchmark
+    public String update() {
+        // Climbs to 99% and starts over, so every update is a step up and gets sent.
+        fraction = fraction >= 0.99 ? 0.01 : fraction + 0.01;
+        if (fraction == 0.01) channel.start();
+        channel.update(fraction);
+        return delivered;
+    }
+
+    @Benchmark
+    public String fragment() {
+        channel.fragment(3, 65536, 32768, 4_000_000, 2_000_000);
+        return delivered;
+    }
+}
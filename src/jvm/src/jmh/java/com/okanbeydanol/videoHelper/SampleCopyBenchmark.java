@@ -0,0 +1,44 @@
+package com.okanbeydanol.videoHelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/** The remux fallback's sample loop over av.mp4 held in memory, so only the loop itself is measured. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SampleCopyBenchmark {
+    private FixtureSampleSource source;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private final int[] trackMap = {0, 1};
+
+    @Setup
+    public void setUp() throws IOException {
+        source = new FixtureSampleSource(Mp4Fixtures.fixture(Mp4Fixtures.AV));
+    }
+
+    @Benchmark
+    public long copyAll(Blackhole blackhole) throws IOException {
+        source.seekTo(0, 0);
+        return SampleCopier.copy(source, trackMap, (track, data, size, presentationTimeUs, sync) -> {
+            blackhole.consume(data);
+            blackhole.consume(presentationTimeUs);
+        }, buffer, 0, Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,11 @@
+package android.os;
+
+/** JVM stand-in for the SystemClock call the shared sources make; not packaged with the plugin. */
+public final class SystemClock {
+    private SystemClock() {
+    }
+
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1_000_000L;
+    }
+}
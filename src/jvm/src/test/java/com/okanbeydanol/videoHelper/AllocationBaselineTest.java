@@ -0,0 +1,162 @@
+package com.okanbeydanol.videoHelper;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Bytes allocated per call of the hot paths, compared with baseline/allocations.properties. An operation that
+ * allocates more than 10% (plus a little slack for JIT noise) over its recorded value fails the build; run with
+ * -PupdateBaseline after a deliberate change and commit the new file. An operation the file doesn't list fails
+ * too, so a new one can't go ungated.
+ */
+public class AllocationBaselineTest {
+    private static final int WARMUP = 300;
+    private static final int ITERATIONS = 200;
+    private static final double TOLERANCE = 1.10;
+    private static final long SLACK_BYTES = 256;
+
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    @Test
+    public void staysWithinBaseline() throws Exception {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        File av = Mp4Fixtures.fixture(Mp4Fixtures.AV);
+        File output = File.createTempFile("alloc-trim", ".mp4");
+        FileInputStream in = new FileInputStream(av);
+        try {
+            FileChannel channel = in.getChannel();
+            Mp4Movie movie = Mp4Parser.parse(channel);
+            FixtureSampleSource source = new FixtureSampleSource(av);
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            int[] trackMap = {0, 1};
+            SampleCopier.Sink sink = (track, data, size, presentationTimeUs, sync) -> {
+            };
+            JSONObject options = new JSONObject("{\"fileUri\":\"file:///storage/My%20Videos/clip.mp4\","
+                + "\"outputFileName\":\"out\",\"width\":1280,\"height\":720,\"videoBitrate\":2000000,"
+                + "\"trimStart\":1.5,\"trimEnd\":4.25,\"jobId\":\"job-1\",\"tag\":\"upload\"}");
+            Exception failure = new IllegalStateException("Codec failed");
+            // Serializes like PluginResult does, since that is part of what every update costs.
+            String[] delivered = new String[1];
+            ProgressChannel progress = new ProgressChannel("job-1", message -> delivered[0] = message.toString(), output, 30, 0, 0);
+
+            Map<String, Operation> operations = new LinkedHashMap<>();
+            operations.put("mp4.parse", () -> Mp4Parser.parse(channel));
+            operations.put("sampleTable.parse", () -> {
+                for (Mp4Track track : movie.tracks) Mp4SampleTable.parse(movie.moov, track);
+            });
+            operations.put("trim.remux", () -> LosslessTrimmer.trim(av, output, 1_000_000, 2_000_000, true));
+            operations.put("sampleCopy.loop", () -> {
+                source.seekTo(0, 0);
+                SampleCopier.copy(source, trackMap, sink, buffer, 0, Long.MAX_VALUE);
+            });
+            operations.put("videoOptions.parse", () -> VideoOptions.parse(options, () -> "job"));
+            operations.put("response.completed", () -> new TranscodeCompletedJsonResponse("/data/out.mp4", "lossless").createResponse());
+            operations.put("response.canceled", () -> new TranscodeCanceledJsonResponse().createResponse());
+            operations.put("response.failed", () -> new TranscodeFailedJsonResponse(failure).createResponse());
+            // One start and three updates, each of which is sent.
+            operations.put("progress.update", () -> {
+                progress.start();
+                progress.update(0.25);
+                progress.update(0.5);
+                progress.update(1.0);
+            });
+            operations.put("progress.fragment", () -> progress.fragment(3, 65536, 32768, 4_000_000, 2_000_000));
+
+            Map<String, Long> measured = new LinkedHashMap<>();
+            for (Map.Entry<String, Operation> operation : operations.entrySet()) {
+                measured.put(operation.getKey(), bytesPerCall(threads, operation.getValue()));
+            }
+            compare(measured);
+        } finally {
+            in.close();
+            output.delete();
+        }
+    }
+
+    private static long bytesPerCall(com.sun.management.ThreadMXBean threads, Operation operation) throws Exception {
+        for (int i = 0; i < WARMUP; i++) operation.run();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ITERATIONS; i++) operation.run();
+        return (threads.getThreadAllocatedBytes(thread) - before) / ITERATIONS;
+    }
+
+    private static void compare(Map<String, Long> measured) throws IOException {
+        File file = new File(System.getProperty("baseline.file", "baseline/allocations.properties"));
+        if (Boolean.getBoolean("baseline.update")) {
+            write(file, measured);
+            return;
+        }
+        Properties baseline = new Properties();
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                baseline.load(in);
+            }
+        }
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : measured.entrySet()) {
+            String recorded = baseline.getProperty(entry.getKey());
+            long bytes = entry.getValue();
+            if (recorded == null) {
+                regressions.add(entry.getKey() + ": " + bytes + " B/op, not in the baseline");
+                continue;
+            }
+            long limit = (long) (Long.parseLong(recorded.trim()) * TOLERANCE) + SLACK_BYTES;
+            if (bytes > limit) {
+                regressions.add(entry.getKey() + ": " + bytes + " B/op, baseline " + recorded.trim());
+            } else if (bytes * TOLERANCE + SLACK_BYTES < Long.parseLong(recorded.trim())) {
+                System.out.println(entry.getKey() + ": " + bytes + " B/op, down from " + recorded.trim()
+                    + "; run with -PupdateBaseline to lock it in");
+            }
+        }
+        if (!regressions.isEmpty()) {
+            fail("Allocation regressions (run with -PupdateBaseline if intended):\n" + String.join("\n", regressions));
+        }
+    }
+
+    private static void write(File file, Map<String, Long> measured) throws IOException {
+        StringBuilder out = new StringBuilder()
+            .append("# Bytes allocated per call, written by `gradle test -PupdateBaseline`.\n")
+            .append("# Measured on ").append(System.getProperty("java.vm.name")).append(' ')
+            .append(System.getProperty("java.version")).append("; AllocationBaselineTest allows 10% + ")
+            .append(SLACK_BYTES).append(" bytes over these.\n");
+        for (Map.Entry<String, Long> entry : new TreeMap<>(measured).entrySet()) {
+            out.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) throw new IOException("Can't create " + parent);
+        try (OutputStream stream = new FileOutputStream(file)) {
+            stream.write(out.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assertTrue("Allocation counters need a HotSpot-compatible JVM", bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+}
@@ -0,0 +1,170 @@
+package com.okanbeydanol.videoHelper;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/** The MP4 parser, sample tables and lossless trim/remux against the fixtures, checked through golden files. */
+public class ContainerGoldenTest {
+    @Test
+    public void parsesFixtures() throws IOException {
+        StringBuilder out = new StringBuilder();
+        for (String name : new String[] {Mp4Fixtures.AV, Mp4Fixtures.AV_EDIT_LIST, Mp4Fixtures.FRAGMENTED}) {
+            out.append("== ").append(name).append('\n');
+            describe(out, Mp4Fixtures.fixture(name));
+        }
+        Golden.check("parse.txt", out.toString());
+    }
+
+    @Test
+    public void trimsFixtures() throws IOException {
+        StringBuilder out = new StringBuilder();
+        trim(out, Mp4Fixtures.AV, 0, Long.MAX_VALUE, false);
+        trim(out, Mp4Fixtures.AV, 1_000_000, 2_000_000, false);
+        trim(out, Mp4Fixtures.AV, 1_100_000, 2_500_000, true);
+        trim(out, Mp4Fixtures.AV_EDIT_LIST, 500_000, 1_500_000, true);
+        trim(out, Mp4Fixtures.FRAGMENTED, 0, 1_000_000, false);
+        Golden.check("trim.txt", out.toString());
+    }
+
+    @Test
+    public void fullRangeTrimKeepsEverySample() throws IOException {
+        File output = File.createTempFile("trim-full", ".mp4");
+        try {
+            assertNotNull(LosslessTrimmer.trim(Mp4Fixtures.fixture(Mp4Fixtures.AV), output, 0, Long.MAX_VALUE, true));
+            Mp4Movie source = parse(Mp4Fixtures.fixture(Mp4Fixtures.AV));
+            Mp4Movie trimmed = parse(output);
+            assertEquals(source.tracks.size(), trimmed.tracks.size());
+            for (int t = 0; t < source.tracks.size(); t++) {
+                Mp4SampleTable expected = Mp4SampleTable.parse(source.moov, source.tracks.get(t));
+                Mp4SampleTable actual = Mp4SampleTable.parse(trimmed.moov, trimmed.tracks.get(t));
+                assertEquals(expected.sampleCount, actual.sampleCount);
+                assertEquals(crc(expected.decodeTimes), crc(actual.decodeTimes));
+                assertEquals(payloadCrc(Mp4Fixtures.fixture(Mp4Fixtures.AV), expected),
+                    payloadCrc(output, actual));
+            }
+        } finally {
+            output.delete();
+        }
+    }
+
+    @Test
+    public void refusesFragmentedFiles() throws IOException {
+        File output = File.createTempFile("trim-fragmented", ".mp4");
+        try {
+            assertNull(LosslessTrimmer.trim(Mp4Fixtures.fixture(Mp4Fixtures.FRAGMENTED), output, 0, 1_000_000, false));
+        } finally {
+            output.delete();
+        }
+    }
+
+    private static void trim(StringBuilder out, String name, long startUs, long endUs, boolean fastStart) throws IOException {
+        out.append("== ").append(name).append(' ').append(startUs).append("..")
+            .append(endUs == Long.MAX_VALUE ? "end" : String.valueOf(endUs))
+            .append(fastStart ? " fastStart" : "").append('\n');
+        File output = File.createTempFile("trim", ".mp4");
+        try {
+            LosslessTrimmer.Result result = LosslessTrimmer.trim(Mp4Fixtures.fixture(name), output, startUs, endUs, fastStart);
+            if (result == null) {
+                out.append("result null\n");
+                return;
+            }
+            out.append("result ").append(result.startUs).append("..").append(result.endUs)
+                .append(" size ").append(output.length())
+                .append(" sha256 ").append(sha256(Golden.readBytes(output))).append('\n');
+            describe(out, output);
+        } finally {
+            output.delete();
+        }
+    }
+
+    private static void describe(StringBuilder out, File file) throws IOException {
+        Mp4Movie movie = parse(file);
+        if (movie == null) {
+            out.append("not parsed\n");
+            return;
+        }
+        out.append("brand ").append(Mp4Parser.typeName(movie.majorBrand))
+            .append(" size ").append(movie.fileSize)
+            .append(" fragmented ").append(movie.fragmented)
+            .append(" timescale ").append(movie.timescale)
+            .append(" duration ").append(movie.duration)
+            .append(" durationUs ").append(movie.durationUs()).append('\n');
+        out.append("boxes");
+        for (Mp4Parser.Mp4Box box : movie.boxes) {
+            out.append(' ').append(Mp4Parser.typeName(box.type)).append('@').append(box.offset).append('+').append(box.size);
+        }
+        out.append('\n');
+        for (Mp4Track track : movie.tracks) {
+            out.append("track ").append(track.trackId).append(' ').append(track.mime)
+                .append(' ').append(track.width).append('x').append(track.height)
+                .append(" rotation ").append(track.rotationDegrees)
+                .append(" timescale ").append(track.timescale)
+                .append(" duration ").append(track.duration)
+                .append(" edit ").append(track.editMediaTime).append('\n');
+            Mp4SampleTable table = movie.fragmented ? null : Mp4SampleTable.parse(movie.moov, track);
+            if (table == null) {
+                out.append("  no sample table\n");
+                continue;
+            }
+            out.append("  samples ").append(table.sampleCount)
+                .append(" sync ").append(table.syncSamples == null ? "all" : String.valueOf(table.syncSamples.length))
+                .append(" decode ").append(table.decodeTimes[0]).append("..").append(table.duration())
+                .append('\n');
+            out.append("  crc sizes ").append(crc(table.sizes))
+                .append(" offsets ").append(crc(table.offsets))
+                .append(" times ").append(crc(table.decodeTimes))
+                .append(" composition ").append(table.compositionOffsets == null ? "none" : crc(table.compositionOffsets))
+                .append(" sync ").append(table.syncSamples == null ? "none" : crc(table.syncSamples))
+                .append(" payload ").append(payloadCrc(file, table)).append('\n');
+        }
+    }
+
+    private static Mp4Movie parse(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+            return Mp4Parser.parse(channel);
+        }
+    }
+
+    /** CRC of the sample data in decode order, so moving samples around in the file doesn't change it. */
+    private static String payloadCrc(File file, Mp4SampleTable table) throws IOException {
+        byte[] data = Golden.readBytes(file);
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < table.sampleCount; i++) crc.update(data, (int) table.offsets[i], table.sizes[i]);
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static String crc(int[] values) {
+        CRC32 crc = new CRC32();
+        for (int value : values) crc.update(new byte[] {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value});
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static String crc(long[] values) {
+        CRC32 crc = new CRC32();
+        for (long value : values) {
+            for (int shift = 56; shift >= 0; shift -= 8) crc.update((int) (value >>> shift));
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
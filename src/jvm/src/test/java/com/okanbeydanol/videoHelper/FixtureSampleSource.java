@@ -0,0 +1,102 @@
+package com.okanbeydanol.videoHelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link SampleCopier.Source} over an MP4 held in memory, standing in for MediaExtractor: every track is
+ * selected, samples come in file order and times are presentation times in microseconds with the edit list
+ * applied. Reading a sample copies it into the caller's buffer and allocates nothing.
+ */
+final class FixtureSampleSource implements SampleCopier.Source {
+    private final byte[] data;
+    private final Mp4SampleTable[] tables;
+    private final long[] editStarts;
+    /** Samples of all tracks in file order, each packed as track << 32 | sample. */
+    private final long[] order;
+    private int position;
+
+    FixtureSampleSource(File file) throws IOException {
+        data = Golden.readBytes(file);
+        Mp4Movie movie;
+        try (FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+            movie = Mp4Parser.parse(channel);
+        }
+        if (movie == null || movie.fragmented) throw new IOException("Not a plain MP4: " + file);
+        List<Mp4Track> tracks = movie.tracks;
+        tables = new Mp4SampleTable[tracks.size()];
+        editStarts = new long[tracks.size()];
+        int total = 0;
+        for (int t = 0; t < tracks.size(); t++) {
+            tables[t] = Mp4SampleTable.parse(movie.moov, tracks.get(t));
+            editStarts[t] = Math.max(0, tracks.get(t).editMediaTime);
+            total += tables[t].sampleCount;
+        }
+        Long[] samples = new Long[total];
+        int i = 0;
+        for (int t = 0; t < tables.length; t++) {
+            for (int s = 0; s < tables[t].sampleCount; s++) samples[i++] = (long) t << 32 | s;
+        }
+        Arrays.sort(samples, (a, b) -> Long.compare(offset(a), offset(b)));
+        order = new long[total];
+        for (i = 0; i < total; i++) order[i] = samples[i];
+    }
+
+    int trackCount() {
+        return tables.length;
+    }
+
+    /** Like seekTo(timeUs, SEEK_TO_PREVIOUS_SYNC): moves to the sync sample of track at or before timeUs. */
+    long seekTo(int track, long timeUs) {
+        Mp4SampleTable table = tables[track];
+        int sample = table.syncAtOrBefore(table.sampleAtOrBefore(table.fromMicros(timeUs) + editStarts[track]));
+        long packed = (long) track << 32 | sample;
+        position = 0;
+        while (position < order.length && order[position] != packed) position++;
+        return sampleTimeUs();
+    }
+
+    @Override
+    public int track() {
+        return position < order.length ? (int) (order[position] >>> 32) : -1;
+    }
+
+    @Override
+    public long sampleTimeUs() {
+        if (position >= order.length) return -1;
+        int track = (int) (order[position] >>> 32);
+        int sample = (int) order[position];
+        Mp4SampleTable table = tables[track];
+        return table.toMicros(table.decodeTimes[sample] + table.compositionOffset(sample) - editStarts[track]);
+    }
+
+    @Override
+    public boolean isSync() {
+        return tables[(int) (order[position] >>> 32)].isSync((int) order[position]);
+    }
+
+    @Override
+    public int read(ByteBuffer buffer) {
+        Mp4SampleTable table = tables[(int) (order[position] >>> 32)];
+        int sample = (int) order[position];
+        int size = table.sizes[sample];
+        buffer.clear();
+        buffer.put(data, (int) table.offsets[sample], size);
+        buffer.flip();
+        return size;
+    }
+
+    @Override
+    public void advance() {
+        position++;
+    }
+
+    private long offset(long packed) {
+        return tables[(int) (packed >>> 32)].offsets[(int) packed];
+    }
+}
@@ -0,0 +1,96 @@
+package com.okanbeydanol.videoHelper;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Golden files under src/test/golden. A test renders what it checked as text and compares it with the stored
+ * copy; run with -PupdateGolden to rewrite the copies after an intended change, then review the diff.
+ */
+final class Golden {
+    private Golden() {
+    }
+
+    static void check(String name, String actual) throws IOException {
+        File file = new File(System.getProperty("golden.dir", "src/test/golden"), name);
+        if (Boolean.getBoolean("golden.update")) {
+            try (OutputStream out = new FileOutputStream(file)) {
+                out.write(actual.getBytes(StandardCharsets.UTF_8));
+            }
+            return;
+        }
+        assertTrue("Missing golden file " + file + "; run with -PupdateGolden", file.isFile());
+        assertEquals("Output differs from " + file, read(file), actual);
+    }
+
+    /**
+     * JSON with keys in sorted order. org.json keeps insertion order on Android but not in every build of the
+     * Maven artifact, so a plain toString() would make the golden files depend on the library.
+     */
+    static String json(Object value) throws JSONException {
+        StringBuilder out = new StringBuilder();
+        appendJson(out, value);
+        return out.toString();
+    }
+
+    private static void appendJson(StringBuilder out, Object value) throws JSONException {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            List<String> keys = new ArrayList<>();
+            for (Iterator<String> it = object.keys(); it.hasNext(); ) keys.add(it.next());
+            Collections.sort(keys);
+            out.append('{');
+            for (int i = 0; i < keys.size(); i++) {
+                if (i > 0) out.append(',');
+                out.append(JSONObject.quote(keys.get(i))).append(':');
+                appendJson(out, object.get(keys.get(i)));
+            }
+            out.append('}');
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            out.append('[');
+            for (int i = 0; i < array.length(); i++) {
+                if (i > 0) out.append(',');
+                appendJson(out, array.get(i));
+            }
+            out.append(']');
+        } else if (value instanceof String) {
+            out.append(JSONObject.quote((String) value));
+        } else if (value instanceof Number) {
+            out.append(JSONObject.numberToString((Number) value));
+        } else {
+            out.append(value);
+        }
+    }
+
+    static byte[] readBytes(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] chunk = new byte[8192];
+            int n;
+            while ((n = in.read(chunk)) > 0) out.write(chunk, 0, n);
+            return out.toByteArray();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(readBytes(file), StandardCharsets.UTF_8);
+    }
+}
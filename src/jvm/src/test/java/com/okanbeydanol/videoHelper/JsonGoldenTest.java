@@ -0,0 +1,62 @@
+package com.okanbeydanol.videoHelper;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertTrue;
+
+/** VideoOptions.parse and the JSON replies sent back to JS, checked through golden files. */
+public class JsonGoldenTest {
+    private static final Pattern GENERATED_NAME = Pattern.compile("\\d{4}-\\d{2}-\\d{2}/\\d{2}-\\d{2}-\\d{2}");
+
+    @Test
+    public void parsesOptions() throws IOException, JSONException {
+        StringBuilder out = new StringBuilder();
+        options(out, "{\"fileUri\":\"file:///data/user/0/app/cache/clip.mp4\"}");
+        options(out, "{\"fileUri\":\"file:///storage/My%20Videos/clip%231.mp4\",\"outputFileName\":\"out\","
+            + "\"width\":1280,\"height\":720,\"videoBitrate\":2000000,\"audioBitrate\":96000,\"audioChannels\":1,"
+            + "\"duration\":12,\"atTime\":3,\"trimStart\":-1.5,\"trimEnd\":4.25,\"jobId\":\"job-1\",\"tag\":\"upload\","
+            + "\"metrics\":true,\"cache\":true,\"output\":\"binary\",\"priority\":\"high\"}");
+        options(out, "{\"fileUris\":[\"file:///a.mp4\",\"file:///b.mp4\"],\"outputFileName\":\"merged\",\"jobId\":\"\"}");
+        options(out, "{\"fileUri\":\"/plain/path.mp4\",\"fileUris\":[\"file:///ignored.mp4\"],\"priority\":\"bogus\"}");
+        Golden.check("video_options.txt", out.toString());
+    }
+
+    @Test
+    public void buildsResponses() throws IOException, JSONException {
+        String out = Golden.json(new TranscodeCompletedJsonResponse("/data/out.mp4").createResponse()) + '\n'
+            + Golden.json(new TranscodeCompletedJsonResponse("/data/out.mp4", "lossless").createResponse()) + '\n'
+            + Golden.json(new TranscodeCanceledJsonResponse().createResponse()) + '\n'
+            + Golden.json(new TranscodeFailedJsonResponse(new IllegalStateException("Codec failed")).createResponse()) + '\n';
+        Golden.check("responses.txt", out);
+    }
+
+    private static void options(StringBuilder out, String json) throws IOException, JSONException {
+        VideoOptions options = VideoOptions.parse(new JSONObject(json), () -> "<generated id>");
+        String outputFileName = options.outputFileName;
+        if (!json.contains("\"outputFileName\"")) {
+            assertTrue(outputFileName, GENERATED_NAME.matcher(outputFileName).matches());
+            outputFileName = "<generated>";
+        }
+        out.append(json).append('\n')
+            .append("  videoPath ").append(options.videoPath).append('\n')
+            .append("  outputFileName ").append(outputFileName).append('\n')
+            .append("  size ").append(options.width).append('x').append(options.height)
+            .append(" videoBitrate ").append(options.videoBitrate)
+            .append(" audioBitrate ").append(options.audioBitrate)
+            .append(" audioChannels ").append(options.audioChannels).append('\n')
+            .append("  duration ").append(options.videoDuration)
+            .append(" atTime ").append(options.atTimeOpt)
+            .append(" trim ").append(options.trimStart).append("..").append(options.trimEnd).append('\n')
+            .append("  jobId ").append(options.jobId)
+            .append(" tag ").append(options.jobTag)
+            .append(" priority ").append(options.priority(JobScheduler.Priority.NORMAL)).append('\n')
+            .append("  metrics ").append(options.includeMetrics())
+            .append(" cache ").append(options.useCache())
+            .append(" binary ").append(options.binaryOutput()).append('\n');
+    }
+}
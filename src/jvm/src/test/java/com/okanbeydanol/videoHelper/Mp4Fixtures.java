@@ -0,0 +1,281 @@
+package com.okanbeydanol.videoHelper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.okanbeydanol.videoHelper.Mp4Parser.fourcc;
+
+/**
+ * The MP4 fixtures under src/test/fixtures, and the generator that wrote them. Nothing here decodes media, so
+ * the sample payloads are seeded noise in real container layouts: interleaved avc1 video and mp4a audio with
+ * sync samples, composition offsets, multi-entry stsc runs and, in one file, an edit list and rotation.
+ * Run main with the fixtures folder to regenerate them; the golden files have to be refreshed afterwards.
+ */
+final class Mp4Fixtures {
+    /** Video and audio, moov after mdat, composition offsets, a sync sample every 30 frames. */
+    static final String AV = "av.mp4";
+    /** moov before mdat, video rotated by 90 degrees, audio with a 1024-sample priming edit. */
+    static final String AV_EDIT_LIST = "av_edit_list.mp4";
+    /** A fragmented file, which the sample-table code has to refuse. */
+    static final String FRAGMENTED = "fragmented.mp4";
+
+    static final int VIDEO_TIMESCALE = 15360;
+    static final int FRAME_DURATION = 512;
+    static final int AUDIO_RATE = 44100;
+    static final int AUDIO_FRAME = 1024;
+
+    private static final int VIDEO_FRAMES = 90;
+    private static final int GOP = 30;
+    private static final int CHUNKS = 6;
+    private static final int[] AUDIO_CHUNK_FRAMES = {22, 22, 22, 21, 22, 21};
+
+    private Mp4Fixtures() {
+    }
+
+    static File fixture(String name) {
+        return new File(System.getProperty("fixtures.dir", "src/test/fixtures"), name);
+    }
+
+    public static void main(String[] args) throws IOException {
+        File dir = new File(args.length > 0 ? args[0] : "src/test/fixtures");
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Can't create " + dir);
+        write(new File(dir, AV), interleaved(false));
+        write(new File(dir, AV_EDIT_LIST), interleaved(true));
+        write(new File(dir, FRAGMENTED), fragmented());
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+    }
+
+    private static byte[] interleaved(boolean editList) {
+        Noise noise = new Noise(editList ? 0x5EED2 : 0x5EED1);
+        int[] videoSizes = new int[VIDEO_FRAMES];
+        for (int i = 0; i < VIDEO_FRAMES; i++) videoSizes[i] = i % GOP == 0 ? 2400 + noise.next(600) : 200 + noise.next(500);
+        int audioFrames = 0;
+        for (int frames : AUDIO_CHUNK_FRAMES) audioFrames += frames;
+        int[] audioSizes = new int[audioFrames];
+        for (int i = 0; i < audioFrames; i++) audioSizes[i] = 180 + noise.next(120);
+
+        // mdat payload: each chunk holds half a second of video followed by the matching audio.
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        long[] videoChunks = new long[CHUNKS];
+        long[] audioChunks = new long[CHUNKS];
+        int videoSample = 0;
+        int audioSample = 0;
+        for (int c = 0; c < CHUNKS; c++) {
+            videoChunks[c] = payload.size();
+            for (int i = 0; i < VIDEO_FRAMES / CHUNKS; i++) noise.fill(payload, videoSizes[videoSample++]);
+            audioChunks[c] = payload.size();
+            for (int i = 0; i < AUDIO_CHUNK_FRAMES[c]; i++) noise.fill(payload, audioSizes[audioSample++]);
+        }
+
+        byte[] ftyp = ftyp();
+        long mdatHeader = 8;
+        byte[] moov;
+        long dataStart;
+        if (editList) {
+            // stco entries have a fixed width, so a first pass gives the moov size the offsets depend on.
+            int moovSize = moov(videoSizes, audioSizes, videoChunks, audioChunks, 0, true).length;
+            dataStart = ftyp.length + moovSize + mdatHeader;
+        } else {
+            dataStart = ftyp.length + mdatHeader;
+        }
+        moov = moov(videoSizes, audioSizes, videoChunks, audioChunks, dataStart, editList);
+        byte[] mdat = box("mdat", payload.toByteArray());
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.write(ftyp, 0, ftyp.length);
+        if (editList) file.write(moov, 0, moov.length);
+        file.write(mdat, 0, mdat.length);
+        if (!editList) file.write(moov, 0, moov.length);
+        return file.toByteArray();
+    }
+
+    private static byte[] moov(int[] videoSizes, int[] audioSizes, long[] videoChunks, long[] audioChunks, long dataStart,
+                               boolean editList) {
+        long videoDuration = (long) videoSizes.length * FRAME_DURATION;
+        long audioDuration = (long) audioSizes.length * AUDIO_FRAME;
+        long movieDuration = Math.max(videoDuration * 1000 / VIDEO_TIMESCALE, audioDuration * 1000 / AUDIO_RATE);
+
+        int[] videoRuns = new int[videoChunks.length];
+        java.util.Arrays.fill(videoRuns, videoSizes.length / videoChunks.length);
+        int[] syncSamples = new int[videoSizes.length / GOP];
+        for (int i = 0; i < syncSamples.length; i++) syncSamples[i] = i * GOP + 1;
+        int[] compositionOffsets = null;
+        if (!editList) {
+            compositionOffsets = new int[videoSizes.length];
+            for (int i = 0; i < compositionOffsets.length; i++) compositionOffsets[i] = FRAME_DURATION * (i % 3 == 0 ? 2 : i % 3 == 1 ? 3 : 1);
+        }
+        byte[] video = trak(1, "vide", VIDEO_TIMESCALE, videoDuration, movieDuration, editList ? 90 : 0, -1,
+            avc1(320, 240), FRAME_DURATION, videoSizes, compositionOffsets, syncSamples, videoChunks, videoRuns, dataStart);
+        byte[] audio = trak(2, "soun", AUDIO_RATE, audioDuration, movieDuration, 0, editList ? AUDIO_FRAME : -1,
+            mp4a(), AUDIO_FRAME, audioSizes, null, null, audioChunks, AUDIO_CHUNK_FRAMES, dataStart);
+        return box("moov", mvhd(1000, movieDuration, 3), video, audio);
+    }
+
+    private static byte[] fragmented() {
+        byte[] stbl = box("stbl", fullBox("stsd", 0, 0, u32(1), avc1(320, 240)),
+            fullBox("stts", 0, 0, u32(0)), fullBox("stsc", 0, 0, u32(0)),
+            fullBox("stsz", 0, 0, u32(0), u32(0)), fullBox("stco", 0, 0, u32(0)));
+        byte[] trak = box("trak", tkhd(1, 0, 320, 240, 0), mdia("vide", VIDEO_TIMESCALE, 0, stbl));
+        byte[] mvex = box("mvex", fullBox("trex", 0, 0, u32(1), u32(1), u32(FRAME_DURATION), u32(0), u32(0)));
+        byte[] moov = box("moov", mvhd(1000, 0, 2), trak, mvex);
+
+        Noise noise = new Noise(0x5EED3);
+        ByteArrayOutputStream samples = new ByteArrayOutputStream();
+        noise.fill(samples, 1200);
+        byte[] moof = box("moof", fullBox("mfhd", 0, 0, u32(1)),
+            box("traf", fullBox("tfhd", 0, 0x020000, u32(1)), fullBox("trun", 0, 0x000301, u32(1), u32(0), u32(FRAME_DURATION), u32(1200))));
+        return concat(ftyp(), moov, moof, box("mdat", samples.toByteArray()));
+    }
+
+    private static byte[] trak(int trackId, String handler, long timescale, long mediaDuration, long movieDuration,
+                               int rotation, long editMediaTime, byte[] sampleEntry, int sampleDelta, int[] sizes,
+                               int[] compositionOffsets, int[] syncSamples, long[] chunks, int[] samplesPerChunk,
+                               long dataStart) {
+        List<byte[]> tables = new ArrayList<>();
+        tables.add(fullBox("stsd", 0, 0, u32(1), sampleEntry));
+        tables.add(fullBox("stts", 0, 0, u32(1), u32(sizes.length), u32(sampleDelta)));
+        if (compositionOffsets != null) {
+            ByteBuffer ctts = ByteBuffer.allocate(4 + compositionOffsets.length * 8).putInt(compositionOffsets.length);
+            for (int offset : compositionOffsets) ctts.putInt(1).putInt(offset);
+            tables.add(fullBox("ctts", 0, 0, ctts.array()));
+        }
+        if (syncSamples != null) {
+            ByteBuffer stss = ByteBuffer.allocate(4 + syncSamples.length * 4).putInt(syncSamples.length);
+            for (int sample : syncSamples) stss.putInt(sample);
+            tables.add(fullBox("stss", 0, 0, stss.array()));
+        }
+        List<int[]> runs = new ArrayList<>();
+        for (int c = 0; c < samplesPerChunk.length; c++) {
+            if (c == 0 || samplesPerChunk[c] != samplesPerChunk[c - 1]) runs.add(new int[] {c + 1, samplesPerChunk[c]});
+        }
+        ByteBuffer stsc = ByteBuffer.allocate(4 + runs.size() * 12).putInt(runs.size());
+        for (int[] run : runs) stsc.putInt(run[0]).putInt(run[1]).putInt(1);
+        tables.add(fullBox("stsc", 0, 0, stsc.array()));
+        ByteBuffer stsz = ByteBuffer.allocate(8 + sizes.length * 4).putInt(0).putInt(sizes.length);
+        for (int size : sizes) stsz.putInt(size);
+        tables.add(fullBox("stsz", 0, 0, stsz.array()));
+        ByteBuffer stco = ByteBuffer.allocate(4 + chunks.length * 4).putInt(chunks.length);
+        for (long chunk : chunks) stco.putInt((int) (dataStart + chunk));
+        tables.add(fullBox("stco", 0, 0, stco.array()));
+
+        byte[] stbl = box("stbl", tables.toArray(new byte[0][]));
+        boolean video = "vide".equals(handler);
+        byte[] tkhd = tkhd(trackId, movieDuration, video ? 320 : 0, video ? 240 : 0, rotation);
+        byte[] mdia = mdia(handler, timescale, mediaDuration, stbl);
+        if (editMediaTime < 0) return box("trak", tkhd, mdia);
+        byte[] elst = fullBox("elst", 0, 0, u32(1), u32((int) movieDuration), u32((int) editMediaTime), u32(0x00010000));
+        return box("trak", tkhd, box("edts", elst), mdia);
+    }
+
+    private static byte[] mdia(String handler, long timescale, long duration, byte[] stbl) {
+        byte[] mdhd = fullBox("mdhd", 0, 0, u32(0), u32(0), u32((int) timescale), u32((int) duration), u16(0x55C4), u16(0));
+        byte[] name = (handler.equals("vide") ? "VideoHandler\0" : "SoundHandler\0").getBytes(StandardCharsets.US_ASCII);
+        byte[] hdlr = fullBox("hdlr", 0, 0, u32(0), type(handler), new byte[12], name);
+        byte[] header = handler.equals("vide")
+            ? fullBox("vmhd", 0, 1, new byte[8])
+            : fullBox("smhd", 0, 0, new byte[4]);
+        byte[] dinf = box("dinf", fullBox("dref", 0, 0, u32(1), fullBox("url ", 0, 1)));
+        return box("mdia", mdhd, hdlr, box("minf", header, dinf, stbl));
+    }
+
+    private static byte[] ftyp() {
+        return box("ftyp", type("isom"), u32(0x200), type("isom"), type("iso2"), type("avc1"), type("mp41"));
+    }
+
+    private static byte[] mvhd(long timescale, long duration, int nextTrackId) {
+        return fullBox("mvhd", 0, 0, u32(0), u32(0), u32((int) timescale), u32((int) duration), u32(0x00010000),
+            u16(0x0100), new byte[10], matrix(0), new byte[24], u32(nextTrackId));
+    }
+
+    private static byte[] tkhd(int trackId, long duration, int width, int height, int rotation) {
+        return fullBox("tkhd", 0, 3, u32(0), u32(0), u32(trackId), u32(0), u32((int) duration), new byte[8],
+            u16(0), u16(0), u16(width == 0 ? 0x0100 : 0), u16(0), matrix(rotation), u32(width << 16), u32(height << 16));
+    }
+
+    private static byte[] matrix(int rotation) {
+        int one = 0x10000;
+        int a = rotation == 90 ? 0 : one;
+        int b = rotation == 90 ? one : 0;
+        int c = rotation == 90 ? -one : 0;
+        int d = rotation == 90 ? 0 : one;
+        return ByteBuffer.allocate(36).putInt(a).putInt(b).putInt(0).putInt(c).putInt(d).putInt(0)
+            .putInt(0).putInt(0).putInt(0x40000000).array();
+    }
+
+    private static byte[] avc1(int width, int height) {
+        byte[] sps = {0x67, 0x64, 0x00, 0x1F, (byte) 0xAC, (byte) 0xD9, 0x40, 0x50, 0x05, (byte) 0xBB, 0x01, 0x10};
+        byte[] pps = {0x68, (byte) 0xEB, (byte) 0xE3, (byte) 0xCB, 0x22, (byte) 0xC0};
+        byte[] avcC = box("avcC", new byte[] {1, 0x64, 0x00, 0x1F, (byte) 0xFF, (byte) 0xE1}, u16(sps.length), sps,
+            new byte[] {1}, u16(pps.length), pps);
+        byte[] compressor = new byte[32];
+        return box("avc1", new byte[6], u16(1), new byte[16], u16(width), u16(height), u32(0x00480000), u32(0x00480000),
+            u32(0), u16(1), compressor, u16(0x18), u16(0xFFFF), avcC);
+    }
+
+    private static byte[] mp4a() {
+        byte[] decoderSpecific = {0x05, 0x02, 0x12, 0x10};
+        byte[] decoderConfig = concat(new byte[] {0x04, 0x11, 0x40, 0x15, 0x00, 0x03, 0x00}, u32(128000), u32(128000), decoderSpecific);
+        byte[] slConfig = {0x06, 0x01, 0x02};
+        byte[] esDescriptor = concat(new byte[] {0x03, (byte) (3 + decoderConfig.length + slConfig.length), 0x00, 0x02, 0x00},
+            decoderConfig, slConfig);
+        return box("mp4a", new byte[6], u16(1), new byte[8], u16(2), u16(16), u16(0), u16(0), u32(AUDIO_RATE << 16),
+            fullBox("esds", 0, 0, esDescriptor));
+    }
+
+    private static byte[] box(String type, byte[]... content) {
+        byte[] body = concat(content);
+        return concat(u32(8 + body.length), type(type), body);
+    }
+
+    private static byte[] fullBox(String type, int version, int flags, byte[]... content) {
+        return box(type, concat(u32((version << 24) | flags), concat(content)));
+    }
+
+    private static byte[] type(String type) {
+        return u32(fourcc(type));
+    }
+
+    private static byte[] u32(int value) {
+        return ByteBuffer.allocate(4).putInt(value).array();
+    }
+
+    private static byte[] u16(int value) {
+        return ByteBuffer.allocate(2).putShort((short) value).array();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) out.write(part, 0, part.length);
+        return out.toByteArray();
+    }
+
+    /** A fixed LCG so the fixtures come out byte-identical on every JVM. */
+    private static final class Noise {
+        private long state;
+
+        Noise(long seed) {
+            state = seed;
+        }
+
+        int next(int bound) {
+            state = state * 6364136223846793005L + 1442695040888963407L;
+            return (int) ((state >>> 33) % bound);
+        }
+
+        void fill(ByteArrayOutputStream out, int size) {
+            for (int i = 0; i < size; i++) out.write(next(256));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.okanbeydanol.videoHelper;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Rate limiting and fragment events of the progress channel, recording what JS would receive. */
+public class ProgressChannelTest {
+    @Test
+    public void sendsBoundsAndSkipsSmallSteps() throws IOException, JSONException {
+        List<JSONObject> sent = new ArrayList<>();
+        ProgressChannel channel = channel(10, sent);
+        channel.start();
+        for (double fraction : new double[] {0.05, 0.12, 0.15, 0.5, 1.0, 1.0}) channel.update(fraction);
+        List<Double> progress = new ArrayList<>();
+        for (JSONObject message : sent) progress.add(message.getDouble("progress"));
+        assertEquals("[0.0, 12.0, 50.0, 100.0]", progress.toString());
+        assertEquals("job-1", sent.get(0).getString("jobId"));
+        assertFalse(sent.get(3).has("fps"));
+    }
+
+    @Test
+    public void reportsFragmentsOnceWithTheOutputPath() throws IOException, JSONException {
+        List<JSONObject> sent = new ArrayList<>();
+        File output = File.createTempFile("progress", ".mp4");
+        try {
+            ProgressChannel channel = new ProgressChannel("job-1", message -> sent.add(copy(message)), output, 10, 0, 0);
+            channel.start();
+            channel.fragment(1, 1000, 500, 2_000_000, 2_000_000);
+            channel.update(0.5);
+            JSONObject fragment = sent.get(1).getJSONObject("fragment");
+            assertEquals(output.getAbsolutePath(), fragment.getString("path"));
+            assertEquals(1500, sent.get(1).getLong("encodedBytes"));
+            assertTrue(fragment.getDouble("start") == 2.0);
+            assertFalse(sent.get(2).has("fragment"));
+        } finally {
+            output.delete();
+        }
+    }
+
+    private static ProgressChannel channel(double minDelta, List<JSONObject> sent) throws IOException {
+        File output = File.createTempFile("progress", ".mp4");
+        output.deleteOnExit();
+        return new ProgressChannel("job-1", message -> sent.add(copy(message)), output, 10, 0, minDelta);
+    }
+
+    /** The channel reuses its message, so a recorded one has to be a copy. */
+    private static JSONObject copy(JSONObject message) {
+        try {
+            return new JSONObject(message.toString());
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
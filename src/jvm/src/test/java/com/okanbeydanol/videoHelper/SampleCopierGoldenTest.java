@@ -0,0 +1,42 @@
+package com.okanbeydanol.videoHelper;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+
+/** The remux fallback's sample loop over a fixture, checked through a golden file. */
+public class SampleCopierGoldenTest {
+    @Test
+    public void copiesRangeFromKeyframe() throws IOException {
+        Golden.check("sample_copy.txt", copy(new int[] {0, 1}) + "-- video only\n" + copy(new int[] {0, -1}));
+    }
+
+    @Test
+    public void stopsAtEndOfSource() throws IOException {
+        FixtureSampleSource source = new FixtureSampleSource(Mp4Fixtures.fixture(Mp4Fixtures.AV));
+        source.seekTo(0, 0);
+        long[] written = new long[1];
+        long bytes = SampleCopier.copy(source, new int[] {0, 1}, (track, data, size, presentationTimeUs, sync) -> written[0] += size,
+            ByteBuffer.allocate(64 * 1024), 0, Long.MAX_VALUE);
+        assertEquals(written[0], bytes);
+        assertEquals(-1, source.track());
+    }
+
+    private static String copy(int[] trackMap) throws IOException {
+        FixtureSampleSource source = new FixtureSampleSource(Mp4Fixtures.fixture(Mp4Fixtures.AV));
+        long baseUs = source.seekTo(0, 1_000_000);
+        StringBuilder out = new StringBuilder("base ").append(baseUs).append('\n');
+        CRC32 crc = new CRC32();
+        long bytes = SampleCopier.copy(source, trackMap, (track, data, size, presentationTimeUs, sync) -> {
+            crc.reset();
+            for (int i = 0; i < size; i++) crc.update(data.get(i));
+            out.append(track).append(' ').append(presentationTimeUs).append(sync ? " sync " : " ")
+                .append(size).append(' ').append(Long.toHexString(crc.getValue())).append('\n');
+        }, ByteBuffer.allocate(64 * 1024), baseUs, 2_000_000);
+        return out.append("bytes ").append(bytes).append('\n').toString();
+    }
+}
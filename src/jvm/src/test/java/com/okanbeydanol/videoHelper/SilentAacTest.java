@@ -0,0 +1,78 @@
+package com.okanbeydanol.videoHelper;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/** The silence VideoMerger pads audio-less clips with, written through Mp4Writer the way a merge does. */
+public class SilentAacTest {
+    @Test
+    public void readsTheFixtureAudioConfig() throws IOException {
+        Mp4Movie movie = parse(Mp4Fixtures.fixture(Mp4Fixtures.AV));
+        SilentAac silence = SilentAac.forTrack(movie.moov, movie.firstTrack("audio/"));
+        assertNotNull(silence);
+        assertEquals(Mp4Fixtures.AUDIO_RATE, silence.sampleRate);
+        assertEquals(2, silence.channels);
+        assertNull(SilentAac.forTrack(movie.moov, movie.firstTrack("video/")));
+    }
+
+    @Test
+    public void padsAClipUpToItsVideo() throws IOException {
+        File source = Mp4Fixtures.fixture(Mp4Fixtures.AV);
+        File silenceFile = File.createTempFile("silence", ".aac");
+        File output = File.createTempFile("silence", ".mp4");
+        try (FileInputStream in = new FileInputStream(source); FileChannel channel = in.getChannel()) {
+            Mp4Movie movie = Mp4Parser.parse(channel);
+            Mp4Track video = movie.firstTrack("video/");
+            Mp4Track audio = movie.firstTrack("audio/");
+            Mp4SampleTable videoTable = Mp4SampleTable.parse(movie.moov, video);
+            SilentAac silence = SilentAac.forTrack(movie.moov, audio);
+            long clipUs = videoTable.toMicros(videoTable.duration());
+            Mp4SampleTable table = silence.table(audio.timescale, clipUs);
+            try (RandomAccessFile out = new RandomAccessFile(silenceFile, "rw")) {
+                out.getChannel().write(silence.frames(table.sampleCount));
+            }
+
+            Mp4Writer.TrackPlan videoPlan = new Mp4Writer.TrackPlan(movie.moov, video)
+                .add(channel, videoTable, 0, videoTable.sampleCount);
+            Mp4Writer.TrackPlan audioPlan;
+            try (FileInputStream silent = new FileInputStream(silenceFile);
+                 RandomAccessFile out = new RandomAccessFile(output, "rw")) {
+                audioPlan = new Mp4Writer.TrackPlan(movie.moov, audio)
+                    .add(silent.getChannel(), table, 0, table.sampleCount, table.fromMicros(clipUs));
+                new Mp4Writer(Mp4Writer.readBox(channel, movie.topLevelBox(Mp4Parser.FTYP)), movie.moov)
+                    .write(Arrays.asList(videoPlan, audioPlan), out.getChannel(), null);
+            }
+            assertEquals(table.fromMicros(clipUs), audioPlan.mediaDuration());
+
+            byte[] written = Golden.readBytes(output);
+            Mp4Movie merged = parse(output);
+            Mp4SampleTable padded = Mp4SampleTable.parse(merged.moov, merged.firstTrack("audio/"));
+            assertEquals(table.sampleCount, padded.sampleCount);
+            for (int i = 0; i < padded.sampleCount; i++) {
+                byte[] frame = Arrays.copyOfRange(written, (int) padded.offsets[i], (int) padded.offsets[i] + padded.sizes[i]);
+                assertArrayEquals(silence.frame, frame);
+            }
+        } finally {
+            silenceFile.delete();
+            output.delete();
+        }
+    }
+
+    private static Mp4Movie parse(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+            return Mp4Parser.parse(channel);
+        }
+    }
+}
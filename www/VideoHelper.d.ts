@@ -1,27 +1,208 @@
 declare namespace CordovaPlugins {
 
-    interface VideoHelperTranscodeProperties {
+    type VideoHelperJobPriority = 'high' | 'normal' | 'low';
+
+    interface VideoHelperJobOptions {
+        jobId?: string;
+        tag?: string;
+        priority?: VideoHelperJobPriority;
+        /**
+         * Add the job's metrics to its final JSON response. Error callbacks that otherwise get a plain message get a
+         * VideoHelperJobError instead.
+         */
+        metrics?: boolean;
+    }
+
+    /** What a job's error callback gets in place of its message when the job was started with metrics: true. */
+    interface VideoHelperJobError {
+        jobId: string;
+        message: string;
+        metrics: VideoHelperJobMetrics;
+    }
+
+    interface VideoHelperCacheOptions {
+        /** Reuse (and store) the result in the artifact cache; the returned path then points into the cache. */
+        cache?: boolean;
+    }
+
+    interface VideoHelperTranscodeProperties extends VideoHelperJobOptions, VideoHelperCacheOptions {
         fileUri: string;
         outputFileName: string;
         width?: number;
         height?: number;
         videoBitrate?: number;
         duration: number;
+        trimStart?: number;
+        /** Set to false to always re-encode, even when the source already meets the targets. */
+        passthrough?: boolean;
+        /** Move the `moov` box in front of the media data so playback can start early (default false). */
+        fastStart?: boolean;
+        /** Write a fragmented MP4 and report each fragment as it is sealed (default false). */
+        fragmented?: boolean;
+        /** Target fragment length in seconds (default 2); fragments are cut at keyframes. */
+        fragmentDuration?: number;
+        /** Chunks encoded concurrently for a full re-encode; 1 disables splitting (default: auto). */
+        parallelism?: number;
+        /** Drop frames from faster sources down to this rate (default: keep the source rate). */
+        maxFrameRate?: number;
+        /** 'auto' and 'hevc' use HEVC when a hardware encoder exists, H.264 otherwise (default 'avc'). */
+        codec?: VideoHelperVideoCodec;
+        /** Used to pick a bitrate when videoBitrate is not set (default 0.1). */
+        bitsPerPixel?: number;
+        /** Minimum time between progress events in milliseconds (default 250). */
+        progressInterval?: number;
+        /** Minimum progress change between events in percent (default 1). */
+        progressStep?: number;
     }
 
-    interface VideoHelperTrimProperties {
+    type VideoHelperVideoCodec = 'avc' | 'hevc' | 'auto';
+
+    interface VideoHelperRendition {
+        width?: number;
+        height?: number;
+        videoBitrate?: number;
+        bitsPerPixel?: number;
+        codec?: VideoHelperVideoCodec;
+        /** Defaults to `<outputFileName>-<index>`. */
+        outputFileName?: string;
+    }
+
+    interface VideoHelperLadderProperties extends VideoHelperJobOptions {
         fileUri: string;
-        trimStart: number;
+        outputFileName?: string;
+        renditions: VideoHelperRendition[];
+        /** Audio is encoded once and shared by every rendition. */
+        audioBitrate?: number;
+        audioChannels?: number;
+        duration?: number;
+        trimStart?: number;
+        fastStart?: boolean;
+        /** Defaults for renditions that don't set their own. */
+        codec?: VideoHelperVideoCodec;
+        bitsPerPixel?: number;
+        progressInterval?: number;
+        progressStep?: number;
+    }
+
+    interface VideoHelperLadderEvent {
+        jobId: string;
+        progress: number;
+        completed: boolean;
+        error: boolean;
+        message?: string;
+        /** Set on progress events and on the event sent when that rendition is written. */
+        rendition?: number;
+        /** The rendition's path on its completion event; all paths on the final event. */
+        data?: string | string[];
+        speed?: number;
+        /** Frames this rendition's encoder emitted per second. */
+        fps?: number;
+        etaMs?: number;
+        encodedBytes?: number;
+    }
+
+    interface VideoHelperMergeProperties extends VideoHelperJobOptions {
+        /**
+         * Clips in playback order; the first one decides the size and format of the result, and whether it has
+         * audio. Clips without audio are padded with silence when the first clip's audio is mono or stereo AAC.
+         */
+        fileUris: string[];
         outputFileName: string;
+        /** Bitrate for clips that have to be re-encoded (default: that of the first clip). */
+        videoBitrate?: number;
+        /** Default true. */
+        fastStart?: boolean;
+        progressInterval?: number;
+        progressStep?: number;
     }
 
-    interface VideoHelperThumbnailProperties {
+    interface VideoHelperTrimProperties extends VideoHelperJobOptions {
         fileUri: string;
+        trimStart: number;
+        trimEnd?: number;
+        duration?: number;
+        fastStart?: boolean;
         outputFileName: string;
+    }
+
+    type VideoHelperImageFormat = 'jpeg' | 'webp';
+
+    interface VideoHelperThumbnailProperties extends VideoHelperJobOptions, VideoHelperCacheOptions {
+        fileUri: string;
+        outputFileName?: string;
+        /** 'binary' returns the encoded image as an ArrayBuffer and writes nothing to storage. */
+        output?: 'file' | 'binary';
+        format?: VideoHelperImageFormat;
         atTime?: number;
         width?: number;
         height?: number;
         quality?: number;
+        /** Decode the exact frame instead of the nearest keyframe (slower). */
+        exact?: boolean;
+    }
+
+    interface VideoHelperThumbnailsProperties extends VideoHelperJobOptions {
+        fileUri: string;
+        /** Prefix for the generated files; frame i is written to `<outputFileName>-<i>.jpg`. */
+        outputFileName?: string;
+        /** 'binary' passes each frame to onEvent as a second ArrayBuffer argument instead of writing a file. */
+        output?: 'file' | 'binary';
+        format?: VideoHelperImageFormat;
+        /** Timestamps in seconds. Takes precedence over count. */
+        times?: number[];
+        /** Number of evenly spaced frames across the video. */
+        count?: number;
+        width?: number;
+        height?: number;
+        quality?: number;
+        /** Decode the exact frame instead of the nearest keyframe (slower). */
+        exact?: boolean;
+    }
+
+    interface VideoHelperThumbnailsEvent {
+        jobId: string;
+        completed: boolean;
+        progress: number;
+        index?: number;
+        time?: number;
+        path?: string;
+        error?: boolean;
+        message?: string;
+        /** Paths of all frames that were written, set on the final event. */
+        data?: string[];
+    }
+
+    interface VideoHelperWaveformProperties extends VideoHelperJobOptions {
+        fileUri: string;
+        /** Number of min/max pairs (default 512). */
+        buckets?: number;
+        /** Range in seconds; defaults to the whole audio track. */
+        trimStart?: number;
+        trimEnd?: number;
+    }
+
+    interface VideoHelperWaveformInfo {
+        jobId: string;
+        completed: boolean;
+        buckets: number;
+        sampleRate: number;
+        channels: number;
+        start: number;
+        duration: number;
+    }
+
+    interface VideoHelperKeyframesProperties extends VideoHelperJobOptions {
+        fileUri: string;
+    }
+
+    interface VideoHelperKeyframes {
+        jobId: string;
+        count: number;
+        duration: number;
+        /** Keyframe times in seconds, ascending. */
+        times: number[];
+        /** Byte offset of each keyframe in the file, or -1 when the container doesn't expose it. */
+        offsets: number[];
     }
 
     interface VideoHelperVideoInfoDetails {
@@ -34,6 +215,101 @@ declare namespace CordovaPlugins {
         videoMediaType: string;
         audioMediaType: string;
     }
+
+    interface VideoHelperVideoInfosOptions extends VideoHelperJobOptions {
+        /** Keys to return per file (default: all). Asking only for `size` skips opening the files. */
+        fields?: Array<keyof VideoHelperVideoInfoDetails | 'rotationDegrees'>;
+        /** Files probed at the same time (default and maximum: number of CPU cores). */
+        concurrency?: number;
+        /** Results per event (default 16). */
+        batchSize?: number;
+    }
+
+    interface VideoHelperVideoInfoResult {
+        index: number;
+        path: string;
+        info?: Partial<VideoHelperVideoInfoDetails>;
+        error?: boolean;
+        message?: string;
+    }
+
+    interface VideoHelperVideoInfosEvent {
+        jobId: string;
+        completed: boolean;
+        /** Set on intermediate events, in completion order. */
+        results?: VideoHelperVideoInfoResult[];
+        /** Set on the final event. */
+        total?: number;
+        failed?: number;
+    }
+
+    interface VideoHelperCacheStats {
+        hits: number;
+        misses: number;
+        entries: number;
+        capacity: number;
+        persistent: boolean;
+    }
+
+    interface VideoHelperArtifactCacheStats {
+        hits: number;
+        misses: number;
+        entries: number;
+        bytes: number;
+        maxBytes: number;
+    }
+
+    interface VideoHelperOutputWorkspaceStats {
+        entries: number;
+        bytes: number;
+        maxBytes: number;
+        freeBytes: number;
+    }
+
+    interface VideoHelperJob {
+        jobId: string;
+        type: 'transcode' | 'ladder' | 'merge' | 'trim' | 'thumbnail' | 'probe' | 'waveform' | 'keyframes';
+        priority: 'interactive' | 'normal' | 'background';
+        state: 'queued' | 'running' | 'canceled';
+        tag?: string;
+        queuedAt: number;
+        startedAt?: number;
+    }
+
+    interface VideoHelperJobMetrics {
+        jobId: string;
+        type: string;
+        state: 'queued' | 'running' | 'completed' | 'failed' | 'canceled';
+        queueWaitMs: number;
+        runMs: number;
+        /** Milliseconds per stage, e.g. probe, transcode, stitch, remux, finalize. Concurrent chunks add up. */
+        stages: { [stage: string]: number };
+        bytesRead: number;
+        bytesWritten: number;
+        framesEncoded?: number;
+        /** framesEncoded over runMs. */
+        fps?: number;
+        codecs?: string[];
+        error?: { type: string; message?: string; stage?: string };
+    }
+
+    interface VideoHelperCancelJobOptions {
+        jobId?: string;
+        tag?: string;
+        queuedOnly?: boolean;
+    }
+    interface VideoHelperFragment {
+        /** 0 is the init segment (ftyp + moov); media fragments count up from 1. */
+        index: number;
+        init: boolean;
+        /** The output file itself; it stays at this path once the job completes. */
+        path: string;
+        offset: number;
+        size: number;
+        /** Start and duration of the fragment in seconds. */
+        start: number;
+        duration: number;
+    }
     interface VideoHelper {
         transcodeVideo(
             options: VideoHelperTranscodeProperties,
@@ -43,10 +319,43 @@ declare namespace CordovaPlugins {
                 error: boolean;
                 data: string;
                 message: string;
+                jobId: string;
+                speed?: number;
+                /** Frames the encoder emitted per second; absent when nothing is encoded or counted. */
+                fps?: number;
+                etaMs?: number;
+                encodedBytes?: number;
+                cached?: boolean;
+                /** How the output was produced, set on completion. */
+                mode?: 'passthrough' | 'audio-only' | 'full';
+                /** With `fragmented: true`, set on the event for each sealed fragment. */
+                fragment?: VideoHelperFragment;
             }) => Promise<void>,
             onError: (error: Error) => void
         ): void;
 
+        transcodeLadder(
+            options: VideoHelperLadderProperties,
+            onEvent: (event: VideoHelperLadderEvent) => void,
+            onError: (error: Error) => void
+        ): void;
+
+        mergeVideos(
+            options: VideoHelperMergeProperties,
+            onSuccess: (info: {
+                progress: number;
+                completed: boolean;
+                error: boolean;
+                data: string;
+                message: string;
+                jobId: string;
+                encodedBytes?: number;
+                /** 'passthrough' when no clip had to be re-encoded. */
+                mode?: 'passthrough' | 'full';
+            }) => void,
+            onError: (error: Error) => void
+        ): void;
+
         trim(
             trimOptions: VideoHelperTrimProperties,
             onSuccess: (path: string) => void,
@@ -55,7 +364,26 @@ declare namespace CordovaPlugins {
 
         createThumbnail(
             options: VideoHelperThumbnailProperties,
-            onSuccess: (path: string) => void,
+            onSuccess: (pathOrImage: string | ArrayBuffer) => void,
+            onError: (error: Error) => void
+        ): void;
+
+        createThumbnails(
+            options: VideoHelperThumbnailsProperties,
+            onEvent: (event: VideoHelperThumbnailsEvent, image?: ArrayBuffer) => void,
+            onError: (error: Error) => void
+        ): void;
+
+        /** peaks holds little-endian int16 pairs (min, max) per bucket; read it with `new Int16Array(peaks)`. */
+        getWaveform(
+            options: VideoHelperWaveformProperties,
+            onSuccess: (info: VideoHelperWaveformInfo, peaks: ArrayBuffer) => void,
+            onError: (error: Error) => void
+        ): void;
+
+        getKeyframes(
+            options: VideoHelperKeyframesProperties,
+            onSuccess: (keyframes: VideoHelperKeyframes) => void,
             onError: (error: Error) => void
         ): void;
 
@@ -64,12 +392,64 @@ declare namespace CordovaPlugins {
             onSuccess: (info: VideoHelperVideoInfoDetails) => void,
             onError: (error: Error) => void
         ): void;
+
+        getVideoInfos(
+            paths: string[],
+            options: VideoHelperVideoInfosOptions,
+            onEvent: (event: VideoHelperVideoInfosEvent) => void,
+            onError: (error: Error) => void
+        ): void;
+
+        getVideoInfoCacheStats(
+            onSuccess: (stats: VideoHelperCacheStats) => void,
+            onError: (error: Error) => void
+        ): void;
+
+        getArtifactCacheStats(
+            onSuccess: (stats: VideoHelperArtifactCacheStats) => void,
+            onError: (error: Error) => void
+        ): void;
+
+        getOutputWorkspaceStats(
+            onSuccess: (stats: VideoHelperOutputWorkspaceStats) => void,
+            onError: (error: Error) => void
+        ): void;
+
+        cancelJob(
+            jobIdOrOptions: string | VideoHelperCancelJobOptions,
+            onSuccess: (result: { canceled: number }) => void,
+            onError: (error: Error) => void
+        ): void;
+
+        listJobs(
+            onSuccess: (jobs: VideoHelperJob[]) => void,
+            onError: (error: Error) => void
+        ): void;
+
+        /** With a jobId, that job's metrics; otherwise the most recently finished jobs, oldest first. */
+        getMetrics(
+            options: { jobId?: string },
+            onSuccess: (metrics: VideoHelperJobMetrics | VideoHelperJobMetrics[]) => void,
+            onError: (error: Error) => void
+        ): void;
     }
 }
 export interface VideoHelperTranscodeProperties extends CordovaPlugins.VideoHelperTranscodeProperties { }
+export interface VideoHelperLadderProperties extends CordovaPlugins.VideoHelperLadderProperties { }
+export interface VideoHelperLadderEvent extends CordovaPlugins.VideoHelperLadderEvent { }
+export interface VideoHelperMergeProperties extends CordovaPlugins.VideoHelperMergeProperties { }
 export interface VideoHelperTrimProperties extends CordovaPlugins.VideoHelperTrimProperties { }
 export interface VideoHelperThumbnailProperties extends CordovaPlugins.VideoHelperThumbnailProperties { }
+export interface VideoHelperThumbnailsProperties extends CordovaPlugins.VideoHelperThumbnailsProperties { }
+export interface VideoHelperThumbnailsEvent extends CordovaPlugins.VideoHelperThumbnailsEvent { }
+export interface VideoHelperWaveformProperties extends CordovaPlugins.VideoHelperWaveformProperties { }
+export interface VideoHelperWaveformInfo extends CordovaPlugins.VideoHelperWaveformInfo { }
+export interface VideoHelperKeyframesProperties extends CordovaPlugins.VideoHelperKeyframesProperties { }
+export interface VideoHelperKeyframes extends CordovaPlugins.VideoHelperKeyframes { }
 export interface VideoHelperVideoInfoDetails extends CordovaPlugins.VideoHelperVideoInfoDetails { }
+export interface VideoHelperVideoInfosOptions extends CordovaPlugins.VideoHelperVideoInfosOptions { }
+export interface VideoHelperVideoInfosEvent extends CordovaPlugins.VideoHelperVideoInfosEvent { }
+export interface VideoHelperCacheStats extends CordovaPlugins.VideoHelperCacheStats { }
 
 interface CordovaPlugins {
     VideoHelper: CordovaPlugins.VideoHelper;
@@ -85,3 +465,8 @@ export const VideoHelper: CordovaPlugins.VideoHelper;
 export as namespace VideoHelper;
 declare const _default: CordovaPlugins.VideoHelper;
 export default _default;
+export interface VideoHelperJob extends CordovaPlugins.VideoHelperJob { }
+export interface VideoHelperJobMetrics extends CordovaPlugins.VideoHelperJobMetrics { }
+export interface VideoHelperCancelJobOptions extends CordovaPlugins.VideoHelperCancelJobOptions { }
+export interface VideoHelperArtifactCacheStats extends CordovaPlugins.VideoHelperArtifactCacheStats { }
+export interface VideoHelperOutputWorkspaceStats extends CordovaPlugins.VideoHelperOutputWorkspaceStats { }
@@ -5,18 +5,76 @@ VideoHelper.prototype.transcodeVideo = function (options, onSuccess, onError) {
     cordova.exec(onSuccess, onError, 'VideoHelper', 'transcodeVideo', [options]);
 };
 
+VideoHelper.prototype.transcodeLadder = function (options, onEvent, onError) {
+    cordova.exec(onEvent, onError, 'VideoHelper', 'transcodeLadder', [options]);
+};
+
+VideoHelper.prototype.mergeVideos = function (options, onSuccess, onError) {
+    cordova.exec(onSuccess, onError, 'VideoHelper', 'mergeVideos', [options]);
+};
+
 VideoHelper.prototype.trim = function (trimOptions, onSuccess, onError) {
-    cordova.exec(onSuccess, onError, 'VideoHelper', 'trim', [trimOptions]);
+    cordova.exec(onSuccess, onError, 'VideoHelper', 'trimVideo', [trimOptions]);
 };
 
 VideoHelper.prototype.createThumbnail = function (options, onSuccess, onError) {
     cordova.exec(onSuccess, onError, 'VideoHelper', 'createThumbnail', [options]);
 };
 
+VideoHelper.prototype.createThumbnails = function (options, onEvent, onError) {
+    cordova.exec(onEvent, onError, 'VideoHelper', 'createThumbnails', [options]);
+};
+
+VideoHelper.prototype.getWaveform = function (options, onSuccess, onError) {
+    cordova.exec(onSuccess, onError, 'VideoHelper', 'getWaveform', [options]);
+};
+
+VideoHelper.prototype.getKeyframes = function (options, onSuccess, onError) {
+    cordova.exec(onSuccess, onError, 'VideoHelper', 'getKeyframes', [options]);
+};
+
 VideoHelper.prototype.getVideoInfo = function (path, onSuccess, onError) {
     cordova.exec(onSuccess, onError, 'VideoHelper', 'getVideoInfo', [path]);
 };
 
+VideoHelper.prototype.getVideoInfos = function (paths, options, onEvent, onError) {
+    if (typeof options === 'function') {
+        onError = onEvent;
+        onEvent = options;
+        options = {};
+    }
+    cordova.exec(onEvent, onError, 'VideoHelper', 'getVideoInfos', [paths, options || {}]);
+};
+
+VideoHelper.prototype.getVideoInfoCacheStats = function (onSuccess, onError) {
+    cordova.exec(onSuccess, onError, 'VideoHelper', 'getVideoInfoCacheStats', []);
+};
+
+VideoHelper.prototype.getArtifactCacheStats = function (onSuccess, onError) {
+    cordova.exec(onSuccess, onError, 'VideoHelper', 'getArtifactCacheStats', []);
+};
+
+VideoHelper.prototype.getOutputWorkspaceStats = function (onSuccess, onError) {
+    cordova.exec(onSuccess, onError, 'VideoHelper', 'getOutputWorkspaceStats', []);
+};
+
+VideoHelper.prototype.cancelJob = function (jobIdOrOptions, onSuccess, onError) {
+    cordova.exec(onSuccess, onError, 'VideoHelper', 'cancelJob', [jobIdOrOptions]);
+};
+
+VideoHelper.prototype.listJobs = function (onSuccess, onError) {
+    cordova.exec(onSuccess, onError, 'VideoHelper', 'listJobs', []);
+};
+
+VideoHelper.prototype.getMetrics = function (options, onSuccess, onError) {
+    if (typeof options === 'function') {
+        onError = onSuccess;
+        onSuccess = options;
+        options = {};
+    }
+    cordova.exec(onSuccess, onError, 'VideoHelper', 'getMetrics', [options || {}]);
+};
+
 module.exports = new VideoHelper();
 module.exports.VideoHelper = module.exports;
 